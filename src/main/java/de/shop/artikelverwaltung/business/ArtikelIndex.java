@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2013 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.artikelverwaltung.business;
+
+import de.shop.artikelverwaltung.domain.Artikel;
+import de.shop.util.concurrency.AenderungsPuffer;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Logger;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+
+import static javax.enterprise.event.TransactionPhase.AFTER_SUCCESS;
+
+
+/**
+ * Trigramm-Index ueber die Bezeichnungen der verfuegbaren Artikel im Hauptspeicher, damit eine Suche nach
+ * einem Teilstring nicht als LIKE '%...%' alle Datensaetze in der DB durchlaufen muss.
+ * Solange der Index nicht aufgebaut ("kalt") ist, liefert die Suche null. Neue und geaenderte Artikel werden
+ * erst nach dem Commit uebernommen.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+@ApplicationScoped
+public class ArtikelIndex {
+	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+	
+	private static final int N = 3;
+	
+	@Inject
+	private EntityManager em;
+	
+	private final AenderungsPuffer aenderungen = new AenderungsPuffer();
+	
+	// Zugriff durch viele lesende und wenige schreibende Threads
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private final Lock readLock = lock.readLock();
+	private final Lock writeLock = lock.writeLock();
+	
+	// Artikel-ID -> Bezeichnung
+	private final Map<Long, String> bezeichnungen = new HashMap<>();
+	
+	// Trigramm in Kleinbuchstaben -> IDs der Artikel, deren Bezeichnung das Trigramm enthaelt
+	private final Map<String, Set<Long>> trigramme = new HashMap<>();
+	
+	/**
+	 * Ist der Index aufgebaut?
+	 * @return true, falls der Index fuer Suchanfragen verwendet werden kann
+	 */
+	public boolean isWarm() {
+		return aenderungen.isAufgebaut();
+	}
+	
+	/**
+	 * Index einmalig mit allen verfuegbaren Artikeln aufbauen. Gleichzeitige Aufrufe warten auf den ersten.
+	 */
+	public void aufbauen() {
+		aenderungen.aufbauen(() -> em.createNamedQuery(Artikel.FIND_VERFUEGBARE_ARTIKEL, Artikel.class)
+		                             .getResultList(),
+		                     this::uebernehmen);
+	}
+	
+	/**
+	 * Einen neuen Artikel in den Index aufnehmen, sobald die Transaktion erfolgreich abgeschlossen ist
+	 * @param artikel Der neue Artikel
+	 */
+	public void onCreateArtikel(@Observes(during = AFTER_SUCCESS) @NeuerArtikel Artikel artikel) {
+		aenderungen.anwenden(() -> aktualisieren(artikel));
+	}
+	
+	/**
+	 * Einen geaenderten Artikel im Index aktualisieren, sobald die Transaktion erfolgreich abgeschlossen ist
+	 * @param artikel Der geaenderte Artikel
+	 */
+	public void onUpdateArtikel(@Observes(during = AFTER_SUCCESS) @GeaenderterArtikel Artikel artikel) {
+		aenderungen.anwenden(() -> aktualisieren(artikel));
+	}
+	
+	private void uebernehmen(Collection<Artikel> artikel) {
+		writeLock.lock();
+		try {
+			bezeichnungen.clear();
+			trigramme.clear();
+			artikel.forEach(this::hinzufuegen);
+		}
+		finally {
+			writeLock.unlock();
+		}
+		LOGGER.info("Index fuer " + artikel.size() + " Artikel aufgebaut");
+	}
+	
+	// Ausgesonderte Artikel werden entfernt
+	private void aktualisieren(Artikel artikel) {
+		if (artikel == null || artikel.getId() == null) {
+			return;
+		}
+		
+		writeLock.lock();
+		try {
+			entfernen(artikel.getId());
+			hinzufuegen(artikel);
+		}
+		finally {
+			writeLock.unlock();
+		}
+	}
+	
+	/**
+	 * IDs der Artikel suchen, deren Bezeichnung den gegebenen Teilstring enthaelt (wie bei LIKE '%...%')
+	 * @param teilstring Der Teilstring, z.B. ein Praefix
+	 * @return Die IDs aufsteigend sortiert oder null, falls der Index kalt ist
+	 */
+	public List<Long> findIds(String teilstring) {
+		if (!isWarm()) {
+			return null;
+		}
+		
+		readLock.lock();
+		try {
+			final Collection<Long> kandidaten = kandidaten(teilstring.toLowerCase(Locale.ROOT));
+			final List<Long> ids = new ArrayList<>(kandidaten.size());
+			// Die Trigramme sind nur notwendig, aber nicht hinreichend: exakten Vergleich nachholen
+			kandidaten.forEach(id -> {
+				if (bezeichnungen.get(id).contains(teilstring)) {
+					ids.add(id);
+				}
+			});
+			Collections.sort(ids);
+			return ids;
+		}
+		finally {
+			readLock.unlock();
+		}
+	}
+	
+	private Collection<Long> kandidaten(String teilstring) {
+		if (teilstring.length() < N) {
+			// zu kurz fuer ein Trigramm: alle Artikel pruefen
+			return bezeichnungen.keySet();
+		}
+		
+		// Schnittmenge der ID-Mengen zu allen Trigrammen, beginnend mit der kleinsten Menge
+		final List<Set<Long>> idMengen = new ArrayList<>();
+		for (String trigramm : trigramme(teilstring)) {
+			final Set<Long> ids = trigramme.get(trigramm);
+			if (ids == null) {
+				return Collections.emptySet();
+			}
+			idMengen.add(ids);
+		}
+		idMengen.sort((s1, s2) -> Integer.compare(s1.size(), s2.size()));
+		
+		final Set<Long> ergebnis = new HashSet<>(idMengen.get(0));
+		for (int i = 1; i < idMengen.size() && !ergebnis.isEmpty(); i++) {
+			ergebnis.retainAll(idMengen.get(i));
+		}
+		return ergebnis;
+	}
+	
+	private void hinzufuegen(Artikel artikel) {
+		final String bezeichnung = artikel.getBezeichnung();
+		if (artikel.isAusgesondert() || bezeichnung == null) {
+			return;
+		}
+		
+		final Long id = artikel.getId();
+		bezeichnungen.put(id, bezeichnung);
+		trigramme(bezeichnung.toLowerCase(Locale.ROOT))
+		        .forEach(trigramm -> trigramme.computeIfAbsent(trigramm, t -> new HashSet<>()).add(id));
+	}
+	
+	private void entfernen(Long id) {
+		final String bezeichnung = bezeichnungen.remove(id);
+		if (bezeichnung == null) {
+			return;
+		}
+		
+		trigramme(bezeichnung.toLowerCase(Locale.ROOT)).forEach(trigramm -> {
+			final Set<Long> ids = trigramme.get(trigramm);
+			if (ids != null) {
+				ids.remove(id);
+				if (ids.isEmpty()) {
+					trigramme.remove(trigramm);
+				}
+			}
+		});
+	}
+	
+	private static Set<String> trigramme(String str) {
+		final Set<String> result = new HashSet<>();
+		for (int i = 0; i + N <= str.length(); i++) {
+			result.add(str.substring(i, i + N));
+		}
+		return result;
+	}
+}
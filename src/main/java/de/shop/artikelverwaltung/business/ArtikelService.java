@@ -19,21 +19,22 @@ package de.shop.artikelverwaltung.business;
 
 import com.google.common.base.Strings;
 import de.shop.artikelverwaltung.domain.Artikel;
-import de.shop.artikelverwaltung.domain.Artikel_;
+import de.shop.util.interceptor.Timed;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Set;
 import javax.annotation.security.PermitAll;
 import javax.annotation.security.RolesAllowed;
 import javax.ejb.Stateless;
+import javax.enterprise.event.Event;
 import javax.inject.Inject;
+import javax.persistence.Cache;
 import javax.persistence.EntityManager;
-import javax.persistence.criteria.CriteriaBuilder;
-import javax.persistence.criteria.CriteriaQuery;
-import javax.persistence.criteria.Path;
-import javax.persistence.criteria.Predicate;
-import javax.persistence.criteria.Root;
+import javax.persistence.TypedQuery;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Size;
 import org.jboss.ejb3.annotation.SecurityDomain;
@@ -41,28 +42,48 @@ import org.jboss.ejb3.annotation.SecurityDomain;
 import static de.shop.auth.domain.RolleType.ADMIN_STRING;
 import static de.shop.auth.domain.RolleType.MITARBEITER_STRING;
 import static de.shop.util.Constants.SHOP_DOMAIN;
+import static java.util.Comparator.comparing;
 
 
 /**
  * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
  */
 @Stateless
+@Timed
 @RolesAllowed({ ADMIN_STRING, MITARBEITER_STRING })
 @SecurityDomain(SHOP_DOMAIN)
 public class ArtikelService implements Serializable {
 	private static final long serialVersionUID = 5292529185811096603L;
 	
+	// Maximale Anzahl an IDs in einer IN-Liste (Zweierpotenz)
+	private static final int IN_LIST_MAX = 256;
+	
 	@Inject
 	private transient EntityManager em;
 	
+	@Inject
+	private ArtikelIndex index;
+	
+	@Inject
+	private LadenhueterService ladenhueterService;
+	
+	@Inject
+	@NeuerArtikel
+	private transient Event<Artikel> eventCreate;
+	
+	@Inject
+	@GeaenderterArtikel
+	private transient Event<Artikel> eventUpdate;
+	
 	/**
-	 * Verfuegbare Artikel ermitteln
+	 * Verfuegbare Artikel ermitteln und dabei ggf. den Index fuer die Suche nach Bezeichnungen aufbauen
 	 * @return Liste der verfuegbaren Artikel
 	 */
 	@PermitAll
 	public List<Artikel> findVerfuegbareArtikel() {
+		index.aufbauen();
 		return em.createNamedQuery(Artikel.FIND_VERFUEGBARE_ARTIKEL, Artikel.class)
-				 .getResultList();
+		         .getResultList();
 	}
 
 	
@@ -91,14 +112,24 @@ public class ArtikelService implements Serializable {
 			return findVerfuegbareArtikel();
 		}
 		
+		// Index im Hauptspeicher statt LIKE '%...%' in der DB, sofern der Index bereits aufgebaut ist
+		final List<Long> ids = index.findIds(bezeichnung);
+		if (ids != null) {
+			final List<Artikel> artikel = findArtikelByIds(ids);
+			artikel.sort(comparing(Artikel::getId));
+			return artikel;
+		}
+		
 		return em.createNamedQuery(Artikel.FIND_ARTIKEL_BY_BEZ, Artikel.class)
 				 .setParameter(Artikel.PARAM_BEZEICHNUNG, "%" + bezeichnung + "%")
 				 .getResultList();
-		
 	}
 	
 	/**
-	 * Artikel zu gegebenen IDs suchen und ggf. ConstraintViolationException zu @Size werfen, falls die Liste leer ist
+	 * Artikel zu gegebenen IDs suchen und ggf. ConstraintViolationException zu @Size werfen, falls die Liste leer ist.
+	 * Artikel im 2nd-Level-Cache werden ohne DB-Zugriff gefunden. Fuer die uebrigen IDs werden Queries mit
+	 * IN-Listen verwendet, deren Laenge auf eine Zweierpotenz aufgefuellt wird, damit es nur wenige
+	 * verschiedene SQL-Anweisungen (und Ausfuehrungsplaene) gibt.
 	 * @param ids Liste der IDs
 	 * @return Liste der gefundenen Artikel
 	 */
@@ -109,44 +140,72 @@ public class ArtikelService implements Serializable {
 			return Collections.emptyList();
 		}
 		
+		// IDs ohne Duplikate und ohne null
+		final Set<Long> idSet = new LinkedHashSet<>(ids);
+		idSet.remove(null);
+		
+		// Treffer im 2nd-Level-Cache: em.find() ohne DB-Zugriff
+		final Cache cache = em.getEntityManagerFactory().getCache();
+		final List<Artikel> artikel = new ArrayList<>(idSet.size());
+		final List<Long> fehlendeIds = new ArrayList<>(idSet.size());
+		idSet.forEach(id -> {
+			if (cache.contains(Artikel.class, id)) {
+				final Artikel a = em.find(Artikel.class, id);
+				if (a != null) {
+					artikel.add(a);
+					return;
+				}
+			}
+			fehlendeIds.add(id);
+		});
+		
 		// SELECT a
 		// FROM   Artikel a
-		// WHERE  a.id = ? OR a.id = ? OR ...
-		final CriteriaBuilder builder = em.getCriteriaBuilder();
-		final CriteriaQuery<Artikel> criteriaQuery = builder.createQuery(Artikel.class);
-		final Root<Artikel> a = criteriaQuery.from(Artikel.class);
-
-		final Path<Long> idPath = a.get(Artikel_.id);
-			
-		Predicate pred;
-		if (ids.size() == 1) {
-			// Genau 1 id: kein OR notwendig
-			pred = builder.equal(idPath, ids.get(0));
+		// WHERE  a.id IN (?, ?, ...)
+		final TypedQuery<Artikel> query = em.createNamedQuery(Artikel.FIND_ARTIKEL_BY_IDS, Artikel.class);
+		for (int i = 0; i < fehlendeIds.size(); i += IN_LIST_MAX) {
+			final List<Long> chunk = fehlendeIds.subList(i, Math.min(i + IN_LIST_MAX, fehlendeIds.size()));
+			artikel.addAll(query.setParameter(Artikel.PARAM_IDS, padToPowerOfTwo(chunk))
+			                    .getResultList());
 		}
-		else {
-			// Mind. 2x id, durch OR verknuepft
-			final Predicate[] equals = ids.stream()
-					                      .map(id -> builder.equal(idPath, id))
-					                      .collect(Collectors.toList())
-					                      .toArray(new Predicate[ids.size()]);
-			pred = builder.or(equals);
+		
+		return artikel;
+	}
+	
+	/**
+	 * IN-Liste bis zur naechsten Zweierpotenz mit der letzten ID auffuellen
+	 * @param ids nicht-leere Liste mit IDs
+	 * @return Liste, deren Laenge eine Zweierpotenz ist
+	 */
+	private static List<Long> padToPowerOfTwo(List<Long> ids) {
+		final int size = ids.size();
+		final int paddedSize = size == 1 ? 1 : Integer.highestOneBit(size - 1) << 1;
+		if (paddedSize == size) {
+			return ids;
 		}
-		criteriaQuery.where(pred);
-			
-		return em.createQuery(criteriaQuery)
-				 .getResultList();
+		
+		final Long[] padded = ids.toArray(new Long[paddedSize]);
+		Arrays.fill(padded, size, paddedSize, ids.get(size - 1));
+		return Arrays.asList(padded);
 	}
 	
 	/**
-	 * Liste der wenig bestellten Artikel ermitteln
-	 * @param anzahl Obergrenze fuer die maximale Anzahl der Bestellungen
-	 * @return Liste der gefundenen Artikel
+	 * Liste der am wenigsten bestellten Artikel ermitteln, ohne dass die Bestellpositionen in der DB
+	 * durchsucht werden
+	 * @param anzahl Maximale Anzahl der Artikel
+	 * @return Liste der gefundenen Artikel, aufsteigend sortiert nach der Anzahl ihrer Bestellungen
 	 */
 	@PermitAll
 	public List<Artikel> ladenhueter(int anzahl) {
-		return em.createNamedQuery(Artikel.FIND_LADENHUETER, Artikel.class)
-				 .setMaxResults(anzahl)
-				 .getResultList();
+		// Die Artikel werden i.a. im 2nd-Level-Cache gefunden
+		final List<Artikel> ladenhueter = new ArrayList<>(anzahl);
+		ladenhueterService.findLadenhueterIds(anzahl).forEach(id -> {
+			final Artikel artikel = em.find(Artikel.class, id);
+			if (artikel != null) {
+				ladenhueter.add(artikel);
+			}
+		});
+		return ladenhueter;
 	}
 	
 	/**
@@ -160,6 +219,7 @@ public class ArtikelService implements Serializable {
 		}
 	
 		em.persist(artikel);
+		eventCreate.fire(artikel);
 		return artikel;
 	}
 	
@@ -174,6 +234,7 @@ public class ArtikelService implements Serializable {
 		}
 	
 		em.merge(artikel);
+		eventUpdate.fire(artikel);
 		return artikel;
 	}
 }
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2013 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.artikelverwaltung.business;
+
+import de.shop.artikelverwaltung.domain.Artikel;
+import de.shop.bestellverwaltung.business.NeueBestellung;
+import de.shop.bestellverwaltung.domain.Bestellung;
+import de.shop.util.concurrency.AenderungsPuffer;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+
+import static javax.enterprise.event.TransactionPhase.AFTER_SUCCESS;
+
+
+/**
+ * Anwendungsweite Statistik, wie oft jeder Artikel bestellt wurde. Die Anzahl wird beim ersten Zugriff
+ * einmalig aus der DB gelesen und danach bei jeder neuen Bestellung inkrementell fortgeschrieben. Bestellungen
+ * und neue Artikel, die waehrend des Lesens committet werden, werden danach nachgetragen. Weil die Anzahl nur
+ * erhoeht wird, kann eine solche Bestellung doppelt gezaehlt werden, falls die Query sie bereits liest (siehe
+ * AenderungsPuffer). Die Abweichung ist auf die Bestellungen waehrend des einmaligen Lesens beschraenkt.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+@ApplicationScoped
+public class LadenhueterService {
+	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+	
+	// Weniger bestellte Artikel zuerst, bei gleicher Anzahl die kleinere ID
+	private static final Comparator<Entry<Long, AtomicLong>> ANZAHL_ASC =
+		Comparator.<Entry<Long, AtomicLong>>comparingLong(e -> e.getValue().get())
+		          .thenComparing(Entry::getKey);
+	
+	@Inject
+	private EntityManager em;
+	
+	// Artikel-ID -> Anzahl der Bestellpositionen
+	private final ConcurrentMap<Long, AtomicLong> anzahlBestellungen = new ConcurrentHashMap<>();
+	
+	private final AenderungsPuffer aenderungen = new AenderungsPuffer();
+	
+	/**
+	 * Die IDs der am wenigsten bestellten Artikel ermitteln
+	 * @param anzahl Maximale Anzahl der Artikel
+	 * @return IDs der Artikel, aufsteigend sortiert nach der Anzahl ihrer Bestellungen
+	 */
+	public List<Long> findLadenhueterIds(int anzahl) {
+		if (anzahl <= 0) {
+			return new ArrayList<>(0);
+		}
+		init();
+		
+		// Beschraenkter Max-Heap: an der Spitze steht der am haeufigsten bestellte der bisherigen Kandidaten
+		final PriorityQueue<Entry<Long, AtomicLong>> heap = new PriorityQueue<>(anzahl + 1, ANZAHL_ASC.reversed());
+		anzahlBestellungen.entrySet().forEach(e -> {
+			if (heap.size() < anzahl) {
+				heap.add(e);
+			}
+			else if (ANZAHL_ASC.compare(e, heap.peek()) < 0) {
+				heap.poll();
+				heap.add(e);
+			}
+		});
+		
+		final List<Entry<Long, AtomicLong>> ladenhueter = new ArrayList<>(heap);
+		ladenhueter.sort(ANZAHL_ASC);
+		final List<Long> ids = new ArrayList<>(ladenhueter.size());
+		ladenhueter.forEach(e -> ids.add(e.getKey()));
+		return ids;
+	}
+	
+	/**
+	 * Einen neuen Artikel ohne Bestellungen beruecksichtigen, sobald die Transaktion erfolgreich abgeschlossen ist
+	 * @param artikel Der neue Artikel
+	 */
+	public void onCreateArtikel(@Observes(during = AFTER_SUCCESS) @NeuerArtikel Artikel artikel) {
+		final Long artikelId = artikel.getId();
+		if (artikelId != null) {
+			aenderungen.anwenden(() -> anzahlBestellungen.putIfAbsent(artikelId, new AtomicLong()));
+		}
+	}
+	
+	/**
+	 * Die Anzahl der Bestellungen fuer die Artikel einer neuen Bestellung erhoehen, sobald die Transaktion
+	 * erfolgreich abgeschlossen ist
+	 * @param bestellung Die neue Bestellung
+	 */
+	public void onCreateBestellung(@Observes(during = AFTER_SUCCESS) @NeueBestellung Bestellung bestellung) {
+		// Vor dem Initialisieren ist die Bestellung bereits in der DB und wird dann mitgezaehlt
+		final List<Long> artikelIds = new ArrayList<>(bestellung.getBestellpositionen().size());
+		bestellung.getBestellpositionen().forEach(bp -> artikelIds.add(bp.getArtikel().getId()));
+		aenderungen.anwenden(() -> artikelIds.forEach(this::erhoehen));
+	}
+	
+	private void erhoehen(Long artikelId) {
+		anzahlBestellungen.computeIfAbsent(artikelId, id -> new AtomicLong())
+		                  .incrementAndGet();
+	}
+	
+	private void init() {
+		aenderungen.aufbauen(this::lesen, this::uebernehmen);
+	}
+	
+	private Map<Long, Long> lesen() {
+		// Auch Artikel, die noch nie bestellt wurden
+		final Map<Long, Long> snapshot = new HashMap<>();
+		em.createNamedQuery(Artikel.FIND_IDS, Long.class)
+		  .getResultList()
+		  .forEach(id -> snapshot.put(id, 0L));
+		em.createNamedQuery(Artikel.FIND_ANZAHL_BESTELLPOSITIONEN, Object[].class)
+		  .getResultList()
+		  .forEach(row -> snapshot.put((Long) row[0], (Long) row[1]));
+		return snapshot;
+	}
+	
+	private void uebernehmen(Map<Long, Long> snapshot) {
+		snapshot.forEach((id, anzahl) -> anzahlBestellungen.put(id, new AtomicLong(anzahl)));
+		LOGGER.info("Anzahl der Bestellungen fuer " + anzahlBestellungen.size() + " Artikel ermittelt");
+	}
+}
@@ -31,6 +31,7 @@ import javax.persistence.Index;
 import javax.persistence.NamedQueries;
 import javax.persistence.NamedQuery;
 import javax.persistence.PostPersist;
+import javax.persistence.QueryHint;
 import javax.persistence.Table;
 import javax.validation.constraints.Digits;
 import javax.validation.constraints.NotNull;
@@ -38,6 +39,7 @@ import javax.validation.constraints.Size;
 import javax.ws.rs.FormParam;
 import javax.xml.bind.annotation.XmlRootElement;
 
+import static de.shop.util.Constants.QUERY_CACHEABLE;
 import static java.util.logging.Level.FINEST;
 
 
@@ -52,18 +54,26 @@ import static java.util.logging.Level.FINEST;
                 query = "SELECT      a"
 				        + " FROM     Artikel a"
                         + " WHERE    a.ausgesondert = FALSE"
-				        + " ORDER BY a.id ASC"),
+				        + " ORDER BY a.id ASC",
+				hints = @QueryHint(name = QUERY_CACHEABLE, value = "true")),
 	@NamedQuery(name  = Artikel.FIND_ARTIKEL_BY_BEZ,
 				query = "SELECT      a"
 				        + " FROM     Artikel a"
 						+ " WHERE    a.bezeichnung LIKE :" + Artikel.PARAM_BEZEICHNUNG
 						+ "          AND a.ausgesondert = FALSE"
-						+ " ORDER BY a.id ASC"),
-	// Falsche Warning durch NetBeans
-    @NamedQuery(name  = Artikel.FIND_LADENHUETER,
-   	            query = "SELECT    a"
-   	            	    + " FROM   Artikel a"
-   	            	    + " WHERE  a NOT IN (SELECT bp.artikel FROM Bestellposition bp)")
+						+ " ORDER BY a.id ASC",
+				hints = @QueryHint(name = QUERY_CACHEABLE, value = "true")),
+	@NamedQuery(name  = Artikel.FIND_ARTIKEL_BY_IDS,
+				query = "SELECT      a"
+				        + " FROM     Artikel a"
+						+ " WHERE    a.id IN :" + Artikel.PARAM_IDS),
+	@NamedQuery(name  = Artikel.FIND_IDS,
+				query = "SELECT a.id"
+				        + " FROM Artikel a"),
+	@NamedQuery(name  = Artikel.FIND_ANZAHL_BESTELLPOSITIONEN,
+				query = "SELECT   bp.artikel.id, COUNT(bp)"
+				        + " FROM  Bestellposition bp"
+						+ " GROUP BY bp.artikel.id")
 })
 @Cacheable
 public class Artikel extends AbstractVersionedAuditable {
@@ -75,9 +85,12 @@ public class Artikel extends AbstractVersionedAuditable {
 	private static final String PREFIX = "Artikel."; 
 	public static final String FIND_VERFUEGBARE_ARTIKEL = PREFIX + "findVerfuegbareArtikel";
 	public static final String FIND_ARTIKEL_BY_BEZ = PREFIX + "findArtikelByBez";
-	public static final String FIND_LADENHUETER = PREFIX + "findLadenhueter";
+	public static final String FIND_ARTIKEL_BY_IDS = PREFIX + "findArtikelByIds";
+	public static final String FIND_IDS = PREFIX + "findIds";
+	public static final String FIND_ANZAHL_BESTELLPOSITIONEN = PREFIX + "findAnzahlBestellpositionen";
 	
 	public static final String PARAM_BEZEICHNUNG = "bezeichnung";
+	public static final String PARAM_IDS = "ids";
 
 	@Id
 	@GeneratedValue
@@ -25,7 +25,6 @@ import javax.ejb.Stateful;
 import javax.enterprise.context.RequestScoped;
 import javax.inject.Inject;
 import javax.inject.Named;
-import javax.servlet.http.HttpSession;
 
 
 
@@ -42,16 +41,14 @@ public class LadenhueterModel implements Serializable {
 	@Inject
 	private ArtikelService as;
 	
-	@Inject
-	private transient HttpSession session;
+	private List<Artikel> ladenhueter;
 
 	public void load() {
-		@SuppressWarnings("unchecked")
-		List<Artikel> ladenhueter = (List<Artikel>) session.getAttribute("ladenhueter");
-		
-		if (ladenhueter == null) {
-			ladenhueter = as.ladenhueter(ANZAHL_LADENHUETER);
-			session.setAttribute("ladenhueter", ladenhueter);
-		}
+		// Anwendungsweit vorberechnet (LadenhueterService) statt pro Session in der HttpSession
+		ladenhueter = as.ladenhueter(ANZAHL_LADENHUETER);
+	}
+	
+	public List<Artikel> getLadenhueter() {
+		return ladenhueter;
 	}
 }
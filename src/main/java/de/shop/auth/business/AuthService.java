@@ -19,8 +19,10 @@ package de.shop.auth.business;
 
 import com.google.common.base.Strings;
 import de.shop.auth.domain.RolleType;
+import de.shop.kundenverwaltung.business.KundeIdIndex;
 import de.shop.kundenverwaltung.business.KundeService;
 import de.shop.kundenverwaltung.business.KundeService.FetchType;
+import de.shop.util.interceptor.Timed;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
@@ -37,13 +39,13 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Objects;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 import javax.annotation.Resource;
 import javax.ejb.EJB;
 import javax.ejb.EJBAccessException;
 import javax.ejb.SessionContext;
 import javax.ejb.Stateless;
 import javax.inject.Inject;
-import javax.persistence.EntityManager;
 import javax.security.auth.Subject;
 import javax.security.jacc.PolicyContext;
 import javax.security.jacc.PolicyContextException;
@@ -54,8 +56,6 @@ import org.jboss.security.SimpleGroup;
 import static de.shop.auth.domain.RolleType.ADMIN_STRING;
 import static de.shop.auth.domain.RolleType.KUNDE_STRING;
 import static de.shop.auth.domain.RolleType.MITARBEITER_STRING;
-import static de.shop.kundenverwaltung.domain.AbstractKunde.FIND_USERNAME_BY_USERNAME_PREFIX;
-import static de.shop.kundenverwaltung.domain.AbstractKunde.PARAM_USERNAME_PREFIX;
 import static java.util.logging.Level.FINEST;
 import static java.util.logging.Level.SEVERE;
 
@@ -64,6 +64,7 @@ import static java.util.logging.Level.SEVERE;
  * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
  */
 @Stateless
+@Timed
 public class AuthService implements Serializable {
 	private static final long serialVersionUID = -2736040689592627172L;
 	
@@ -80,11 +81,11 @@ public class AuthService implements Serializable {
 	@Resource
 	private SessionContext ctx;
 	
-	@Inject
-	private transient EntityManager em;
-	
 	@EJB    // KundeService hat @Inject mit AuthService
 	private KundeService ks;
+	
+	@Inject
+	private KundeIdIndex kundeIdIndex;
 
 
 	/**
@@ -228,9 +229,11 @@ public class AuthService implements Serializable {
 	 * @return Liste der potenziellen Usernamen
 	 */
 	public List<String> findUsernameListByUsernamePrefix(String usernamePrefix) {
-		return em.createNamedQuery(FIND_USERNAME_BY_USERNAME_PREFIX, String.class)
-				 .setParameter(PARAM_USERNAME_PREFIX, usernamePrefix + '%')
-				 .getResultList();
+		// Der Username ist die Kunden-ID als String
+		return kundeIdIndex.findIdsByPrefix(usernamePrefix, Integer.MAX_VALUE)
+		                   .stream()
+		                   .map(String::valueOf)
+		                   .collect(Collectors.toList());
 	}
 	
 
@@ -21,23 +21,30 @@ import de.shop.bestellverwaltung.domain.Bestellung;
 import de.shop.kundenverwaltung.domain.AbstractKunde;
 import de.shop.util.mail.AbsenderMail;
 import de.shop.util.mail.AbsenderName;
+import de.shop.util.mail.MailVersand;
+import de.shop.util.persistence.OutboxBatch;
 import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
 import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.logging.Logger;
 import javax.annotation.PostConstruct;
-import javax.ejb.Asynchronous;
 import javax.ejb.Stateless;
 import javax.enterprise.event.Observes;
 import javax.inject.Inject;
 import javax.mail.Message.RecipientType;
 import javax.mail.MessagingException;
 import javax.mail.Session;
-import javax.mail.Transport;
 import javax.mail.internet.InternetAddress;
 import javax.mail.internet.MimeMessage;
+import javax.persistence.EntityManager;
 
+import static de.shop.util.persistence.OutboxTyp.NEUE_BESTELLUNG;
 import static java.util.logging.Level.FINEST;
+import static java.util.logging.Level.WARNING;
 
 /**
  * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
@@ -48,9 +55,15 @@ public class BestellungObserver implements Serializable {
 	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
 	private static final String NEWLINE = System.getProperty("line.separator");
 	
+	@Inject
+	private transient EntityManager em;
+	
 	@Inject
 	private transient Session session;
 	
+	@Inject
+	private MailVersand mailVersand;
+	
 	@Inject
 	@AbsenderMail
 	private String absenderMail;
@@ -66,15 +79,50 @@ public class BestellungObserver implements Serializable {
 		}
 	}
 	
-	@Asynchronous
-	public void onCreateBestellung(@Observes @NeueBestellung final Bestellung bestellung) {
-		if (absenderMail == null) {
+	/**
+	 * Bestaetigungen zu neuen Bestellungen, die von der Outbox batchweise ausgeliefert werden.
+	 * Alle Emails eines Batches werden ueber eine Verbindung aus dem Pool von MailVersand gesendet.
+	 * @param batch IDs der neuen Bestellungen
+	 */
+	public void onCreateBestellungen(@Observes OutboxBatch batch) {
+		if (batch.getTyp() != NEUE_BESTELLUNG || absenderMail == null) {
 			return;
 		}
+		
+		// Zwischenzeitlich geloeschte Bestellungen werden nicht gefunden
+		final List<Bestellung> bestellungen =
+			em.createNamedQuery(Bestellung.FIND_BESTELLUNGEN_BY_IDS, Bestellung.class)
+			  .setParameter(Bestellung.PARAM_IDS, batch.getReferenzIds())
+			  .getResultList();
+		if (bestellungen.isEmpty()) {
+			return;
+		}
+		
+		// Email -> ID, damit nicht versendete Emails als fehlgeschlagen gemeldet werden koennen
+		final Map<MimeMessage, Long> messages = new LinkedHashMap<>();
+		for (Bestellung bestellung : bestellungen) {
+			try {
+				final MimeMessage message = createMessage(bestellung);
+				if (message != null) {
+					messages.put(message, bestellung.getId());
+				}
+			}
+			catch (MessagingException e) {
+				LOGGER.log(WARNING, "Email nicht erstellt: " + bestellung.getId(), e);
+				batch.fehlgeschlagen(bestellung.getId());
+			}
+		}
+		
+		// Nur die nicht versendeten Emails werden von der Outbox erneut ausgeliefert
+		mailVersand.senden(new ArrayList<>(messages.keySet()))
+		           .forEach(message -> batch.fehlgeschlagen(messages.get(message)));
+	}
+	
+	private MimeMessage createMessage(Bestellung bestellung) throws MessagingException {
 		final AbstractKunde kunde = bestellung.getKunde();
 		final String empfaengerMail = kunde.getEmail();
 		if (empfaengerMail == null) {
-			return;
+			return null;
 		}
 		
 		final MimeMessage message = new MimeMessage(session);
@@ -88,38 +136,40 @@ public class BestellungObserver implements Serializable {
 			final String empfaengerName = vorname + " " + kunde.getNachname();
 			final InternetAddress empfaenger = new InternetAddress(empfaengerMail, empfaengerName);
 			message.setRecipient(RecipientType.TO, empfaenger);   // RecipientType: TO, CC, BCC
+		}
+		catch (UnsupportedEncodingException e) {
+			LOGGER.severe(e.getMessage());
+			return null;
+		}
 
-			// Subject setzen
-			message.setSubject("Neue Bestellung Nr. " + bestellung.getId());
-
-			// Text setzen mit MIME Type "text/plain"
-			final StringBuilder sb = new StringBuilder(256);
-			sb.append("<h3>Neue Bestellung Nr. <b>")
-			  .append(bestellung.getId())
-			  .append("</b></h3>")
-			  .append(NEWLINE);
-
-			bestellung.getBestellpositionen()				
-					  .forEach(bp -> sb.append(bp.getAnzahl())
-									   .append("\t")
-									   .append(bp.getArtikel().getBezeichnung())
-									   .append("<br/>")
-									   .append(NEWLINE));
-			final String text = sb.toString();
-			if (LOGGER.isLoggable(FINEST)) {
-				LOGGER.finest(text);
-			}
-			message.setContent(text, "text/html;charset=iso-8859-1");
+		// Subject setzen
+		message.setSubject("Neue Bestellung Nr. " + bestellung.getId());
 
-			// Hohe Prioritaet einstellen
-			//message.setHeader("Importance", "high");
-			//message.setHeader("Priority", "urgent");
-			//message.setHeader("X-Priority", "1");
+		// Text setzen mit MIME Type "text/plain"
+		final StringBuilder sb = new StringBuilder(256);
+		sb.append("<h3>Neue Bestellung Nr. <b>")
+		  .append(bestellung.getId())
+		  .append("</b></h3>")
+		  .append(NEWLINE);
 
-			Transport.send(message);
-		}
-		catch (MessagingException | UnsupportedEncodingException e) {
-			LOGGER.severe(e.getMessage());
+		bestellung.getBestellpositionen()				
+				  .forEach(bp -> sb.append(bp.getAnzahl())
+								   .append("\t")
+								   .append(bp.getArtikel().getBezeichnung())
+								   .append("<br/>")
+								   .append(NEWLINE));
+		final String text = sb.toString();
+		if (LOGGER.isLoggable(FINEST)) {
+			LOGGER.finest(text);
 		}
+		message.setContent(text, "text/html;charset=iso-8859-1");
+
+		// Hohe Prioritaet einstellen
+		//message.setHeader("Importance", "high");
+		//message.setHeader("Priority", "urgent");
+		//message.setHeader("X-Priority", "1");
+		
+		message.saveChanges();
+		return message;
 	}
 }
@@ -24,6 +24,8 @@ import de.shop.bestellverwaltung.domain.Warenkorbposition;
 import de.shop.bestellverwaltung.domain.Warenkorbposition_;
 import de.shop.kundenverwaltung.business.KundeService;
 import de.shop.kundenverwaltung.domain.AbstractKunde;
+import de.shop.util.interceptor.Timed;
+import de.shop.util.persistence.OutboxService;
 import java.io.Serializable;
 import java.lang.invoke.MethodHandles;
 import java.math.BigDecimal;
@@ -35,6 +37,7 @@ import java.util.stream.Collectors;
 import javax.annotation.security.RolesAllowed;
 import javax.ejb.EJBAccessException;
 import javax.ejb.Stateless;
+import javax.ejb.TransactionAttribute;
 import javax.enterprise.event.Event;
 import javax.inject.Inject;
 import javax.persistence.EntityGraph;
@@ -54,16 +57,19 @@ import static de.shop.auth.domain.RolleType.ADMIN_STRING;
 import static de.shop.auth.domain.RolleType.KUNDE_STRING;
 import static de.shop.auth.domain.RolleType.MITARBEITER_STRING;
 import static de.shop.kundenverwaltung.business.KundeService.FetchType.MIT_BESTELLUNGEN;
+import static de.shop.util.persistence.OutboxTyp.NEUE_BESTELLUNG;
 import static de.shop.util.Constants.LOADGRAPH;
 import static de.shop.util.Constants.SHOP_DOMAIN;
 import static java.math.BigDecimal.ZERO;
 import static java.util.logging.Level.FINEST;
+import static javax.ejb.TransactionAttributeType.REQUIRES_NEW;
 
 
 /**
  * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
  */
 @Stateless
+@Timed
 @RolesAllowed({ ADMIN_STRING, MITARBEITER_STRING, KUNDE_STRING })
 @SecurityDomain(SHOP_DOMAIN)
 public class BestellungService implements Serializable {
@@ -89,6 +95,9 @@ public class BestellungService implements Serializable {
 	@NeueBestellung
 	private transient Event<Bestellung> event;
 	
+	@Inject
+	private OutboxService os;
+	
 	/**
 	 * Bestellung zu gegebener ID suchen.
 	 * ConstraintViolationException zu @NotNull wird geworfen, falls keine Bestellung gefunden wurde
@@ -268,6 +277,31 @@ public class BestellungService implements Serializable {
 		bestellung.setKunde(kunde);
 		kunde.addBestellung(bestellung);
 		
+		return speichern(bestellung);
+	}
+	
+	/**
+	 * Wie createBestellung(Bestellung, AbstractKunde), aber in einer eigenen Transaktion, z.B. fuer jede
+	 * Bestellung eines Imports: ein Fehler rollt nur die betroffene Bestellung zurueck und nicht die bereits
+	 * gespeicherten. Der Aufrufer ermittelt den Kunden nur einmal fuer alle Bestellungen. In der neuen
+	 * Transaktion wird der Kunde nur referenziert, d.h. seine bisherigen Bestellungen werden nicht geladen.
+	 * @param bestellung Die neue Bestellung
+	 * @param kunde Der existierende Kunde, z.B. aus der Transaktion des Aufrufers
+	 * @return Die neue Bestellung einschliesslich generierter ID
+	 */
+	@RolesAllowed(KUNDE_STRING)
+	@TransactionAttribute(REQUIRES_NEW)
+	public Bestellung createBestellungInNeuerTransaktion(Bestellung bestellung, AbstractKunde kunde) {
+		if (bestellung == null || kunde == null) {
+			return null;
+		}
+		
+		// Die Bestellung ist die Owner-Seite der Beziehung: die Referenz auf den Kunden genuegt zum Abspeichern
+		bestellung.setKunde(em.getReference(AbstractKunde.class, kunde.getId()));
+		return speichern(bestellung);
+	}
+	
+	private Bestellung speichern(Bestellung bestellung) {
 		final BigDecimal gesamtbetrag = bestellung.getBestellpositionen()
 				                                  .parallelStream()
 				                                  .map(bp -> bp.getArtikel()
@@ -279,6 +313,9 @@ public class BestellungService implements Serializable {
 		em.persist(bestellung);
 		event.fire(bestellung);
 		
+		// Bestaetigungs-Email erst nach dem Commit, dauerhaft ueber die Outbox
+		os.einreihen(NEUE_BESTELLUNG, bestellung.getId());
+		
 		return bestellung;
 	}
 	
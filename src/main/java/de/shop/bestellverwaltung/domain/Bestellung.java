@@ -81,6 +81,11 @@ import static javax.persistence.FetchType.EAGER;
                 query = "SELECT b"
 				        + " FROM   Bestellung b"
 			            + " WHERE  b.kunde.id = :" + Bestellung.PARAM_KUNDEID),
+	@NamedQuery(name  = Bestellung.FIND_BESTELLUNGEN_BY_IDS,
+	            query = "SELECT b"
+	                    + " FROM   Bestellung b"
+	                    + " WHERE  b.id IN :" + Bestellung.PARAM_IDS
+	                    + " ORDER BY b.id"),
 	@NamedQuery(name  = Bestellung.FIND_KUNDE_BY_ID,
 	            query = "SELECT DISTINCT b.kunde"
 	                    + " FROM   Bestellung b"
@@ -107,12 +112,14 @@ public class Bestellung  extends AbstractVersionedAuditable {
 	
 	private static final String PREFIX = "Bestellung.";
 	public static final String FIND_BESTELLUNGEN_BY_KUNDEID = PREFIX + "findBestellungenByKundeId";
+	public static final String FIND_BESTELLUNGEN_BY_IDS = PREFIX + "findBestellungenByIds";
 	public static final String FIND_KUNDE_BY_ID = PREFIX + "findKundeById";
 	public static final String FIND_ANZ_BESTELLUNGEN_BY_PLZ_V1 = PREFIX + "findAnzBestellungenByPlzV1";
 	public static final String FIND_ANZ_BESTELLUNGEN_BY_PLZ_V2 = PREFIX + "findAnzBestellungenByPlzV2";
 	
 	public static final String PARAM_KUNDEID = "kundeId";
 	public static final String PARAM_ID = "id";
+	public static final String PARAM_IDS = "ids";
 	public static final String PARAM_PLZ_MIN = "min";
 	public static final String PARAM_PLZ_MAX = "max";
 	
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2013 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.bestellverwaltung.rest;
+
+import java.net.URI;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * Ergebnis zu einer einzelnen Bestellung innerhalb von POST /bestellungen/batch
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+@XmlRootElement
+public class BestellungErgebnis {
+	// Position der Bestellung in der Liste des Requests
+	private int index;
+
+	// HTTP-Statuscode fuer diese Bestellung, z.B. 201 oder 400
+	private int status;
+
+	// URI der neuen Bestellung, falls sie angelegt wurde
+	private URI bestellungUri;
+
+	// Fehlermeldung, falls die Bestellung nicht angelegt wurde
+	private String fehlermeldung;
+
+	public BestellungErgebnis() {
+		super();
+	}
+
+	public BestellungErgebnis(int index, int status, URI bestellungUri, String fehlermeldung) {
+		super();
+		this.index = index;
+		this.status = status;
+		this.bestellungUri = bestellungUri;
+		this.fehlermeldung = fehlermeldung;
+	}
+
+	public int getIndex() {
+		return index;
+	}
+
+	public void setIndex(int index) {
+		this.index = index;
+	}
+
+	public int getStatus() {
+		return status;
+	}
+
+	public void setStatus(int status) {
+		this.status = status;
+	}
+
+	public URI getBestellungUri() {
+		return bestellungUri;
+	}
+
+	public void setBestellungUri(URI bestellungUri) {
+		this.bestellungUri = bestellungUri;
+	}
+
+	public String getFehlermeldung() {
+		return fehlermeldung;
+	}
+
+	public void setFehlermeldung(String fehlermeldung) {
+		this.fehlermeldung = fehlermeldung;
+	}
+
+	@Override
+	public String toString() {
+		return "BestellungErgebnis [index=" + index + ", status=" + status + ", bestellungUri=" + bestellungUri
+			   + ", fehlermeldung=" + fehlermeldung + "]";
+	}
+}
@@ -28,20 +28,27 @@ import de.shop.bestellverwaltung.domain.Warenkorbposition;
 import de.shop.kundenverwaltung.business.KundeService;
 import de.shop.kundenverwaltung.domain.AbstractKunde;
 import de.shop.kundenverwaltung.rest.KundeResource;
+import de.shop.util.rest.Messages;
 import de.shop.util.rest.UriHelper;
 import java.lang.invoke.MethodHandles;
 import java.net.URI;
 import java.security.Principal;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.logging.Logger;
 import javax.ejb.EJB;
 import javax.ejb.Stateless;
 import javax.inject.Inject;
 import javax.validation.Valid;
+import javax.validation.constraints.Size;
 import javax.ws.rs.BeanParam;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
@@ -50,6 +57,7 @@ import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.GenericEntity;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.Link;
 import javax.ws.rs.core.Response;
@@ -59,11 +67,14 @@ import static de.shop.util.Constants.ADD_LINK;
 import static de.shop.util.Constants.SELF_LINK;
 import static java.util.logging.Level.FINER;
 import static java.util.logging.Level.FINEST;
+import static java.util.logging.Level.WARNING;
 import static javax.ws.rs.core.MediaType.APPLICATION_FORM_URLENCODED;
 import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
 import static javax.ws.rs.core.MediaType.APPLICATION_XML;
 import static javax.ws.rs.core.MediaType.TEXT_XML;
 import static javax.ws.rs.core.Response.Status.BAD_REQUEST;
+import static javax.ws.rs.core.Response.Status.CREATED;
+import static javax.ws.rs.core.Response.Status.INTERNAL_SERVER_ERROR;
 
 
 /**
@@ -76,6 +87,12 @@ import static javax.ws.rs.core.Response.Status.BAD_REQUEST;
 public class BestellungResource {
 	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
 	
+	// Maximale Anzahl an Bestellungen bei POST /bestellungen/batch
+	private static final int BATCH_MAX = 100;
+	
+	private static final String MSG_KEY_ARTIKEL_ID_INVALID = "bestellung.artikel.id.invalid";
+	private static final String MSG_KEY_BATCH_FEHLER = "bestellung.batch.fehler";
+	
 	@Context
 	private UriInfo uriInfo;
 	
@@ -102,6 +119,9 @@ public class BestellungResource {
 	
 	@Inject
 	private UriHelper uriHelper;
+	
+	@Inject
+	private Messages messages;
 
 	/**
 	 * Mit der URL /bestellungen/{id} eine Bestellung ermitteln
@@ -210,6 +230,102 @@ public class BestellungResource {
 				       .build();
 	}
 	
+	/**
+	 * Mit der URL /bestellungen/batch mehrere neue Bestellungen anlegen, z.B. beim Import von Bestellungen.
+	 * Die Artikel aller Bestellungen werden mit einem einzigen DB-Zugriff ermittelt, und jede gueltige
+	 * Bestellung wird in einer eigenen Transaktion abgespeichert. Eine Bestellung ohne einen einzigen
+	 * gefundenen Artikel oder mit einem Fehler beim Abspeichern wird zurueckgewiesen, ohne dass die anderen
+	 * Bestellungen davon betroffen sind.
+	 * @param bestellungen die neuen Bestellungen
+	 * @return Response mit einem Ergebnis pro Bestellung in der Reihenfolge des Requests
+	 */
+	@POST
+	@Path("/batch")
+	public Response bestellenBatch(@Valid
+	                               @Size(min = 1, max = BATCH_MAX, message = "{bestellung.batch.size}")
+	                               List<Bestellung> bestellungen) {
+		// Den Kunden aus dem Principal nur einmal fuer alle Bestellungen ermitteln, ohne seine Bestellungen
+		final AbstractKunde kunde = ks.findKundeByUserName(principal.getName(), KundeService.FetchType.NUR_KUNDE);
+		
+		// IDs der (persistenten) Artikel aller Bestellungen ohne Duplikate ermitteln
+		final Set<Long> artikelIds = new HashSet<>();
+		bestellungen.forEach(b -> b.getBestellpositionen()
+		                           .stream()
+		                           .map(bp -> toArtikelId(bp.getArtikelUri()))
+		                           .filter(Objects::nonNull)
+		                           .forEach(artikelIds::add));
+		
+		// 1 DB-Zugriff fuer alle Artikel und Zugriff auf die gefundenen Artikel ueber eine HashMap.
+		// Ohne eine einzige gueltige Artikel-ID wird jede Bestellung einzeln zurueckgewiesen (s.u.)
+		final Map<Long, Artikel> artikelMap = new HashMap<>();
+		if (!artikelIds.isEmpty()) {
+			as.findArtikelByIds(new ArrayList<>(artikelIds)).forEach(a -> artikelMap.put(a.getId(), a));
+		}
+		
+		// Bestellpositionen mit nicht-gefundenen Artikeln werden eliminiert.
+		// Bestellungen ohne eine einzige Bestellposition werden zurueckgewiesen.
+		final BestellungErgebnis[] ergebnisse = new BestellungErgebnis[bestellungen.size()];
+		for (int i = 0; i < ergebnisse.length; i++) {
+			final Bestellung bestellung = bestellungen.get(i);
+			final List<Bestellposition> neueBestellpositionen = new ArrayList<>();
+			for (Bestellposition bp : bestellung.getBestellpositionen()) {
+				final Long artikelId = toArtikelId(bp.getArtikelUri());
+				final Artikel artikel = artikelId == null ? null : artikelMap.get(artikelId);
+				if (artikel != null) {
+					bp.setArtikel(artikel);
+					neueBestellpositionen.add(bp);
+				}
+			}
+			
+			if (neueBestellpositionen.isEmpty()) {
+				final String msg = messages.getMessage(httpHeaders, MSG_KEY_ARTIKEL_ID_INVALID);
+				ergebnisse[i] = new BestellungErgebnis(i, BAD_REQUEST.getStatusCode(), null, msg);
+				continue;
+			}
+			bestellung.setBestellpositionen(neueBestellpositionen);
+			
+			// Jede Bestellung in einer eigenen Transaktion, damit ein Fehler nur sie selbst zurueckrollt
+			final Bestellung gespeicherteBestellung;
+			try {
+				gespeicherteBestellung = bs.createBestellungInNeuerTransaktion(bestellung, kunde);
+			}
+			catch (RuntimeException e) {
+				// z.B. EJBException oder eine ApplicationException mit Rollback
+				LOGGER.log(WARNING, "Bestellung " + i + " im Batch nicht gespeichert", e);
+				final String msg = messages.getMessage(httpHeaders, MSG_KEY_BATCH_FEHLER);
+				ergebnisse[i] = new BestellungErgebnis(i, INTERNAL_SERVER_ERROR.getStatusCode(), null, msg);
+				continue;
+			}
+			final URI bestellungUri = getUriBestellung(gespeicherteBestellung, uriInfo);
+			ergebnisse[i] = new BestellungErgebnis(i, CREATED.getStatusCode(), bestellungUri, null);
+		}
+		if (LOGGER.isLoggable(FINEST)) {
+			LOGGER.finest(Arrays.toString(ergebnisse));
+		}
+		
+		return Response.ok(new GenericEntity<List<BestellungErgebnis>>(Arrays.asList(ergebnisse)) { })
+		               .build();
+	}
+	
+	private static Long toArtikelId(URI artikelUri) {
+		if (artikelUri == null) {
+			return null;
+		}
+		final String artikelUriStr = artikelUri.toString();
+		final int startPos = artikelUriStr.lastIndexOf('/') + 1;
+		final String artikelIdStr = artikelUriStr.substring(startPos);
+		try {
+			return Long.valueOf(artikelIdStr);
+		}
+		catch (NumberFormatException ignore) {
+			// Ungueltige Artikel-ID: wird nicht beruecksichtigt
+			if (LOGGER.isLoggable(FINER)) {
+				LOGGER.finer("Keine gueltige Artikel-Nr.: " + artikelIdStr);
+			}
+			return null;
+		}
+	}
+	
 	/**
 	 * Mit der URL /bestellungen eine neue Bestellung aus dem persistenten Warenkorb anlegen<br>
 	 * Header: content-type application/x-www-form-urlencoded<br>
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2013 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.kundenverwaltung.business;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Event, falls mehrere Kunden durch eine Bulk-Operation geloescht wurden, d.h. ohne dass die Kunden als
+ * Entities geladen wurden
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+public class GeloeschteKunden {
+	private final List<Long> ids;
+	private final List<String> nachnamen;
+	
+	public GeloeschteKunden(List<Long> ids, List<String> nachnamen) {
+		super();
+		this.ids = Collections.unmodifiableList(ids);
+		this.nachnamen = Collections.unmodifiableList(nachnamen);
+	}
+	
+	public List<Long> getIds() {
+		return ids;
+	}
+	
+	// Ein Nachname ist so oft enthalten, wie Kunden mit diesem Nachnamen geloescht wurden
+	public List<String> getNachnamen() {
+		return nachnamen;
+	}
+	
+	@Override
+	public String toString() {
+		return "GeloeschteKunden [ids=" + ids + ", nachnamen=" + nachnamen + "]";
+	}
+}
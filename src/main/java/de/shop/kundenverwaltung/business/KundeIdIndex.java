@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2013 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.kundenverwaltung.business;
+
+import de.shop.kundenverwaltung.domain.AbstractKunde;
+import de.shop.util.concurrency.AenderungsPuffer;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.logging.Logger;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+
+import static javax.enterprise.event.TransactionPhase.AFTER_SUCCESS;
+
+
+/**
+ * Sortierte Menge aller Kunden-IDs im Hauptspeicher, damit die Suche nach einem ID-Praefix
+ * (z.B. bei Autocomplete) nicht mit CONCAT('', k.id) LIKE '...%' alle Datensaetze in der DB durchlaufen muss.
+ * Zu einem Praefix p gehoert fuer jede Stellenanzahl ein zusammenhaengender Bereich von IDs,
+ * z.B. fuer p = 12 die Bereiche [12, 12], [120, 129], [1200, 1299], ...
+ * Aenderungen, die waehrend des Einlesens committet werden, werden danach nachgetragen.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+@ApplicationScoped
+public class KundeIdIndex {
+	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+	
+	// Maximale Anzahl an Dezimalstellen eines long
+	private static final int STELLEN_MAX = 19;
+	
+	@Inject
+	private EntityManager em;
+	
+	private final NavigableSet<Long> ids = new ConcurrentSkipListSet<>();
+	
+	private final AenderungsPuffer aenderungen = new AenderungsPuffer();
+	
+	/**
+	 * IDs zu einem gegebenen Praefix suchen
+	 * @param prefix der Praefix der IDs als String
+	 * @param max Maximale Anzahl der IDs
+	 * @return Die IDs aufsteigend sortiert
+	 */
+	public List<Long> findIdsByPrefix(String prefix, int max) {
+		final List<Long> result = new ArrayList<>();
+		if (prefix == null || prefix.isEmpty() || prefix.length() > STELLEN_MAX || prefix.charAt(0) == '0'
+			|| !prefix.chars().allMatch(Character::isDigit)) {
+			return result;
+		}
+		init();
+		
+		// Bereiche mit aufsteigender Stellenanzahl: dadurch ist das Ergebnis insgesamt aufsteigend sortiert
+		long von = Long.parseLong(prefix);
+		long bis = von;
+		for (int stellen = prefix.length(); stellen <= STELLEN_MAX; stellen++) {
+			for (Long id : ids.subSet(von, true, bis, true)) {
+				if (result.size() >= max) {
+					return result;
+				}
+				result.add(id);
+			}
+			
+			// Ueberlauf bei der naechsten Stellenanzahl?
+			if (von > (Long.MAX_VALUE - 9) / 10 || bis > (Long.MAX_VALUE - 9) / 10) {
+				break;
+			}
+			von = von * 10;
+			bis = bis * 10 + 9;
+		}
+		return result;
+	}
+	
+	/**
+	 * Die ID eines neuen Kunden hinzufuegen, sobald die Transaktion erfolgreich abgeschlossen ist
+	 * @param kunde Der neue Kunde
+	 */
+	public void onCreateKunde(@Observes(during = AFTER_SUCCESS) @NeuerKunde AbstractKunde kunde) {
+		final Long id = kunde.getId();
+		aenderungen.anwenden(() -> ids.add(id));
+	}
+	
+	/**
+	 * Die ID eines geloeschten Kunden entfernen, sobald die Transaktion erfolgreich abgeschlossen ist
+	 * @param kunde Der geloeschte Kunde
+	 */
+	public void onDeleteKunde(@Observes(during = AFTER_SUCCESS) @GeloeschterKunde AbstractKunde kunde) {
+		final Long id = kunde.getId();
+		aenderungen.anwenden(() -> ids.remove(id));
+	}
+	
+	/**
+	 * Die IDs von Kunden entfernen, die durch eine Bulk-Operation geloescht wurden
+	 * @param kunden IDs und Nachnamen der geloeschten Kunden
+	 */
+	public void onDeleteKunden(@Observes(during = AFTER_SUCCESS) GeloeschteKunden kunden) {
+		aenderungen.anwenden(() -> ids.removeAll(kunden.getIds()));
+	}
+	
+	private void init() {
+		aenderungen.aufbauen(this::lesen, this::uebernehmen);
+	}
+	
+	private List<Long> lesen() {
+		return em.createNamedQuery(AbstractKunde.FIND_IDS, Long.class)
+		         .getResultList();
+	}
+	
+	private void uebernehmen(List<Long> snapshot) {
+		ids.addAll(snapshot);
+		LOGGER.info(ids.size() + " Kunden-IDs eingelesen");
+	}
+}
@@ -23,20 +23,28 @@ import de.shop.util.mail.AbsenderMail;
 import de.shop.util.mail.AbsenderName;
 import de.shop.util.mail.EmpfaengerMail;
 import de.shop.util.mail.EmpfaengerName;
+import de.shop.util.mail.MailVersand;
+import de.shop.util.persistence.OutboxBatch;
 import java.io.UnsupportedEncodingException;
 import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.logging.Logger;
 import javax.annotation.PostConstruct;
-import javax.ejb.Asynchronous;
 import javax.ejb.Stateless;
 import javax.enterprise.event.Observes;
 import javax.inject.Inject;
 import javax.mail.Message.RecipientType;
 import javax.mail.MessagingException;
 import javax.mail.Session;
-import javax.mail.Transport;
 import javax.mail.internet.InternetAddress;
 import javax.mail.internet.MimeMessage;
+import javax.persistence.EntityManager;
+
+import static de.shop.util.persistence.OutboxTyp.NEUER_KUNDE;
+import static java.util.logging.Level.WARNING;
 
 
 /**
@@ -48,9 +56,15 @@ public class KundeObserver {
 	
 	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
 	
+	@Inject
+	private transient EntityManager em;
+	
 	@Inject
 	private transient Session session;
 	
+	@Inject
+	private MailVersand mailVersand;
+	
 	@Inject
 	@AbsenderMail
 	private String absenderMail;
@@ -78,13 +92,47 @@ public class KundeObserver {
 		LOGGER.info("Empfaenger fuer Markteting-Emails: " + empfaengerName + "<" + empfaengerMail + ">");
 	}
 	
+	/**
+	 * Marketing-Emails zu neuen Kunden, die von der Outbox batchweise ausgeliefert werden.
+	 * Alle Emails eines Batches werden ueber eine Verbindung aus dem Pool von MailVersand gesendet.
+	 * @param batch IDs der neuen Kunden
+	 */
 	// Loose Kopplung durch @Observes, d.h. ohne JMS
-	@Asynchronous
-	public void onCreateKunde(@Observes @NeuerKunde final AbstractKunde kunde) {
-		if (absenderMail == null || empfaengerMail == null || kunde == null) {
+	public void onCreateKunden(@Observes OutboxBatch batch) {
+		if (batch.getTyp() != NEUER_KUNDE || absenderMail == null || empfaengerMail == null) {
 			return;
 		}
 		
+		// Zwischenzeitlich geloeschte Kunden werden nicht gefunden
+		final List<AbstractKunde> kunden =
+			em.createNamedQuery(AbstractKunde.FIND_KUNDEN_BY_IDS, AbstractKunde.class)
+			  .setParameter(AbstractKunde.PARAM_KUNDE_IDS, batch.getReferenzIds())
+			  .getResultList();
+		if (kunden.isEmpty()) {
+			return;
+		}
+		
+		// Email -> ID, damit nicht versendete Emails als fehlgeschlagen gemeldet werden koennen
+		final Map<MimeMessage, Long> messages = new LinkedHashMap<>();
+		for (AbstractKunde kunde : kunden) {
+			try {
+				final MimeMessage message = createMessage(kunde);
+				if (message != null) {
+					messages.put(message, kunde.getId());
+				}
+			}
+			catch (MessagingException e) {
+				LOGGER.log(WARNING, "Email nicht erstellt: " + kunde.getId(), e);
+				batch.fehlgeschlagen(kunde.getId());
+			}
+		}
+		
+		// Nur die nicht versendeten Emails werden von der Outbox erneut ausgeliefert
+		mailVersand.senden(new ArrayList<>(messages.keySet()))
+		           .forEach(message -> batch.fehlgeschlagen(messages.get(message)));
+	}
+	
+	private MimeMessage createMessage(AbstractKunde kunde) throws MessagingException {
 		final MimeMessage message = new MimeMessage(session);
 
 		try {
@@ -95,34 +143,35 @@ public class KundeObserver {
 			// Empfaenger setzen
 			final InternetAddress empfaenger = new InternetAddress(empfaengerMail, empfaengerName);
 			message.setRecipient(RecipientType.TO, empfaenger);   // RecipientType: TO, CC, BCC
+		}
+		catch (UnsupportedEncodingException e) {
+			LOGGER.severe(e.getMessage());
+			return null;
+		}
 
-			final Adresse adr = kunde.getAdresse();
-
-			// Subject setzen
-			final String subject = adr == null
-					? "Neuer Kunde ohne Adresse"
-					: "Neuer Kunde in " + adr.getPlz() + " " + adr.getOrt();
-			message.setSubject(subject);
+		final Adresse adr = kunde.getAdresse();
 
-			// HTML-Text setzen mit MIME Type "text/html"
-			final String text = adr == null
-					? "<p><b>" + kunde.getVorname() + " " + kunde.getNachname() + "</b></p>" + NEWLINE
-					: "<p><b>" + kunde.getVorname() + " " + kunde.getNachname() + "</b></p>" + NEWLINE
-					  + "<p>" + adr.getPlz() + " " + adr.getOrt() + "</p>" + NEWLINE
-					  + "<p>" + adr.getStrasse() + " " + adr.getHausnr() + "</p>" + NEWLINE;
+		// Subject setzen
+		final String subject = adr == null
+				? "Neuer Kunde ohne Adresse"
+				: "Neuer Kunde in " + adr.getPlz() + " " + adr.getOrt();
+		message.setSubject(subject);
 
-			message.setContent(text, "text/html");
+		// HTML-Text setzen mit MIME Type "text/html"
+		final String text = adr == null
+				? "<p><b>" + kunde.getVorname() + " " + kunde.getNachname() + "</b></p>" + NEWLINE
+				: "<p><b>" + kunde.getVorname() + " " + kunde.getNachname() + "</b></p>" + NEWLINE
+				  + "<p>" + adr.getPlz() + " " + adr.getOrt() + "</p>" + NEWLINE
+				  + "<p>" + adr.getStrasse() + " " + adr.getHausnr() + "</p>" + NEWLINE;
 
-			// Hohe Prioritaet einstellen
-			//message.setHeader("Importance", "high");
-			//message.setHeader("Priority", "urgent");
-			//message.setHeader("X-Priority", "1");
+		message.setContent(text, "text/html");
 
-			// HTML-Text mit einem Bild als Attachment
-			Transport.send(message);
-		}
-		catch (MessagingException | UnsupportedEncodingException e) {
-			LOGGER.severe(e.getMessage());
-		}
+		// Hohe Prioritaet einstellen
+		//message.setHeader("Importance", "high");
+		//message.setHeader("Priority", "urgent");
+		//message.setHeader("X-Priority", "1");
+		
+		message.saveChanges();
+		return message;
 	}
 }
@@ -19,60 +19,263 @@ package de.shop.kundenverwaltung.business;
 
 import de.shop.auth.domain.RolleType;
 import de.shop.kundenverwaltung.domain.AbstractKunde;
+import de.shop.kundenverwaltung.domain.Adresse;
+import de.shop.kundenverwaltung.domain.Privatkunde;
+import de.shop.util.persistence.BlobFreigabe;
+import de.shop.util.persistence.File;
+import de.shop.util.persistence.JobFortschritt;
+import de.shop.util.persistence.MimeType;
+import de.shop.util.persistence.QuerySpaces;
 import java.lang.invoke.MethodHandles;
-import java.util.Collection;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.logging.Logger;
+import javax.annotation.Resource;
 import javax.ejb.Schedule;
+import javax.ejb.SessionContext;
 import javax.ejb.Stateless;
+import javax.ejb.TransactionAttribute;
+import javax.enterprise.event.Event;
 import javax.inject.Inject;
 import javax.persistence.EntityManager;
 
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.logging.Level.FINER;
+import static java.util.logging.Level.FINEST;
+import static java.util.logging.Level.WARNING;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+import static javax.ejb.TransactionAttributeType.NOT_SUPPORTED;
+import static javax.ejb.TransactionAttributeType.REQUIRES_NEW;
+import static javax.persistence.LockModeType.PESSIMISTIC_WRITE;
+
 /**
+ * Loescht naechtlich die Kunden ohne Bestellungen, Warenkorb und Wartungsvertraege. Die Kandidaten werden
+ * per Keyset (ID) in Chunks gelesen; jeder Chunk wird in einer eigenen, kurzen Transaktion erneut mit
+ * denselben Bedingungen und einer Sperre gelesen, mengenorientiert geloescht und der JobFortschritt
+ * aktualisiert. Schlaegt ein Chunk fehl, werden seine Kunden einzeln geloescht.
  * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
  */
 @Stateless
 public class KundeRemover {
 	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
-
-	//private static final String QUERY_STR = ;
+	
+	private static final String JOB = "KundeRemover";
+	private static final int CHUNK_GROESSE = 500;
+	private static final long MILLIS_PRO_SEKUNDE = 1000L;
 	
 	@Inject
 	private transient EntityManager em;
 	
 	@Inject
-	private KundeService ks;
+	private transient Event<GeloeschteKunden> eventDelete;
 	
+	@Inject
+	private transient Event<BlobFreigabe> eventBlob;
+	
+	@Resource
+	private SessionContext ctx;
+	
+	/**
+	 * Alle Kunden ohne Bestellungen loeschen. Ein abgebrochener Durchlauf wird nach der zuletzt geloeschten
+	 * ID fortgesetzt.
+	 */
 	@Schedule(dayOfMonth = "*", hour = "2", minute = "0", year = "*", persistent = false)
+	@TransactionAttribute(NOT_SUPPORTED)
 	public void deleteKundenOhneBestellungen() {
-		// Bulk Delete ist wegen cascade=DELETE in AbstractKunde.adresse nicht moeglich. Zitat aus der Spezifikation:
+		// Bulk Delete ist wegen cascade=DELETE in AbstractKunde.adresse nur moeglich, wenn die abhaengigen
+		// Tabellen explizit vorher geloescht werden. Zitat aus der Spezifikation:
 		// "A delete operation only applies to entities of the specified class and its subclasses.
 		// It does not cascade to related entities."
-		//final int anzahl = em.createQuery("DELETE FROM AbstractKunde k WHERE k.bestellungen IS EMPTY")
-		//                     .executeUpdate();
+		final KundeRemover remover = ctx.getBusinessObject(KundeRemover.class);
+		
+		final JobFortschritt fortschritt = em.find(JobFortschritt.class, JOB);
+		long letzteId = 0;
+		if (fortschritt != null) {
+			letzteId = fortschritt.getLetzteId();
+			LOGGER.info("Abgebrochener Durchlauf wird nach der ID " + letzteId + " fortgesetzt");
+		}
 		
-		// FIXME https://hibernate.atlassian.net/browse/HHH-8993 CriteriaDelete ignoriert cascade=DELETE
-		// DELETE
-		// FROM   AbstractKunde k
-		// WHERE  k.bestellungen IS EMPTY
-		//final CriteriaBuilder builder = em.getCriteriaBuilder();
-		//final CriteriaDelete<AbstractKunde> criteriaDelete = builder.createCriteriaDelete(AbstractKunde.class);
-		//final Root<AbstractKunde> kunden = criteriaDelete.from(AbstractKunde.class);
-		//final Expression<List<Bestellung>> bestellungenPath = kunden.get(AbstractKunde_.bestellungen);
-		//final Predicate pred = builder.isEmpty(bestellungenPath);
-		//criteriaDelete.where(pred);
-		//final int anzahl = em.createQuery(criteriaDelete).executeUpdate();
+		final long start = System.nanoTime();
+		int anzahl = 0;
+		int chunks = 0;
+		int fehlgeschlagen = 0;
+		List<Long> kandidaten;
+		do {
+			// Die Kandidaten bestimmen nur die Grenzen des Chunks und werden ohne Sperre gelesen
+			kandidaten = em.createNamedQuery(AbstractKunde.FIND_IDS_OHNE_BESTELLUNGEN_AFTER_ID, Long.class)
+			               .setParameter(AbstractKunde.PARAM_KUNDE_ID, letzteId)
+			               .setMaxResults(CHUNK_GROESSE)
+			               .getResultList();
+			if (kandidaten.isEmpty()) {
+				break;
+			}
+			
+			final long bisId = kandidaten.get(kandidaten.size() - 1);
+			try {
+				anzahl += remover.deleteChunk(letzteId, bisId);
+			}
+			catch (RuntimeException e) {
+				if (LOGGER.isLoggable(FINEST)) {
+					LOGGER.log(FINEST, "Chunk bis ID " + bisId + " fehlgeschlagen, Kunden werden einzeln geloescht", e);
+				}
+				long vonId = letzteId;
+				for (Long id : kandidaten) {
+					try {
+						anzahl += remover.deleteChunk(vonId, id);
+					}
+					catch (RuntimeException einzeln) {
+						// z.B. eine neue Bestellung seit dem Lesen: nur dieser Kunde wird uebersprungen
+						LOGGER.log(WARNING, "Kunde mit ID " + id + " konnte nicht geloescht werden", einzeln);
+						remover.fortschrittSpeichern(id, 0);
+						fehlgeschlagen++;
+					}
+					vonId = id;
+				}
+			}
+			chunks++;
+			letzteId = bisId;
+		} while (kandidaten.size() == CHUNK_GROESSE);
+		
+		remover.fortschrittLoeschen();
+		
+		final long dauer = NANOSECONDS.toMillis(System.nanoTime() - start);
+		final long proSekunde = anzahl * MILLIS_PRO_SEKUNDE / Math.max(dauer, 1);
+		LOGGER.info(anzahl + " Kunden ohne Bestellungen wurden in " + chunks + " Chunks und " + dauer
+		            + " ms geloescht (" + proSekunde + " Kunden/s, " + fehlgeschlagen + " Kunden fehlgeschlagen)");
+	}
+	
+	/**
+	 * Die Kunden mit einer ID im Bereich (vonId, bisId] mit Adresse, Rollen, Hobbies und Datei in einer
+	 * eigenen Transaktion loeschen. Die Kunden werden mit denselben Bedingungen wie die Kandidaten erneut
+	 * gelesen und gesperrt, damit z.B. eine zwischenzeitliche Bestellung oder eine neue Datei beruecksichtigt
+	 * wird. Administratoren werden nicht geloescht.
+	 * @param vonId Die groesste ID des vorherigen Chunks
+	 * @param bisId Die groesste ID des Chunks
+	 * @return Anzahl der geloeschten Kunden
+	 */
+	@TransactionAttribute(REQUIRES_NEW)
+	public int deleteChunk(long vonId, long bisId) {
+		final List<Object[]> kunden = em.createNamedQuery(AbstractKunde.FIND_KUNDEN_OHNE_BESTELLUNGEN_BETWEEN,
+		                                                  Object[].class)
+		                                .setParameter(AbstractKunde.PARAM_KUNDE_ID, vonId)
+		                                .setParameter(AbstractKunde.PARAM_KUNDE_ID_MAX, bisId)
+		                                .setLockMode(PESSIMISTIC_WRITE)
+		                                .getResultList();
+		final Set<Long> adminIds = kunden.isEmpty() ? new HashSet<>() : findAdminIds(kunden);
 		
-		final List<AbstractKunde> kunden =
-				                  em.createNamedQuery(AbstractKunde.FIND_KUNDEN_OHNE_BESTELLUNGEN, AbstractKunde.class)
-				                    .getResultList();
-		kunden.forEach(k -> {
-			final Collection<RolleType> rollen = k.getRollen();
-			if (rollen == null || rollen.isEmpty() || !rollen.contains(RolleType.ADMIN)) {
-				ks.deleteKunde(k);
+		final List<Long> ids = new ArrayList<>(kunden.size());
+		final List<String> nachnamen = new ArrayList<>(kunden.size());
+		final List<Long> fileIds = new ArrayList<>();
+		for (Object[] zeile : kunden) {
+			final Long id = (Long) zeile[0];
+			if (adminIds.contains(id)) {
+				continue;
 			}
-		});
+			ids.add(id);
+			nachnamen.add((String) zeile[1]);
+			if (zeile[2] != null) {
+				fileIds.add((Long) zeile[2]);
+			}
+		}
+		
+		if (!ids.isEmpty()) {
+			deleteKunden(ids, nachnamen, fileIds);
+		}
+		
+		weiter(bisId, ids.size());
+		if (LOGGER.isLoggable(FINER)) {
+			LOGGER.finer(ids.size() + " Kunden mit IDs bis " + bisId + " geloescht");
+		}
+		return ids.size();
+	}
+	
+	/**
+	 * Den Fortschritt in einer eigenen Transaktion weiterschalten, z.B. nach einem fehlgeschlagenen Kunden
+	 * @param bisId Die groesste verarbeitete ID
+	 * @param anzahl Anzahl der geloeschten Kunden
+	 */
+	@TransactionAttribute(REQUIRES_NEW)
+	public void fortschrittSpeichern(long bisId, int anzahl) {
+		weiter(bisId, anzahl);
+	}
+	
+	/**
+	 * Den Fortschritt nach einem vollstaendigen Durchlauf loeschen, damit der naechste von vorne beginnt
+	 */
+	@TransactionAttribute(REQUIRES_NEW)
+	public void fortschrittLoeschen() {
+		final JobFortschritt fortschritt = em.find(JobFortschritt.class, JOB);
+		if (fortschritt != null) {
+			em.remove(fortschritt);
+		}
+	}
+	
+	private Set<Long> findAdminIds(List<Object[]> kunden) {
+		final List<Long> ids = kunden.stream()
+		                             .map(zeile -> (Long) zeile[0])
+		                             .collect(toList());
+		return ((List<?>) em.createNamedQuery(AbstractKunde.FIND_IDS_BY_ROLLE)
+		                    .setParameter(AbstractKunde.PARAM_KUNDE_ROLLE, RolleType.ADMIN.getValue())
+		                    .setParameter(AbstractKunde.PARAM_KUNDE_IDS, ids)
+		                    .getResultList())
+		       .stream()
+		       .map(id -> ((Number) id).longValue())
+		       .collect(toSet());
+	}
+	
+	private void deleteKunden(List<Long> ids, List<String> nachnamen, List<Long> fileIds) {
+		// Die Dateien der gesperrten Kunden: file_fk kann sich bis zum Commit nicht mehr aendern
+		final List<BlobFreigabe> freigaben = new ArrayList<>();
+		if (!fileIds.isEmpty()) {
+			final Set<String> blobs = new HashSet<>();
+			em.createNamedQuery(File.FIND_BLOBS_BY_IDS, Object[].class)
+			  .setParameter(File.PARAM_IDS, fileIds)
+			  .getResultList()
+			  .forEach(zeile -> {
+				  final String hash = (String) zeile[0];
+				  final MimeType mimeType = (MimeType) zeile[1];
+				  // Ein Blob ist durch Hashwert und MIME-Type bestimmt, siehe FileService.countReferenzen()
+				  if (hash != null && blobs.add(hash + "." + mimeType)) {
+					  freigaben.add(new BlobFreigabe(hash, mimeType));
+				  }
+			  });
+		}
 		
-		LOGGER.info("" + kunden.size() + " Kunden ohne Bestellungen wurden geloescht");
+		// Reihenfolge wegen der Fremdschluessel: zuerst die Tabellen mit kunde_fk, die Dateien erst nach
+		// den Kunden wegen kunde.file_fk
+		em.createNamedQuery(Adresse.DELETE_BY_KUNDE_IDS)
+		  .setParameter(Adresse.PARAM_KUNDE_IDS, ids)
+		  .executeUpdate();
+		// Native DELETE mit Query Spaces, damit nicht der gesamte 2nd-Level-Cache invalidiert wird
+		QuerySpaces.executeUpdate(em.createNamedQuery(AbstractKunde.DELETE_ROLLEN_BY_IDS)
+		                            .setParameter(AbstractKunde.PARAM_KUNDE_IDS, ids),
+		                          AbstractKunde.TABELLE_ROLLEN);
+		QuerySpaces.executeUpdate(em.createNamedQuery(Privatkunde.DELETE_HOBBIES_BY_IDS)
+		                            .setParameter(Privatkunde.PARAM_IDS, ids),
+		                          Privatkunde.TABELLE_HOBBIES);
+		em.createNamedQuery(AbstractKunde.DELETE_BY_IDS)
+		  .setParameter(AbstractKunde.PARAM_KUNDE_IDS, ids)
+		  .executeUpdate();
+		if (!fileIds.isEmpty()) {
+			em.createNamedQuery(File.DELETE_BY_IDS)
+			  .setParameter(File.PARAM_IDS, fileIds)
+			  .executeUpdate();
+		}
+		
+		// Die Observer werden erst nach dem Commit des Chunks aufgerufen
+		eventDelete.fire(new GeloeschteKunden(ids, nachnamen));
+		freigaben.forEach(eventBlob::fire);
+	}
+	
+	private void weiter(long bisId, int anzahl) {
+		JobFortschritt fortschritt = em.find(JobFortschritt.class, JOB);
+		if (fortschritt == null) {
+			fortschritt = new JobFortschritt(JOB);
+			em.persist(fortschritt);
+		}
+		fortschritt.weiter(bisId, anzahl);
 	}
 }
@@ -32,10 +32,16 @@ import de.shop.kundenverwaltung.domain.GeschlechtType;
 import de.shop.kundenverwaltung.domain.Privatkunde;
 import de.shop.kundenverwaltung.domain.Privatkunde_;
 import de.shop.util.NoMimeTypeException;
+import de.shop.util.interceptor.Timed;
+import de.shop.util.persistence.BlobAblage;
+import de.shop.util.persistence.BlobFreigabe;
 import de.shop.util.persistence.ConcurrentDeletedException;
 import de.shop.util.persistence.File;
 import de.shop.util.persistence.FileHelper;
+import de.shop.util.persistence.HochgeladeneDatei;
 import de.shop.util.persistence.MimeType;
+import de.shop.util.persistence.OutboxService;
+import java.io.InputStream;
 import java.io.Serializable;
 import java.lang.invoke.MethodHandles;
 import java.security.Principal;
@@ -43,12 +49,12 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.logging.Logger;
 import javax.annotation.security.PermitAll;
 import javax.annotation.security.RolesAllowed;
 import javax.ejb.EJB;
 import javax.ejb.Stateless;
-import javax.enterprise.concurrent.ManagedExecutorService;
 import javax.enterprise.event.Event;
 import javax.inject.Inject;
 import javax.persistence.EntityGraph;
@@ -72,6 +78,7 @@ import static de.shop.auth.domain.RolleType.MITARBEITER_STRING;
 import static de.shop.util.Constants.LOADGRAPH;
 import static de.shop.util.Constants.MAX_AUTOCOMPLETE;
 import static de.shop.util.Constants.SHOP_DOMAIN;
+import static de.shop.util.persistence.OutboxTyp.NEUER_KUNDE;
 import static java.util.logging.Level.FINER;
 import static java.util.logging.Level.FINEST;
 
@@ -80,6 +87,7 @@ import static java.util.logging.Level.FINEST;
  * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
  */
 @Stateless
+@Timed
 @RolesAllowed({ ADMIN_STRING, MITARBEITER_STRING })
 @SecurityDomain(SHOP_DOMAIN)
 public class KundeService implements Serializable {
@@ -111,12 +119,32 @@ public class KundeService implements Serializable {
 	@Inject
 	private FileHelper fileHelper;
 	
-	@Inject
-	private transient ManagedExecutorService managedExecutorService;
 
 	@Inject
 	@NeuerKunde
 	private transient Event<AbstractKunde> event;
+	
+	@Inject
+	@GeloeschterKunde
+	private transient Event<AbstractKunde> eventDelete;
+	
+	@Inject
+	private KundeIdIndex kundeIdIndex;
+	
+	@Inject
+	private NachnameIndex nachnameIndex;
+	
+	@Inject
+	private transient Event<NachnameAenderung> eventNachname;
+	
+	@Inject
+	private transient Event<BlobFreigabe> eventBlob;
+	
+	@Inject
+	private transient Event<BlobAblage> eventBlobAblage;
+	
+	@Inject
+	private OutboxService os;
 
 	/**
 	 * Suche nach einem Kunden anhand der ID
@@ -179,9 +207,8 @@ public class KundeService implements Serializable {
 		if (Strings.isNullOrEmpty(idPrefix)) {
 			return Collections.emptyList();
 		}
-		return em.createNamedQuery(AbstractKunde.FIND_IDS_BY_PREFIX, Long.class)
-				 .setParameter(AbstractKunde.PARAM_KUNDE_ID_PREFIX, idPrefix + '%')
-				 .getResultList();
+		// Sortierte Kunden-IDs im Hauptspeicher statt CONCAT('', k.id) LIKE '...%' in der DB
+		return kundeIdIndex.findIdsByPrefix(idPrefix, Integer.MAX_VALUE);
 	}
 	
 	/**
@@ -194,9 +221,12 @@ public class KundeService implements Serializable {
 			return Collections.emptyList();
 		}
 		
-		return em.createNamedQuery(AbstractKunde.FIND_KUNDEN_BY_ID_PREFIX, AbstractKunde.class)
-				 .setParameter(AbstractKunde.PARAM_KUNDE_ID_PREFIX, id.toString() + '%')
-				 .setMaxResults(MAX_AUTOCOMPLETE)
+		final List<Long> ids = kundeIdIndex.findIdsByPrefix(id.toString(), MAX_AUTOCOMPLETE);
+		if (ids.isEmpty()) {
+			return Collections.emptyList();
+		}
+		return em.createNamedQuery(AbstractKunde.FIND_KUNDEN_BY_IDS, AbstractKunde.class)
+				 .setParameter(AbstractKunde.PARAM_KUNDE_IDS, ids)
 				 .getResultList();
 	}
 	
@@ -213,7 +243,7 @@ public class KundeService implements Serializable {
 		AbstractKunde kunde;
 		try {
 			kunde = em.createNamedQuery(AbstractKunde.FIND_KUNDE_BY_EMAIL, AbstractKunde.class)
-					  .setParameter(AbstractKunde.PARAM_KUNDE_EMAIL, email)
+					  .setParameter(AbstractKunde.PARAM_KUNDE_EMAIL, AbstractKunde.normalisieren(email))
 					  .getSingleResult();
 		}
 		catch (NoResultException e) {
@@ -313,7 +343,21 @@ public class KundeService implements Serializable {
 		
 		return query.getResultList();
 	}
-	
+
+	/**
+	 * Eine Seite von Kunden ermitteln, deren ID groesser als die gegebene ID ist ("Keyset Pagination").
+	 * Im Gegensatz zu OFFSET muss die DB dabei keine vorherigen Datensaetze ueberspringen.
+	 * @param afterId ID des letzten Kunden der vorherigen Seite oder null fuer die erste Seite
+	 * @param limit Maximale Anzahl der Kunden in der Seite
+	 * @return Liste der Kunden, aufsteigend sortiert nach der ID
+	 */
+	public List<AbstractKunde> findKundenAfterId(Long afterId, int limit) {
+		return em.createNamedQuery(AbstractKunde.FIND_KUNDEN_AFTER_ID, AbstractKunde.class)
+				 .setParameter(AbstractKunde.PARAM_KUNDE_ID, afterId == null ? Long.valueOf(0) : afterId)
+				 .setMaxResults(limit)
+				 .getResultList();
+	}
+
 
 	/**
 	 * Kunden mit gleichem Nachnamen suchen.
@@ -326,7 +370,8 @@ public class KundeService implements Serializable {
 	public List<AbstractKunde> findKundenByNachname(String nachname, FetchType fetch) {
 		final TypedQuery<AbstractKunde> query = em.createNamedQuery(AbstractKunde.FIND_KUNDEN_BY_NACHNAME,
 		                                                            AbstractKunde.class)
-						                          .setParameter(AbstractKunde.PARAM_KUNDE_NACHNAME, nachname);
+						                          .setParameter(AbstractKunde.PARAM_KUNDE_NACHNAME,
+						                                        AbstractKunde.normalisieren(nachname));
 		EntityGraph<?> entityGraph;
 		switch (fetch) {
 			case NUR_KUNDE:
@@ -361,10 +406,7 @@ public class KundeService implements Serializable {
 	 * @return Liste der Nachnamen mit gleichem Praefix
 	 */
 	public List<String> findNachnamenByPrefix(String nachnamePrefix) {
-		return em.createNamedQuery(AbstractKunde.FIND_NACHNAMEN_BY_PREFIX, String.class)
-				 .setParameter(AbstractKunde.PARAM_KUNDE_NACHNAME_PREFIX, nachnamePrefix + '%')
-				 .setMaxResults(MAX_AUTOCOMPLETE)
-				 .getResultList();
+		return nachnameIndex.findNachnamenByPrefix(nachnamePrefix, MAX_AUTOCOMPLETE);
 	}
 
 	/**
@@ -491,12 +533,12 @@ public class KundeService implements Serializable {
 		Predicate pred = null;
 
 		if (email != null) {
-			final Path<String> emailPath = k.get(AbstractKunde_.email);
-			pred = builder.equal(builder.upper(emailPath), builder.upper(builder.literal(email)));
+			final Path<String> emailPath = k.get(AbstractKunde_.emailUpper);
+			pred = builder.equal(emailPath, AbstractKunde.normalisieren(email));
 		}
 		if (nachname != null) {
-			final Path<String> nachnamePath = k.get(AbstractKunde_.nachname);
-			final Predicate tmpPred = builder.equal(builder.upper(nachnamePath), builder.upper(builder.literal(nachname)));
+			final Path<String> nachnamePath = k.get(AbstractKunde_.nachnameUpper);
+			final Predicate tmpPred = builder.equal(nachnamePath, AbstractKunde.normalisieren(nachname));
 			pred = pred == null ? tmpPred : builder.and(pred, tmpPred);
 		}
 		if (plz != null) {
@@ -571,6 +613,9 @@ public class KundeService implements Serializable {
 		em.persist(kunde);
 		event.fire(kunde);
 		
+		// Marketing-Email usw. erst nach dem Commit, dauerhaft ueber die Outbox
+		os.einreihen(NEUER_KUNDE, kunde.getId());
+		
 		return kunde;
 	}
 	
@@ -600,6 +645,7 @@ public class KundeService implements Serializable {
 			throw new ConcurrentDeletedException(kunde.getId());
 		}
 		em.detach(tmp);
+		final String nachnameAlt = tmp.getNachname();
 		
 		// Gibt es ein anderes Objekt mit gleicher Email-Adresse?
 		tmp = findKundeByEmail(kunde.getEmail());  // Kein Aufruf als Business-Methode
@@ -619,6 +665,10 @@ public class KundeService implements Serializable {
 		kunde = em.merge(kunde);   // OptimisticLockException
 		kunde.setPasswordWdh(kunde.getPassword());
 		
+		if (!Objects.equals(nachnameAlt, kunde.getNachname())) {
+			eventNachname.fire(new NachnameAenderung(kunde.getId(), nachnameAlt, kunde.getNachname()));
+		}
+		
 		return kunde;
 	}
 
@@ -653,20 +703,25 @@ public class KundeService implements Serializable {
 			throw new KundeDeleteBestellungException(kunde);
 		}
 
-		// Kundendaten loeschen
+		// Kundendaten loeschen, die Datei wird kaskadierend geloescht
+		final File file = kunde.getFile();
 		em.remove(kunde);
+		eventDelete.fire(kunde);
+		if (file != null && file.getHash() != null) {
+			eventBlob.fire(new BlobFreigabe(file.getHash(), file.getMimeType()));
+		}
 	}
 
 	
 	/**
 	 * Einem Kunden eine hochgeladene Datei ohne MIME Type (bei RESTful WS) zuordnen
 	 * @param kundeId Die ID des Kunden
-	 * @param bytes Das Byte-Array der hochgeladenen Datei
+	 * @param inputStream Der Stream der hochgeladenen Datei
 	 * @return Das Kundenobjekt
 	 */
 	@RolesAllowed({ ADMIN_STRING, MITARBEITER_STRING, KUNDE_STRING })
 	@SuppressWarnings("null")
-	public AbstractKunde setFile(Long kundeId, byte[] bytes) {
+	public AbstractKunde setFile(Long kundeId, InputStream inputStream) {
 		// Falls nur die Rolle "kunde" vorhanden ist, dann darf nur die eigene Datei aktualisiert werden
 		authService.checkSameUser(kundeId);
 		
@@ -674,35 +729,43 @@ public class KundeService implements Serializable {
 		if (kunde == null) {
 			return null;
 		}
-		final MimeType mimeType = fileHelper.getMimeType(bytes);
-		setFile(kunde, bytes, mimeType);
+		
+		// Upload ohne Zwischenspeicherung im Hauptspeicher in eine temporaere Datei schreiben
+		// und den MIME-Type nur aus den ersten Bytes ermitteln
+		final HochgeladeneDatei upload = fileHelper.storeTemp(inputStream);
+		final MimeType mimeType = fileHelper.getMimeType(upload.getPath());
+		setFile(kunde, upload, mimeType);
 		return kunde;
 	}
 	
 	/**
 	 * Einem Kunden eine hochgeladene Datei zuordnen
 	 * @param kunde Der betroffene Kunde
-	 * @param bytes Das Byte-Array der hochgeladenen Datei
+	 * @param upload Die hochgeladene Datei, siehe FileHelper.storeTemp()
 	 * @param mimeTypeStr Der MIME-Type als String
 	 * @return Das Kundenobjekt
 	 */
-	public AbstractKunde setFile(AbstractKunde kunde, byte[] bytes, String mimeTypeStr) {
+	public AbstractKunde setFile(AbstractKunde kunde, HochgeladeneDatei upload, String mimeTypeStr) {
 		final MimeType mimeType = MimeType.build(mimeTypeStr);
-		setFile(kunde, bytes, mimeType);
+		setFile(kunde, upload, mimeType);
 		return kunde;
 	}
 	
-	private void setFile(AbstractKunde kunde, byte[] bytes, MimeType mimeType) {
+	private void setFile(AbstractKunde kunde, HochgeladeneDatei upload, MimeType mimeType) {
 		if (mimeType == null) {
+			fileHelper.delete(upload.getPath());
 			throw new NoMimeTypeException();
 		}
 		
+		// Den Inhalt nach dem Commit als Blob zu seinem Hashwert ablegen: gleiche Inhalte werden nur 1x
+		// gespeichert und in der DB werden nur noch die Verwaltungsdaten gespeichert
 		final String filename = fileHelper.getFilename(kunde.getClass(), kunde.getId(), mimeType);
+		eventBlobAblage.fire(new BlobAblage(upload, mimeType));
 		
 		// Gibt es noch kein (Multimedia-) File
 		File file = kunde.getFile();
 		if (kunde.getFile() == null) {
-			file = new File(bytes, filename, mimeType);
+			file = new File(upload.getHash(), upload.getGroesse(), filename, mimeType);
 			if (LOGGER.isLoggable(FINEST)) {
 				LOGGER.finest("Neue Datei " + file);
 			}
@@ -710,19 +773,19 @@ public class KundeService implements Serializable {
 			em.persist(file);
 		}
 		else {
-			file.set(bytes, filename, mimeType);
+			final String hashAlt = file.getHash();
+			final MimeType mimeTypeAlt = file.getMimeType();
+			file.set(upload.getHash(), upload.getGroesse(), filename, mimeType);
 			if (LOGGER.isLoggable(FINEST)) {
 				LOGGER.finest("Ueberschreiben der Datei " + file);
 			}
 			em.merge(file);
+			
+			// Verweist keine andere Datei mehr auf den bisherigen Blob, wird er nach dem Commit geloescht
+			if (hashAlt != null && !hashAlt.equals(upload.getHash())) {
+				eventBlob.fire(new BlobFreigabe(hashAlt, mimeTypeAlt));
+			}
 		}
-
-		// Hochgeladenes Bild/Video/Audio in einem parallelen Thread als Datei fuer die Web-Anwendung abspeichern
-		final File newFile = kunde.getFile();
-		final Runnable storeFile = () -> {
-			fileHelper.store(newFile);
-		};
-		managedExecutorService.execute(storeFile);
 	}
 
 	private static boolean hasBestellungen(AbstractKunde kunde) {
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2013 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.kundenverwaltung.business;
+
+/**
+ * Event, falls sich bei einer Aktualisierung der Nachname eines Kunden geaendert hat
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+public class NachnameAenderung {
+	private final Long kundeId;
+	private final String alt;
+	private final String neu;
+	
+	public NachnameAenderung(Long kundeId, String alt, String neu) {
+		super();
+		this.kundeId = kundeId;
+		this.alt = alt;
+		this.neu = neu;
+	}
+	
+	public Long getKundeId() {
+		return kundeId;
+	}
+	
+	public String getAlt() {
+		return alt;
+	}
+	
+	public String getNeu() {
+		return neu;
+	}
+	
+	@Override
+	public String toString() {
+		return "NachnameAenderung [kundeId=" + kundeId + ", alt=" + alt + ", neu=" + neu + "]";
+	}
+}
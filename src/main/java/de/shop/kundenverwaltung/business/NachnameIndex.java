@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2013 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.kundenverwaltung.business;
+
+import de.shop.kundenverwaltung.domain.AbstractKunde;
+import de.shop.util.concurrency.AenderungsPuffer;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.logging.Logger;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+
+import static javax.enterprise.event.TransactionPhase.AFTER_SUCCESS;
+
+
+/**
+ * Sortiertes Verzeichnis aller Nachnamen im Hauptspeicher fuer Autocomplete, damit nicht bei jedem
+ * Tastendruck SELECT DISTINCT ... LIKE in der DB ausgefuehrt wird.
+ * Schluessel ist der normalisierte Nachname (Grossbuchstaben) gefolgt vom Originalwert, damit
+ * Schreibweisen wie "Alpha" und "ALPHA" getrennt bleiben. Der Wert ist die Anzahl der Kunden
+ * mit diesem Nachnamen, damit ein Nachname erst mit dem letzten Kunden verschwindet.
+ * Aenderungen, die waehrend des Einlesens committet werden, werden danach nachgetragen. Dazu wird beim Einlesen
+ * der Nachname je Kunden-ID gemerkt, damit eine Aenderung, die der Snapshot bereits enthaelt, nicht nochmals
+ * gezaehlt wird. Danach werden nur noch die Anzahlen gehalten.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+@ApplicationScoped
+public class NachnameIndex {
+	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+	
+	private static final char TRENNER = '\u0000';
+	
+	@Inject
+	private EntityManager em;
+	
+	private final ConcurrentNavigableMap<String, Integer> nachnamen = new ConcurrentSkipListMap<>();
+	
+	private final AenderungsPuffer aenderungen = new AenderungsPuffer();
+	
+	// Kunden-ID -> Nachname, nur waehrend die gepufferten Aenderungen nachgetragen werden
+	private Map<Long, String> snapshot;
+	
+	/**
+	 * Nachnamen zu einem gegebenen Praefix suchen, ohne Beruecksichtigung der Gross-/Kleinschreibung
+	 * @param prefix der Praefix der Nachnamen
+	 * @param max Maximale Anzahl der Nachnamen
+	 * @return Die Nachnamen sortiert
+	 */
+	public List<String> findNachnamenByPrefix(String prefix, int max) {
+		final List<String> result = new ArrayList<>();
+		if (prefix == null) {
+			return result;
+		}
+		init();
+		
+		final String von = AbstractKunde.normalisieren(prefix);
+		for (String schluessel : nachnamen.tailMap(von).keySet()) {
+			if (result.size() >= max || !schluessel.startsWith(von)) {
+				break;
+			}
+			result.add(schluessel.substring(schluessel.indexOf(TRENNER) + 1));
+		}
+		return result;
+	}
+	
+	/**
+	 * Den Nachnamen eines neuen Kunden hinzufuegen, sobald die Transaktion erfolgreich abgeschlossen ist
+	 * @param kunde Der neue Kunde
+	 */
+	public void onCreateKunde(@Observes(during = AFTER_SUCCESS) @NeuerKunde AbstractKunde kunde) {
+		final Long id = kunde.getId();
+		final String nachname = kunde.getNachname();
+		aenderungen.anwenden(() -> aendern(id, null, nachname));
+	}
+	
+	/**
+	 * Den geaenderten Nachnamen eines Kunden uebernehmen, sobald die Transaktion erfolgreich abgeschlossen ist
+	 * @param aenderung Alter und neuer Nachname
+	 */
+	public void onUpdateNachname(@Observes(during = AFTER_SUCCESS) NachnameAenderung aenderung) {
+		aenderungen.anwenden(() -> aendern(aenderung.getKundeId(), aenderung.getAlt(), aenderung.getNeu()));
+	}
+	
+	/**
+	 * Den Nachnamen eines geloeschten Kunden entfernen, sobald die Transaktion erfolgreich abgeschlossen ist
+	 * @param kunde Der geloeschte Kunde
+	 */
+	public void onDeleteKunde(@Observes(during = AFTER_SUCCESS) @GeloeschterKunde AbstractKunde kunde) {
+		final Long id = kunde.getId();
+		final String nachname = kunde.getNachname();
+		aenderungen.anwenden(() -> aendern(id, nachname, null));
+	}
+	
+	/**
+	 * Die Nachnamen von Kunden entfernen, die durch eine Bulk-Operation geloescht wurden
+	 * @param kunden IDs und Nachnamen der geloeschten Kunden
+	 */
+	public void onDeleteKunden(@Observes(during = AFTER_SUCCESS) GeloeschteKunden kunden) {
+		aenderungen.anwenden(() -> {
+			for (int i = 0; i < kunden.getIds().size(); i++) {
+				aendern(kunden.getIds().get(i), kunden.getNachnamen().get(i), null);
+			}
+		});
+	}
+	
+	// alt ist null bei einem neuen Kunden, neu ist null bei einem geloeschten Kunden
+	private void aendern(Long id, String alt, String neu) {
+		String bisher = alt;
+		if (snapshot != null) {
+			// Beim Nachtragen gilt der Stand aus dem Snapshot bzw. den vorherigen Aenderungen, d.h. eine
+			// Aenderung, die der Snapshot bereits enthaelt, aendert keine Anzahl
+			bisher = neu == null ? snapshot.remove(id) : snapshot.put(id, neu);
+		}
+		if (Objects.equals(bisher, neu)) {
+			return;
+		}
+		entfernen(bisher);
+		hinzufuegen(neu);
+	}
+	
+	private void hinzufuegen(String nachname) {
+		if (nachname == null) {
+			return;
+		}
+		nachnamen.merge(schluessel(nachname), 1, Integer::sum);
+	}
+	
+	private void entfernen(String nachname) {
+		if (nachname == null) {
+			return;
+		}
+		nachnamen.computeIfPresent(schluessel(nachname), (k, anzahl) -> anzahl > 1 ? anzahl - 1 : null);
+	}
+	
+	private static String schluessel(String nachname) {
+		return AbstractKunde.normalisieren(nachname) + TRENNER + nachname;
+	}
+	
+	private void init() {
+		aenderungen.aufbauen(this::lesen, this::uebernehmen, () -> snapshot = null);
+	}
+	
+	private List<Object[]> lesen() {
+		return em.createNamedQuery(AbstractKunde.FIND_ALL_NACHNAMEN, Object[].class)
+		         .getResultList();
+	}
+	
+	private void uebernehmen(List<Object[]> zeilen) {
+		snapshot = new HashMap<>(zeilen.size() * 4 / 3 + 1);
+		zeilen.forEach(zeile -> {
+			final String nachname = (String) zeile[1];
+			snapshot.put((Long) zeile[0], nachname);
+			hinzufuegen(nachname);
+		});
+		LOGGER.info(nachnamen.size() + " Nachnamen fuer " + zeilen.size() + " Kunden eingelesen");
+	}
+}
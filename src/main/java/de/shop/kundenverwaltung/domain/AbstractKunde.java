@@ -30,6 +30,7 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Objects;
 import java.util.Set;
 import java.util.logging.Logger;
@@ -47,6 +48,8 @@ import javax.persistence.JoinColumn;
 import javax.persistence.NamedAttributeNode;
 import javax.persistence.NamedEntityGraph;
 import javax.persistence.NamedEntityGraphs;
+import javax.persistence.NamedNativeQueries;
+import javax.persistence.NamedNativeQuery;
 import javax.persistence.NamedQueries;
 import javax.persistence.NamedQuery;
 import javax.persistence.OneToMany;
@@ -54,6 +57,8 @@ import javax.persistence.OneToOne;
 import javax.persistence.OrderColumn;
 import javax.persistence.PostLoad;
 import javax.persistence.PostPersist;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
 import javax.persistence.Table;
 import javax.persistence.Temporal;
 import javax.persistence.Transient;
@@ -101,6 +106,8 @@ import static javax.persistence.TemporalType.DATE;
 @Table(name = "kunde",
        indexes = {
 	@Index(columnList = "nachname"),
+	@Index(columnList = "nachname_upper"),
+	@Index(columnList = "email_upper", unique = true),
 	@Index(columnList = "file_fk")
 	//Zu email wird unten ein UNIQUE Index definiert
 })
@@ -114,38 +121,48 @@ import static javax.persistence.TemporalType.DATE;
 		        query = "SELECT   k"
 				        + " FROM  AbstractKunde k"
 		                + " ORDER BY k.id"),
-	@NamedQuery(name  = AbstractKunde.FIND_IDS_BY_PREFIX,
-	            query = "SELECT   k.id"
+	@NamedQuery(name  = AbstractKunde.FIND_KUNDEN_AFTER_ID,
+		        query = "SELECT   k"
 				        + " FROM  AbstractKunde k"
-				        + " WHERE CONCAT('', k.id) LIKE :" + AbstractKunde.PARAM_KUNDE_ID_PREFIX
-				        + " ORDER BY k.id"),
-	@NamedQuery(name  = AbstractKunde.FIND_KUNDEN_BY_ID_PREFIX,
+				        + " WHERE k.id > :" + AbstractKunde.PARAM_KUNDE_ID
+		                + " ORDER BY k.id"),
+	@NamedQuery(name  = AbstractKunde.FIND_IDS,
+	            query = "SELECT   k.id"
+				        + " FROM  AbstractKunde k"),
+	@NamedQuery(name  = AbstractKunde.FIND_KUNDEN_BY_IDS,
 		        query = "SELECT   k"
 		                + " FROM  AbstractKunde k"
-		                + " WHERE CONCAT('', k.id) LIKE :" + AbstractKunde.PARAM_KUNDE_ID_PREFIX
+		                + " WHERE k.id IN :" + AbstractKunde.PARAM_KUNDE_IDS
 		                + " ORDER BY k.id"),
 	@NamedQuery(name  = AbstractKunde.FIND_KUNDEN_BY_NACHNAME,
 	            query = "SELECT   k"
 				        + " FROM  AbstractKunde k"
-	            		+ " WHERE UPPER(k.nachname) = UPPER(:" + AbstractKunde.PARAM_KUNDE_NACHNAME + ")"),
+	            		+ " WHERE k.nachnameUpper = :" + AbstractKunde.PARAM_KUNDE_NACHNAME),
 	@NamedQuery(name  = AbstractKunde.FIND_KUNDE_BY_EMAIL,
                 query = "SELECT   k"
 			            + " FROM  AbstractKunde k"
-            		    + " WHERE UPPER(k.email) = UPPER(:" + AbstractKunde.PARAM_KUNDE_EMAIL + ")"),
-	@NamedQuery(name  = AbstractKunde.FIND_NACHNAMEN_BY_PREFIX,
-   	            query = "SELECT   DISTINCT k.nachname"
-				        + " FROM  AbstractKunde k "
-   	            		+ " WHERE UPPER(k.nachname) LIKE UPPER(:"
-   	            		+ AbstractKunde.PARAM_KUNDE_NACHNAME_PREFIX + ")"),
+            		    + " WHERE k.emailUpper = :" + AbstractKunde.PARAM_KUNDE_EMAIL),
     @NamedQuery(name  = AbstractKunde.FIND_ALL_NACHNAMEN,
-   	            query = "SELECT      DISTINCT k.nachname"
-   				        + " FROM     AbstractKunde k"
-   				        + " ORDER BY k.nachname"),
-   	@NamedQuery(name  = AbstractKunde.FIND_KUNDEN_OHNE_BESTELLUNGEN,
-	            query = "SELECT DISTINCT k"
+   	            query = "SELECT   k.id, k.nachname"
+   				        + " FROM  AbstractKunde k"),
+   	@NamedQuery(name  = AbstractKunde.FIND_IDS_OHNE_BESTELLUNGEN_AFTER_ID,
+	            query = "SELECT    k.id"
+			            + " FROM   AbstractKunde k"
+			            + " WHERE  k.id > :" + AbstractKunde.PARAM_KUNDE_ID
+			            + AbstractKunde.OHNE_BESTELLUNGEN
+			            + " ORDER BY k.id"),
+	// Kein JOIN, weil die Zeilen mit FOR UPDATE gesperrt werden: k.file.id ist die Spalte file_fk
+   	@NamedQuery(name  = AbstractKunde.FIND_KUNDEN_OHNE_BESTELLUNGEN_BETWEEN,
+	            query = "SELECT    k.id, k.nachname, k.file.id"
 			            + " FROM   AbstractKunde k"
-			            + " WHERE  k.bestellungen IS EMPTY AND NOT k IN (SELECT DISTINCT wp.kunde"
-	                    + "                                              FROM   Warenkorbposition wp)"),
+			            + " WHERE  k.id > :" + AbstractKunde.PARAM_KUNDE_ID
+			            + "        AND k.id <= :" + AbstractKunde.PARAM_KUNDE_ID_MAX
+			            + AbstractKunde.OHNE_BESTELLUNGEN
+			            + " ORDER BY k.id"),
+	@NamedQuery(name  = AbstractKunde.DELETE_BY_IDS,
+	            query = "DELETE"
+	                    + " FROM  AbstractKunde k"
+	                    + " WHERE k.id IN :" + AbstractKunde.PARAM_KUNDE_IDS),
 	@NamedQuery(name  = AbstractKunde.FIND_KUNDEN_BY_PLZ,
 	            query = "SELECT   k"
 				        + " FROM  AbstractKunde k"
@@ -154,10 +171,6 @@ import static javax.persistence.TemporalType.DATE;
 	            query = "SELECT   k"
 				        + " FROM  AbstractKunde k"
 	            		+ " WHERE CONCAT('', k.id) = :" + AbstractKunde.PARAM_KUNDE_USERNAME),
-	@NamedQuery(name  = AbstractKunde.FIND_USERNAME_BY_USERNAME_PREFIX,
-  	            query = "SELECT   CONCAT('', k.id)"
-  				        + " FROM  AbstractKunde k"
-   	            		+ " WHERE CONCAT('', k.id) LIKE :" + AbstractKunde.PARAM_USERNAME_PREFIX),
 
 	@NamedQuery(name = AbstractKunde.FIND_KUNDEN_BY_DATE,
    			    query = "SELECT   k"
@@ -169,6 +182,18 @@ import static javax.persistence.TemporalType.DATE;
    			    		+ " WHERE TYPE(k) IN (Privatkunde, Firmenkunde)")
 
 })
+// Fuer die Tabelle einer @ElementCollection gibt es kein Bulk Delete in JPQL
+@NamedNativeQueries({
+	@NamedNativeQuery(name  = AbstractKunde.FIND_IDS_BY_ROLLE,
+	                  query = "SELECT kunde_fk"
+	                          + " FROM  kunde_rolle"
+	                          + " WHERE rolle = :" + AbstractKunde.PARAM_KUNDE_ROLLE
+	                          + "       AND kunde_fk IN (:" + AbstractKunde.PARAM_KUNDE_IDS + ")"),
+	@NamedNativeQuery(name  = AbstractKunde.DELETE_ROLLEN_BY_IDS,
+	                  query = "DELETE"
+	                          + " FROM  " + AbstractKunde.TABELLE_ROLLEN
+	                          + " WHERE kunde_fk IN (:" + AbstractKunde.PARAM_KUNDE_IDS + ")")
+})
 @NamedEntityGraphs({
 	@NamedEntityGraph(name = AbstractKunde.GRAPH_BESTELLUNGEN,
 					  attributeNodes = @NamedAttributeNode("bestellungen")),
@@ -199,28 +224,41 @@ public abstract class AbstractKunde extends AbstractVersionedAuditable implement
 	private static final String PREFIX = "AbstractKunde.";
 	public static final String FIND_KUNDEN = PREFIX + "findKunden";
 	public static final String FIND_KUNDEN_ORDER_BY_ID = PREFIX + "findKundenOrderById";
-	public static final String FIND_IDS_BY_PREFIX = PREFIX + "findIdsByIdPrefix";
-	public static final String FIND_KUNDEN_BY_ID_PREFIX = PREFIX + "findKundenByIdPrefix";
+	public static final String FIND_KUNDEN_AFTER_ID = PREFIX + "findKundenAfterId";
+	public static final String FIND_IDS = PREFIX + "findIds";
+	public static final String FIND_KUNDEN_BY_IDS = PREFIX + "findKundenByIds";
 	public static final String FIND_KUNDEN_BY_NACHNAME = PREFIX + "findKundenByNachname";
 	public static final String FIND_KUNDE_BY_EMAIL = PREFIX + "findKundeByEmail";
-	public static final String FIND_NACHNAMEN_BY_PREFIX = PREFIX + "findNachnamenByPrefix";
 	public static final String FIND_ALL_NACHNAMEN = PREFIX + "findAllNachnamen";
-	public static final String FIND_KUNDEN_OHNE_BESTELLUNGEN = PREFIX + "findKundenOhneBestellungen";
+	public static final String FIND_IDS_OHNE_BESTELLUNGEN_AFTER_ID = PREFIX + "findIdsOhneBestellungenAfterId";
+	public static final String FIND_KUNDEN_OHNE_BESTELLUNGEN_BETWEEN = PREFIX + "findKundenOhneBestellungenBetween";
 	public static final String FIND_KUNDEN_BY_PLZ = PREFIX + "findKundenByPlz";
 	public static final String FIND_KUNDE_BY_USERNAME = PREFIX + "findKundeByUsername";
-	public static final String FIND_USERNAME_BY_USERNAME_PREFIX = PREFIX + "findKundeByUsernamePrefix";
 	public static final String FIND_KUNDEN_BY_DATE = PREFIX + "findKundenByDate";
 	public static final String FIND_PRIVATKUNDEN_FIRMENKUNDEN = PREFIX + "findPrivatkundenFirmenkunden";
+	public static final String FIND_IDS_BY_ROLLE = PREFIX + "findIdsByRolle";
+	public static final String DELETE_BY_IDS = PREFIX + "deleteByIds";
+	public static final String DELETE_ROLLEN_BY_IDS = PREFIX + "deleteRollenByIds";
+	
+	// Tabelle der @ElementCollection rollen, z.B. als Query Space fuer DELETE_ROLLEN_BY_IDS
+	public static final String TABELLE_ROLLEN = "kunde_rolle";
 
 	public static final String PARAM_KUNDE_ID = "id";
-	public static final String PARAM_KUNDE_ID_PREFIX = "idPrefix";
+	public static final String PARAM_KUNDE_ID_MAX = "idMax";
+	public static final String PARAM_KUNDE_IDS = "ids";
 	public static final String PARAM_KUNDE_NACHNAME = "nachname";
-	public static final String PARAM_KUNDE_NACHNAME_PREFIX = "nachnamePrefix";
 	public static final String PARAM_KUNDE_ADRESSE_PLZ = "plz";
 	public static final String PARAM_KUNDE_USERNAME = "username";
-	public static final String PARAM_USERNAME_PREFIX = "usernamePrefix";
 	public static final String PARAM_KUNDE_EMAIL = "email";
 	public static final String PARAM_KUNDE_SEIT = "seit";
+	public static final String PARAM_KUNDE_ROLLE = "rolle";
+	
+	// Kunden ohne Bestellungen, Wartungsvertraege und Warenkorb koennen geloescht werden, siehe KundeRemover
+	private static final String OHNE_BESTELLUNGEN = "        AND k.bestellungen IS EMPTY"
+	                                                + "        AND k.wartungsvertraege IS EMPTY"
+	                                                + "        AND NOT EXISTS (SELECT wp"
+	                                                + "                        FROM   Warenkorbposition wp"
+	                                                + "                        WHERE  wp.kunde = k)";
 	
 	public static final String GRAPH_BESTELLUNGEN = PREFIX + "bestellungen";
 	public static final String GRAPH_ROLLEN = PREFIX + "rollen";
@@ -272,6 +310,15 @@ public abstract class AbstractKunde extends AbstractVersionedAuditable implement
 	@FormParam(value = "email")
 	private String email;
 	
+	// Normalisierte Suchspalten fuer Vergleiche ohne Gross-/Kleinschreibung, damit ein Index genutzt wird
+	@Column(name = "email_upper")
+	@XmlTransient
+	private String emailUpper;
+	
+	@Column(name = "nachname_upper")
+	@XmlTransient
+	private String nachnameUpper;
+	
 	@Basic(optional = false)
 	@FormParam(value = "newsletter")
 	private boolean newsletter = false;
@@ -346,6 +393,22 @@ public abstract class AbstractKunde extends AbstractVersionedAuditable implement
 		this.seit = seit == null ? null : (Date) seit.clone();
 	}
 	
+	@PrePersist
+	@PreUpdate
+	protected void preStore() {
+		emailUpper = normalisieren(email);
+		nachnameUpper = normalisieren(nachname);
+	}
+	
+	/**
+	 * Einen Suchbegriff fuer die Spalten email_upper und nachname_upper normalisieren
+	 * @param str Der Suchbegriff, z.B. eine Email-Adresse
+	 * @return Der Suchbegriff in Grossbuchstaben
+	 */
+	public static String normalisieren(String str) {
+		return str == null ? null : str.toUpperCase(Locale.ROOT);
+	}
+	
 	@PostPersist
 	protected void postPersist() {
 		if (LOGGER.isLoggable(FINER)) {
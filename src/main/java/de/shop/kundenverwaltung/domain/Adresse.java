@@ -28,6 +28,7 @@ import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
 import javax.persistence.Index;
 import javax.persistence.JoinColumn;
+import javax.persistence.NamedQuery;
 import javax.persistence.OneToOne;
 import javax.persistence.PostPersist;
 import javax.persistence.Table;
@@ -45,6 +46,10 @@ import static java.util.logging.Level.FINER;
  */
 @Entity
 @Table(indexes = @Index(columnList = "plz"))  // Zu kunde_fk wird unten ein UNIQUE Index definiert
+@NamedQuery(name  = Adresse.DELETE_BY_KUNDE_IDS,
+            query = "DELETE"
+                    + " FROM  Adresse a"
+                    + " WHERE a.kunde.id IN :" + Adresse.PARAM_KUNDE_IDS)
 public class Adresse  extends AbstractVersionedAuditable {
 	private static final long serialVersionUID = 4618817696314640065L;
 	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
@@ -56,6 +61,10 @@ public class Adresse  extends AbstractVersionedAuditable {
 	private static final int STRASSE_LENGTH_MAX = 32;
 	private static final int HAUSNR_LENGTH_MAX = 4;
 	
+	private static final String PREFIX = "Adresse.";
+	public static final String DELETE_BY_KUNDE_IDS = PREFIX + "deleteByKundeIds";
+	public static final String PARAM_KUNDE_IDS = "kundeIds";
+	
 	@Id
 	@GeneratedValue
 	@Basic(optional = false)
@@ -29,6 +29,7 @@ import javax.persistence.ElementCollection;
 import javax.persistence.Entity;
 import javax.persistence.Inheritance;
 import javax.persistence.JoinColumn;
+import javax.persistence.NamedNativeQuery;
 import javax.persistence.NamedQueries;
 import javax.persistence.NamedQuery;
 import javax.persistence.UniqueConstraint;
@@ -53,13 +54,21 @@ import static javax.persistence.FetchType.EAGER;
 				        + " FROM Privatkunde k"
                 		+ " WHERE k.geschlecht = :" + Privatkunde.PARAM_GESCHLECHT)
 })
+@NamedNativeQuery(name  = Privatkunde.DELETE_HOBBIES_BY_IDS,
+                  query = "DELETE"
+                          + " FROM  " + Privatkunde.TABELLE_HOBBIES
+                          + " WHERE kunde_fk IN (:" + Privatkunde.PARAM_IDS + ")")
 @Cacheable
 public class Privatkunde extends AbstractKunde {
 	private static final long serialVersionUID = -1783340753647408724L;
 	
 	private static final String PREFIX = "Privatkunde.";
 	public static final String FIND_BY_GESCHLECHT = PREFIX + "findByGeschlecht";
+	public static final String DELETE_HOBBIES_BY_IDS = PREFIX + "deleteHobbiesByIds";
+	// Tabelle der @ElementCollection hobbies, z.B. als Query Space fuer DELETE_HOBBIES_BY_IDS
+	public static final String TABELLE_HOBBIES = "kunde_hobby";
 	public static final String PARAM_GESCHLECHT = "geschlecht";
+	public static final String PARAM_IDS = "ids";
 	
 	@Column(length = 2)
 	@FormParam(value = "familienstand")
@@ -23,13 +23,18 @@ import de.shop.bestellverwaltung.domain.Bestellung;
 import de.shop.bestellverwaltung.rest.BestellungResource;
 import de.shop.kundenverwaltung.business.KundeService;
 import de.shop.kundenverwaltung.business.KundeService.FetchType;
-import de.shop.kundenverwaltung.business.KundeService.OrderByType;
 import de.shop.kundenverwaltung.domain.AbstractKunde;
 import de.shop.kundenverwaltung.domain.Adresse;
 import de.shop.kundenverwaltung.domain.GeschlechtType;
 import de.shop.kundenverwaltung.domain.Privatkunde;
 import de.shop.util.persistence.File;
+import de.shop.util.persistence.FileHelper;
 import de.shop.util.rest.UriHelper;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
 import java.lang.invoke.MethodHandles;
 import java.net.URI;
 import java.util.Base64;
@@ -42,6 +47,8 @@ import javax.ejb.EJB;
 import javax.ejb.Stateless;
 import javax.inject.Inject;
 import javax.validation.Valid;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.Pattern;
 import javax.ws.rs.BeanParam;
 import javax.ws.rs.Consumes;
@@ -56,20 +63,26 @@ import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.GenericEntity;
 import javax.ws.rs.core.Link;
+import javax.ws.rs.core.MultivaluedHashMap;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Providers;
 
 import static de.shop.util.Constants.ADD_LINK;
 import static de.shop.util.Constants.EMAIL_PATTERN;
 import static de.shop.util.Constants.FIRST_LINK;
 import static de.shop.util.Constants.LAST_LINK;
 import static de.shop.util.Constants.LIST_LINK;
+import static de.shop.util.Constants.NEXT_LINK;
 import static de.shop.util.Constants.REMOVE_LINK;
 import static de.shop.util.Constants.SELF_LINK;
 import static de.shop.util.Constants.UPDATE_LINK;
 import static java.util.logging.Level.FINEST;
 import static javax.ws.rs.core.MediaType.APPLICATION_FORM_URLENCODED;
 import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
+import static javax.ws.rs.core.MediaType.APPLICATION_JSON_TYPE;
 import static javax.ws.rs.core.MediaType.APPLICATION_XML;
 import static javax.ws.rs.core.MediaType.TEXT_PLAIN;
 import static javax.ws.rs.core.MediaType.TEXT_XML;
@@ -95,10 +108,23 @@ public class KundeResource {
 	public static final String KUNDEN_SEIT_QUERY_PARAM = "seit";
 	public static final String KUNDEN_GESCHLECHT_QUERY_PARAM = "geschlecht";
 	public static final String KUNDEN_MINBESTMENGE_QUERY_PARAM = "minBestMenge";
+	public static final String KUNDEN_AFTER_QUERY_PARAM = "after";
+	public static final String KUNDEN_LIMIT_QUERY_PARAM = "limit";
+	
+	// Seitengroesse beim Blaettern durch alle Kunden
+	private static final int KUNDEN_LIMIT_DEFAULT = 100;
+	private static final int KUNDEN_LIMIT_MAX = 1000;
+	
+	// Anzahl der Kunden, die beim Streaming pro DB-Zugriff gelesen und danach sofort serialisiert werden
+	private static final int KUNDEN_STREAM_CHUNK = 500;
+	private static final Annotation[] NO_ANNOTATIONS = new Annotation[0];
 	
 	@Context  // DI durch JAX-RS bei jedem Request, weshalb Producer-Klasse mit CDI fuer spaeteres @Inject nicht funktioniert
 	private UriInfo uriInfo;   // funktioniert nicht innerhalb von parallelStream() von Java 8
 	
+	@Context
+	private Providers providers;
+	
 	@Inject
 	private KundeService ks;
 	
@@ -110,6 +136,9 @@ public class KundeResource {
 	
 	@Inject
 	private UriHelper uriHelper;
+	
+	@Inject
+	private FileHelper fileHelper;
 
 	
 	/**
@@ -142,14 +171,17 @@ public class KundeResource {
 	
 
 	/**
-	 * Mit der URI /kunden werden alle Kunden ermittelt oder
-	 * mit kunden?nachname=... diejenigen mit einem bestimmten Nachnamen.
+	 * Mit der URI /kunden werden alle Kunden seitenweise ermittelt, d.h. mit kunden?after=...&amp;limit=...
+	 * die Folgeseite (siehe Link-Header "next"), oder mit kunden?nachname=... diejenigen mit einem
+	 * bestimmten Nachnamen.
 	 * @param email Email-Adresse
 	 * @param nachname Der gemeinsame Nachname der gesuchten Kunden
 	 * @param plz Postleitzahl
 	 * @param seit Datum seit wann
 	 * @param geschlecht Geschlecht
 	 * @param minBestMenge Mindestbestellmenge
+	 * @param after ID des letzten Kunden der vorherigen Seite
+	 * @param limit Maximale Anzahl der Kunden in einer Seite
 	 * @return Collection mit den gefundenen Kundendaten
 	 */
 	@GET
@@ -167,13 +199,19 @@ public class KundeResource {
                                @QueryParam(KUNDEN_GESCHLECHT_QUERY_PARAM)
 	                           GeschlechtType geschlecht,
 	                           @QueryParam(KUNDEN_MINBESTMENGE_QUERY_PARAM)
-                               Integer minBestMenge) {
+                               Integer minBestMenge,
+                               @QueryParam(KUNDEN_AFTER_QUERY_PARAM)
+                               Long after,
+                               @QueryParam(KUNDEN_LIMIT_QUERY_PARAM)
+                               @Min(value = 1, message = "{kunde.limit.min}")
+                               @Max(value = KUNDEN_LIMIT_MAX, message = "{kunde.limit.max}")
+                               Integer limit) {
 		List<? extends AbstractKunde> kunden = null;
 		AbstractKunde kunde = null;
-		// Kein Query-Parameter
+		// Kein Query-Parameter (ausser zum Blaettern): seitenweise statt alle Kunden auf einmal
 		if (Strings.isNullOrEmpty(email) && Strings.isNullOrEmpty(nachname) && Strings.isNullOrEmpty(plz)
 		    && seit == null && geschlecht == null && minBestMenge == null) {
-			kunden = ks.findAllKunden(FetchType.NUR_KUNDE, OrderByType.ID);
+			return findKundenAfterId(after, limit == null ? KUNDEN_LIMIT_DEFAULT : limit.intValue());
 		}
 		// Genau Ein Query-Parameter
 		else if (!Strings.isNullOrEmpty(email) && Strings.isNullOrEmpty(nachname) && Strings.isNullOrEmpty(plz)
@@ -222,6 +260,72 @@ public class KundeResource {
                        .build();
 	}
 	
+	private Response findKundenAfterId(Long after, int limit) {
+		final List<AbstractKunde> kunden = ks.findKundenAfterId(after, limit);
+		kunden.forEach(k -> setStructuralLinks(k, uriInfo));
+		
+		return Response.ok(new GenericEntity<List<AbstractKunde>>(kunden) {})
+                       .links(getTransitionalLinksSeite(kunden, limit, uriInfo))
+                       .build();
+	}
+	
+	/**
+	 * Mit der URI /kunden/stream alle Kunden als JSON-Array ermitteln. Die Kunden werden blockweise
+	 * mit jeweils eigenem DB-Zugriff gelesen und sofort serialisiert, so dass der Speicherbedarf
+	 * unabhaengig von der Anzahl der Kunden ist.
+	 * @return Response mit den Kunden als StreamingOutput
+	 */
+	@GET
+	@Path("/stream")
+	@Produces(APPLICATION_JSON)
+	public Response streamKunden() {
+		final StreamingOutput output = this::writeKunden;
+		return Response.ok(output).build();
+	}
+	
+	private void writeKunden(OutputStream outputStream) throws IOException {
+		// Derselbe MessageBodyWriter (Jackson) wie bei einer Response mit einem einzelnen Kunden
+		final MessageBodyWriter<AbstractKunde> writer = providers.getMessageBodyWriter(AbstractKunde.class,
+				                                                                       AbstractKunde.class,
+				                                                                       NO_ANNOTATIONS,
+				                                                                       APPLICATION_JSON_TYPE);
+		
+		// Der MessageBodyWriter darf den Stream nach einem einzelnen Kunden nicht schliessen
+		final OutputStream out = new FilterOutputStream(outputStream) {
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				outputStream.write(b, off, len);
+			}
+			
+			@Override
+			public void close() throws IOException {
+				flush();
+			}
+		};
+		
+		out.write('[');
+		Long lastId = null;
+		List<AbstractKunde> kunden;
+		do {
+			// Jeder Block in einer eigenen (kurzen) Transaktion: danach sind die Kunden nicht mehr referenziert
+			kunden = ks.findKundenAfterId(lastId, KUNDEN_STREAM_CHUNK);
+			for (AbstractKunde k : kunden) {
+				if (lastId != null) {
+					out.write(',');
+				}
+				setStructuralLinks(k, uriInfo);
+				writer.writeTo(k, AbstractKunde.class, AbstractKunde.class, NO_ANNOTATIONS, APPLICATION_JSON_TYPE,
+						       new MultivaluedHashMap<>(), out);
+				lastId = k.getId();
+			}
+			
+			// Block als Chunk zum Client senden
+			out.flush();
+		} while (kunden.size() == KUNDEN_STREAM_CHUNK);
+		out.write(']');
+		out.flush();
+	}
+	
 	/**
 	 * Nachnamen zu gegebenem Praefix suchen
 	 * @param nachnamePrefix Praefix zu gesuchten Nachnamen
@@ -371,8 +475,8 @@ public class KundeResource {
 	@Path("image/{id:[1-9][0-9]*}")
 	@POST
 	@Consumes({ "image/jpeg", "image/pjpeg", "image/png" })  // RESTEasy unterstuetzt nicht video/mp4
-	public Response uploadImage(@PathParam("id") Long kundeId, byte[] bytes) {
-		ks.setFile(kundeId, bytes);
+	public Response uploadImage(@PathParam("id") Long kundeId, InputStream inputStream) {
+		ks.setFile(kundeId, inputStream);
 		return Response.created(uriHelper.getUri(KundeResource.class, "downloadImage", kundeId, uriInfo))
 				       .build();
 	}
@@ -380,27 +484,28 @@ public class KundeResource {
 	/**
 	 * Bild zu einem Kunden mit gegebener ID herunterladen
 	 * @param kundeId ID des Kunden
-	 * @return Byte[] mit dem Bild
+	 * @return Stream mit dem Bild
 	 */
 	@Path("image/{id:[1-9][0-9]*}")
 	@GET
 	@Produces({ "image/jpeg", "image/pjpeg", "image/png" })
-	public byte[] downloadImage(@PathParam("id") Long kundeId) {
+	public StreamingOutput downloadImage(@PathParam("id") Long kundeId) {
 		final AbstractKunde kunde = ks.findKundeById(kundeId, FetchType.NUR_KUNDE);
 		final File file = kunde.getFile();
 		if (LOGGER.isLoggable(FINEST)) {
 			LOGGER.finest(file.toString());
 		}
 		
-		return file.getBytes();
+		// Noch innerhalb der Transaktion auswerten, weil StreamingOutput erst nach dem Methodenende aufgerufen wird
+		final java.nio.file.Path datei = fileHelper.bereitstellen(file);
+		return outputStream -> fileHelper.copy(datei, outputStream);
 	}
 	
 	@Path("base64/{id:[1-9][0-9]*}")
 	@POST
 	@Consumes({ TEXT_PLAIN })
-	public Response uploadBase64(@PathParam("id") Long kundeId, String base64) {
-		final byte[] bytes = Base64.getDecoder().decode(base64);
-		ks.setFile(kundeId, bytes);
+	public Response uploadBase64(@PathParam("id") Long kundeId, InputStream base64) {
+		ks.setFile(kundeId, Base64.getDecoder().wrap(base64));
 		return Response.created(uriHelper.getUri(KundeResource.class, "downloadBase64", kundeId, uriInfo))
 				       .build();
 	}
@@ -408,19 +513,27 @@ public class KundeResource {
 	/**
 	 * Multimedia-Datei (mit Base64-Codierung) zu einem Kunden mit gegebener ID herunterladen
 	 * @param kundeId ID des Kunden
-	 * @return String mit Base64-Codierung einer Multimedia-Datei
+	 * @return Stream mit Base64-Codierung einer Multimedia-Datei
 	 */
 	@Path("base64/{id:[1-9][0-9]*}")
 	@GET
 	@Produces({ TEXT_PLAIN })
-	public String downloadBase64(@PathParam("id") Long kundeId) {
+	public StreamingOutput downloadBase64(@PathParam("id") Long kundeId) {
 		final AbstractKunde kunde = ks.findKundeById(kundeId, FetchType.NUR_KUNDE);
 		final File file = kunde.getFile();
 		if (LOGGER.isLoggable(FINEST)) {
 			LOGGER.finest(file.toString());
 		}
 		
-		return Base64.getEncoder().encodeToString(file.getBytes());
+		// Noch innerhalb der Transaktion auswerten, weil StreamingOutput erst nach dem Methodenende aufgerufen wird
+		final java.nio.file.Path datei = fileHelper.bereitstellen(file);
+		
+		// Der Base64-Encoder schreibt beim Schliessen die restlichen Zeichen
+		return outputStream -> {
+			try (final OutputStream base64 = Base64.getEncoder().wrap(outputStream)) {
+				fileHelper.copy(datei, base64);
+			}
+		};
 	}
 	
 	//--------------------------------------------------------------------------
@@ -485,6 +598,25 @@ public class KundeResource {
 		return new Link[] { first, last };
 	}
 	
+	private Link[] getTransitionalLinksSeite(List<AbstractKunde> kunden, int limit, UriInfo uriInfo) {
+		final Link[] links = getTransitionalLinksKunden(kunden, uriInfo);
+		if (links == null || kunden.size() < limit) {
+			// letzte Seite: kein Link auf eine Folgeseite
+			return links;
+		}
+		
+		final Long lastId = kunden.get(kunden.size() - 1).getId();
+		final URI nextUri = uriInfo.getRequestUriBuilder()
+				                   .replaceQueryParam(KUNDEN_AFTER_QUERY_PARAM, lastId)
+				                   .replaceQueryParam(KUNDEN_LIMIT_QUERY_PARAM, limit)
+				                   .build();
+		final Link next = Link.fromUri(nextUri)
+                              .rel(NEXT_LINK)
+                              .build();
+		
+		return new Link[] { links[0], links[1], next };
+	}
+	
 	private Link[] getTransitionalLinksBestellungen(List<Bestellung> bestellungen,
 			                                        AbstractKunde kunde,
 			                                        UriInfo uriInfo) {
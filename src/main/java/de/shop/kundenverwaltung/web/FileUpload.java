@@ -20,10 +20,16 @@ package de.shop.kundenverwaltung.web;
 import de.shop.kundenverwaltung.business.KundeService;
 import de.shop.kundenverwaltung.business.KundeService.FetchType;
 import de.shop.kundenverwaltung.domain.AbstractKunde;
+import de.shop.util.persistence.FileHelper;
+import de.shop.util.persistence.HochgeladeneDatei;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
 import java.lang.invoke.MethodHandles;
 import java.util.logging.Logger;
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.ejb.Stateful;
 import javax.enterprise.context.SessionScoped;
 import javax.inject.Inject;
@@ -49,9 +55,12 @@ public class FileUpload implements Serializable {
 	@Inject
 	private KundeService ks;
 	
+	@Inject
+	private FileHelper fileHelper;
+	
 	private Long kundeId;
 
-	private byte[] bytes;
+	private HochgeladeneDatei upload;
 	private String contentType;
 
 	@PostConstruct
@@ -59,6 +68,12 @@ public class FileUpload implements Serializable {
 		// TODO Conversation starten und in upload() beenden.
 		// Bug in RichFaces: der Upload-Listener beendet die Conversation, bevor die Methode upload() aufgerufen ist
 	}
+	
+	// z.B. bei abgelaufener Session: die temporaere Datei eines nicht gespeicherten Uploads loeschen
+	@PreDestroy
+	private void preDestroy() {
+		resetTmpDatei();
+	}
 
 	@Override
 	public String toString() {
@@ -79,20 +94,37 @@ public class FileUpload implements Serializable {
 		if (LOGGER.isLoggable(FINER)) {
 			LOGGER.finer("MIME-Type der hochgeladenen Datei: " + contentType);
 		}
-		bytes = uploadedFile.getData();
+		
+		// Nicht als byte[] im Hauptspeicher halten, sondern direkt in eine temporaere Datei schreiben
+		resetTmpDatei();
+		try (final InputStream inputStream = uploadedFile.getInputStream()) {
+			upload = fileHelper.storeTemp(inputStream);
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
 	}
 
 	public String upload() {
 		final AbstractKunde kunde = ks.findKundeById(kundeId, FetchType.NUR_KUNDE);
-		ks.setFile(kunde, bytes, contentType);
+		ks.setFile(kunde, upload, contentType);
+		upload = null;
 		return JSF_INDEX + JSF_REDIRECT_SUFFIX;
 	}
 	
 	public String resetUpload() {
 		kundeId = null;
 		contentType = null;
-		bytes = null;
+		resetTmpDatei();
 		
 		return null;
 	}
+	
+	// Eine hochgeladene, aber nicht gespeicherte Datei loeschen
+	private void resetTmpDatei() {
+		if (upload != null) {
+			fileHelper.delete(upload.getPath());
+			upload = null;
+		}
+	}
 }
@@ -32,11 +32,14 @@ import de.shop.util.AbstractShopException;
 import de.shop.util.persistence.ConcurrentDeletedException;
 import de.shop.util.persistence.File;
 import de.shop.util.persistence.FileHelper;
+import de.shop.util.persistence.Rendition;
 import de.shop.util.web.Captcha;
 import de.shop.util.web.Client;
 import de.shop.util.web.Messages;
+import de.shop.util.web.UserAgentProcessor;
 import java.io.Serializable;
 import java.lang.invoke.MethodHandles;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -138,6 +141,9 @@ public class KundeModel implements Serializable {
 	
 	@Inject
 	private FileHelper fileHelper;
+	
+	@Inject
+	private UserAgentProcessor userAgent;
 
 	private String kundeIdStr;
 	private Long kundeId;
@@ -263,7 +269,7 @@ public class KundeModel implements Serializable {
 			return findKundeByIdErrorMsg(kundeId.toString());
 		}
 		if (kunde.getFile() != null) {
-			kunde.getFile().getId(); // nachladen
+			kunde.getFile().getFilename(); // nachladen
 		}
 		
 		return JSF_VIEW_KUNDE;
@@ -602,8 +608,14 @@ public class KundeModel implements Serializable {
 			return "";
 		}
 		
-		fileHelper.store(file);
-		return file.getFilename();
+		// Smartphones und Tablets erhalten eine verkleinerte Variante, sobald sie erzeugt ist
+		if (userAgent.isMobile()) {
+			final Path variante = fileHelper.getRenditionPath(file, Rendition.MOBIL);
+			if (variante != null) {
+				return fileHelper.getRelativePath(variante);
+			}
+		}
+		return fileHelper.getRelativePath(file);
 	}
 	
 	
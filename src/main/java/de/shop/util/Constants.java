@@ -38,9 +38,11 @@ public final class Constants {
 	public static final String REMOVE_LINK = "remove";
 	public static final String FIRST_LINK = "first";
 	public static final String LAST_LINK = "last";
+	public static final String NEXT_LINK = "next";
 	
 	// JPA
 	public static final String LOADGRAPH = "javax.persistence.loadgraph";
+	public static final String QUERY_CACHEABLE = "org.hibernate.cacheable";   // Query-Cache von Hibernate
 	public static final int ERSTE_VERSION = 0;
 	public static final int MAX_AUTOCOMPLETE = 10;
 	
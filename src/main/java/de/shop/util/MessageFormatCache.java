@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2013 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.util;
+
+import java.text.MessageFormat;
+import java.util.Locale;
+import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Kompilierte Meldungstexte zu einem ResourceBundle und einer Locale. MessageFormat ist nicht threadsicher,
+ * deshalb erhaelt jeder Thread je Schluessel ein eigenes Objekt, das bei weiteren Meldungen wiederverwendet
+ * wird. Der Pattern-String wird also nur einmal je Thread geparst.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+public final class MessageFormatCache {
+	private final ResourceBundle bundle;
+	private final Locale locale;
+	private final ConcurrentMap<String, ThreadLocal<MessageFormat>> formate = new ConcurrentHashMap<>();
+	
+	public MessageFormatCache(ResourceBundle bundle, Locale locale) {
+		this.bundle = bundle;
+		this.locale = locale;
+	}
+	
+	/**
+	 * Eine Meldung mit den Werten fuer die Platzhalter erzeugen
+	 * @param key Schluessel im ResourceBundle
+	 * @param args Werte fuer die Platzhalter
+	 * @return Die lokalisierte Meldung
+	 */
+	public String format(String key, Object... args) {
+		ThreadLocal<MessageFormat> format = formate.get(key);
+		if (format == null) {
+			// MissingResourceException, falls es den Schluessel nicht gibt: dann wird nichts gecacht
+			format = formate.computeIfAbsent(key, k -> {
+				final String pattern = bundle.getString(k);
+				return ThreadLocal.withInitial(() -> new MessageFormat(pattern, locale));
+			});
+		}
+		return format.get().format(args);
+	}
+	
+	public ResourceBundle getBundle() {
+		return bundle;
+	}
+	
+	public Locale getLocale() {
+		return locale;
+	}
+	
+	@Override
+	public String toString() {
+		return "MessageFormatCache [bundle=" + bundle.getLocale() + ", locale=" + locale + ", keys="
+			   + formate.keySet() + "]";
+	}
+}
@@ -17,9 +17,12 @@
 
 package de.shop.util.cdi;
 
+import de.shop.artikelverwaltung.business.ArtikelService;
 import java.lang.invoke.MethodHandles;
 import java.nio.charset.Charset;
+import java.util.List;
 import java.util.logging.Logger;
+import javax.ejb.EJBException;
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.context.Dependent;
 import javax.enterprise.context.Initialized;
@@ -36,12 +39,33 @@ public class Initializer {
 	
 	//@Transactional
 	@SuppressWarnings("unused")
-	private static void onStartup(@Observes @Initialized(ApplicationScoped.class) ServletContext ctx) {
+	private static void onStartup(@Observes @Initialized(ApplicationScoped.class) ServletContext ctx,
+	                              ArtikelService as) {
 		LOGGER.info("Der Web-Container " + ctx.getServerInfo() + " unterstuetzt die Servlet-Spezifikation "
 	                + ctx.getMajorVersion() + "." + ctx.getMinorVersion());
 		
 		LOGGER.info("Default Charset: " + Charset.defaultCharset().displayName());
 		
 		// Eigene Initialisierungen, z.B initiale Daten fuer die DB
+		
+		warmUpArtikel(as);
+	}
+	
+	/**
+	 * Katalog vorab laden, damit die Artikel im 2nd-Level-Cache und das Ergebnis von
+	 * FIND_VERFUEGBARE_ARTIKEL im Query-Cache sind, bevor die ersten Requests kommen
+	 * @param as ArtikelService
+	 */
+	private static void warmUpArtikel(ArtikelService as) {
+		final long start = System.currentTimeMillis();
+		try {
+			final List<?> artikel = as.findVerfuegbareArtikel();
+			LOGGER.info(artikel.size() + " Artikel in " + (System.currentTimeMillis() - start)
+			            + " ms in den Cache geladen");
+		}
+		catch (EJBException e) {
+			// Ein kalter Cache ist kein Grund, das Deployment abzubrechen
+			LOGGER.warning("Artikel konnten nicht in den Cache geladen werden: " + e.getMessage());
+		}
 	}
 }
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2013 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.util.concurrency;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+
+/**
+ * Fuer Daten im Hauptspeicher, die einmalig aus der DB aufgebaut und danach durch Events fortgeschrieben
+ * werden. Events, die waehrend des Aufbaus eintreffen, werden gepuffert und erst nach dem Uebernehmen des
+ * Snapshots angewendet. Vor dem Aufbau werden Events ignoriert, weil der spaetere Snapshot sie enthaelt.
+ * Ein gepuffertes Event kann trotzdem bereits im Snapshot enthalten sein: Die Query sieht alles, was bis zum
+ * Lesen der jeweiligen Zeilen committet ist, und ein Observer mit AFTER_SUCCESS wird erst nach dem Commit
+ * aufgerufen. Deshalb muessen die gepufferten Aenderungen idempotent sein, d.h. einen Zustand je ID setzen
+ * statt z.B. einen Zaehler zu erhoehen. Nicht abgedeckt ist ein Observer, der erst nach dem gesamten Aufbau
+ * aufgerufen wird, obwohl der Snapshot seinen Commit bereits enthaelt: sein Event wird direkt angewendet.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+public class AenderungsPuffer {
+	// Nur ein Thread baut auf
+	private final Object aufbauLock = new Object();
+	
+	// Schuetzt den Puffer und den Uebergang zu "aufgebaut"
+	private final Object lock = new Object();
+	
+	// Nicht null waehrend des Aufbaus
+	private List<Runnable> puffer;
+	
+	private volatile boolean aufgebaut;
+	
+	public boolean isAufgebaut() {
+		return aufgebaut;
+	}
+	
+	/**
+	 * Die Daten einmalig aufbauen. Weitere Aufrufe kehren sofort zurueck bzw. warten auf einen laufenden Aufbau.
+	 * @param laden Liest den Snapshot aus der DB
+	 * @param uebernehmen Uebernimmt den Snapshot in die Daten im Hauptspeicher
+	 * @param <T> Typ des Snapshots
+	 */
+	public <T> void aufbauen(Supplier<T> laden, Consumer<T> uebernehmen) {
+		aufbauen(laden, uebernehmen, () -> { });
+	}
+	
+	/**
+	 * Die Daten einmalig aufbauen und nach dem Anwenden der gepufferten Events abschliessen
+	 * @param laden Liest den Snapshot aus der DB
+	 * @param uebernehmen Uebernimmt den Snapshot in die Daten im Hauptspeicher
+	 * @param abschliessen Wird nach den gepufferten Events aufgerufen, z.B. um Hilfsdaten des Aufbaus freizugeben
+	 * @param <T> Typ des Snapshots
+	 */
+	public <T> void aufbauen(Supplier<T> laden, Consumer<T> uebernehmen, Runnable abschliessen) {
+		if (aufgebaut) {
+			return;
+		}
+		
+		synchronized (aufbauLock) {
+			if (aufgebaut) {
+				return;
+			}
+			
+			synchronized (lock) {
+				puffer = new ArrayList<>();
+			}
+			final T snapshot;
+			try {
+				snapshot = laden.get();
+			}
+			catch (RuntimeException e) {
+				synchronized (lock) {
+					puffer = null;
+				}
+				throw e;
+			}
+			
+			synchronized (lock) {
+				uebernehmen.accept(snapshot);
+				puffer.forEach(Runnable::run);
+				puffer = null;
+				abschliessen.run();
+				aufgebaut = true;
+			}
+		}
+	}
+	
+	/**
+	 * Eine Aenderung anwenden, waehrend des Aufbaus puffern oder vor dem Aufbau ignorieren
+	 * @param aenderung Die Aenderung, z.B. aus einem Observer mit AFTER_SUCCESS
+	 */
+	public void anwenden(Runnable aenderung) {
+		if (aufgebaut) {
+			aenderung.run();
+			return;
+		}
+		
+		synchronized (lock) {
+			if (puffer != null) {
+				puffer.add(aenderung);
+			}
+			else if (aufgebaut) {
+				aenderung.run();
+			}
+		}
+	}
+}
@@ -53,6 +53,14 @@ public class LogInterceptor implements Serializable {
 	private static final int CHAR_POS_AFTER_IS = 2; // isX...
 	private static final int CHAR_POS_AFTER_GET = 3; // setX...
 	
+	// Logger pro Klasse nur 1x ermitteln, statt bei jedem Aufruf Logger.getLogger() mit Synchronisation
+	private static final ClassValue<Logger> LOGGER = new ClassValue<Logger>() {
+		@Override
+		protected Logger computeValue(Class<?> clazz) {
+			return Logger.getLogger(clazz.getName());
+		}
+	};
+	
 	@AroundConstruct
 	public void logConstructor(InvocationContext ctx) throws Exception {
 		final Class<?> clazz = ctx.getConstructor().getDeclaringClass();
@@ -75,7 +83,7 @@ public class LogInterceptor implements Serializable {
 	
 	@AroundInvoke
 	public Object log(InvocationContext ctx) throws Exception {
-		final Logger logger = Logger.getLogger(ctx.getTarget().getClass().getName());
+		final Logger logger = LOGGER.get(ctx.getTarget().getClass());
 
 		if (!logger.isLoggable(FINER)) {
 			return ctx.proceed();
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2013 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.util.interceptor;
+
+import de.shop.util.metrics.Histogramm;
+import de.shop.util.metrics.MethodenMetriken;
+import java.io.Serializable;
+import javax.enterprise.context.Dependent;
+import javax.inject.Inject;
+import javax.interceptor.AroundInvoke;
+import javax.interceptor.Interceptor;
+import javax.interceptor.InvocationContext;
+
+
+/**
+ * Interceptor zur Messung der Laufzeit von public-Methoden der CDI-faehigen Beans und der EJBs.
+ * Die Laufzeit wird auch bei einer Exception erfasst. Pro Aufruf gibt es nur ein Nachschlagen in einer
+ * ConcurrentHashMap, zweimal System.nanoTime() und ein paar atomare Inkremente, aber keine Reflection,
+ * keinen Logger und kein Objekt auf dem Heap.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+@Interceptor
+@Timed
+@Dependent    // wie LogInterceptor https://issues.jboss.org/browse/WELD-1540
+public class TimedInterceptor implements Serializable {
+	private static final long serialVersionUID = -4173926458183520657L;
+	
+	@Inject
+	private MethodenMetriken metriken;
+	
+	@AroundInvoke
+	public Object messen(InvocationContext ctx) throws Exception {
+		final Histogramm histogramm = metriken.getHistogramm(ctx.getMethod());
+		final long start = System.nanoTime();
+		try {
+			return ctx.proceed();
+		}
+		finally {
+			histogramm.erfassen(System.nanoTime() - start);
+		}
+	}
+}
@@ -0,0 +1,299 @@
+/*
+ * Copyright (C) 2013 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.util.mail;
+
+import com.sun.mail.smtp.SMTPSendFailedException;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.mail.Address;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.Session;
+import javax.mail.Transport;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.logging.Level.FINEST;
+import static java.util.logging.Level.WARNING;
+
+
+/**
+ * Versand von Emails ueber einen kleinen Pool von Verbindungen zum Mailserver: eine Verbindung bleibt nach
+ * dem Versand offen und wird fuer den naechsten Batch wiederverwendet, statt fuer jede Email Verbindungsaufbau
+ * und SMTP-Handshake zu wiederholen. Ob der Server eine Verbindung zwischenzeitlich beendet hat, wird einmal
+ * je Batch geprueft; bei Verbindungsfehlern wird mit exponentiellem Backoff begrenzt oft wiederholt.
+ * <p>
+ * Host und Port kommen aus der Mail-Session "java:jboss/mail/Default" des Applikationsservers. Fuer Tests
+ * genuegt es, die Session auf einen lokalen SMTP-Ersatz (z.B. FakeSMTP) umzukonfigurieren.
+ * </p>
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+@ApplicationScoped
+public class MailVersand {
+	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+	
+	private static final int POOL_GROESSE = 2;
+	private static final int VERSUCHE_MAX = 3;
+	private static final long BACKOFF_MILLIS = 250;
+	private static final long AUSLEIHEN_TIMEOUT_SEKUNDEN = 30;
+	
+	@Inject
+	private Session session;
+	
+	// Freie Verbindungen; eine Verbindung wird erst beim ersten Versand erzeugt und aufgebaut
+	private final BlockingQueue<Transport> pool = new ArrayBlockingQueue<>(POOL_GROESSE);
+	private final Queue<Transport> alle = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger anzahlNichtErzeugt = new AtomicInteger(POOL_GROESSE);
+	
+	private final AtomicLong anzahlGesendet = new AtomicLong();
+	private final AtomicLong anzahlFehlgeschlagen = new AtomicLong();
+	private final AtomicLong anzahlZurueckgestellt = new AtomicLong();
+	private final AtomicLong anzahlWiederholt = new AtomicLong();
+	private final AtomicLong anzahlVerbindungen = new AtomicLong();
+	private final AtomicInteger anzahlWartend = new AtomicInteger();
+	private final long start = System.nanoTime();
+	
+	public MailVersand() {
+		super();
+	}
+	
+	// Fuer Tests ohne CDI
+	MailVersand(Session session) {
+		super();
+		this.session = session;
+	}
+	
+	@PreDestroy
+	private void preDestroy() {
+		alle.forEach(MailVersand::schliessen);
+	}
+	
+	/**
+	 * Emails als Batch ueber eine einzige Verbindung aus dem Pool versenden
+	 * @param messages Die Emails, deren Empfaenger gesetzt sind
+	 * @param <M> Typ der Emails
+	 * @return Die Emails, die wegen eines voruebergehenden Fehlers nicht versendet werden konnten und spaeter
+	 *         erneut versendet werden sollen
+	 */
+	public <M extends Message> List<M> senden(List<M> messages) {
+		if (messages == null || messages.isEmpty()) {
+			return Collections.emptyList();
+		}
+		
+		final Transport transport;
+		try {
+			transport = ausleihen();
+		}
+		catch (MailException e) {
+			LOGGER.log(WARNING, messages.size() + " Emails nicht versendet", e);
+			anzahlZurueckgestellt.addAndGet(messages.size());
+			return new ArrayList<>(messages);
+		}
+		
+		final List<M> nichtGesendet = new ArrayList<>();
+		try {
+			for (int i = 0; i < messages.size(); i++) {
+				// Nur vor der ersten Email pruefen, ob die Verbindung aus dem Pool noch besteht
+				try {
+					if (!senden(transport, messages.get(i), i == 0)) {
+						nichtGesendet.add(messages.get(i));
+					}
+				}
+				catch (MailException e) {
+					// Der Mailserver ist nicht erreichbar: die restlichen Emails nicht mehr versuchen
+					LOGGER.log(WARNING, (messages.size() - i) + " Emails nicht versendet", e);
+					nichtGesendet.addAll(messages.subList(i, messages.size()));
+					break;
+				}
+			}
+		}
+		finally {
+			pool.offer(transport);
+		}
+		
+		anzahlZurueckgestellt.addAndGet(nichtGesendet.size());
+		return nichtGesendet;
+	}
+	
+	public long getAnzahlGesendet() {
+		return anzahlGesendet.get();
+	}
+	
+	/**
+	 * Anzahl der Emails, die wegen eines dauerhaften Fehlers nicht versendet wurden, z.B. ungueltige Empfaenger
+	 * @return Anzahl der verworfenen Emails
+	 */
+	public long getAnzahlFehlgeschlagen() {
+		return anzahlFehlgeschlagen.get();
+	}
+	
+	/**
+	 * Anzahl der Emails, die zum spaeteren Versand an den Aufrufer zurueckgegeben wurden
+	 * @return Anzahl der zurueckgestellten Emails
+	 */
+	public long getAnzahlZurueckgestellt() {
+		return anzahlZurueckgestellt.get();
+	}
+	
+	public long getAnzahlWiederholt() {
+		return anzahlWiederholt.get();
+	}
+	
+	public long getAnzahlVerbindungen() {
+		return anzahlVerbindungen.get();
+	}
+	
+	/**
+	 * Anzahl der Batches, die auf eine freie Verbindung warten
+	 * @return Laenge der Warteschlange
+	 */
+	public int getAnzahlWartend() {
+		return anzahlWartend.get();
+	}
+	
+	/**
+	 * Durchsatz seit dem Start
+	 * @return Versendete Emails pro Minute
+	 */
+	public double getDurchsatzProMinute() {
+		final double minuten = NANOSECONDS.toMillis(System.nanoTime() - start) / 60_000.0;
+		return minuten == 0 ? 0 : anzahlGesendet.get() / minuten;
+	}
+	
+	private Transport ausleihen() {
+		final Transport frei = pool.poll();
+		if (frei != null) {
+			return frei;
+		}
+		
+		// Solange der Pool nicht voll ist, eine weitere Verbindung erzeugen statt zu warten
+		if (anzahlNichtErzeugt.getAndUpdate(n -> n > 0 ? n - 1 : 0) > 0) {
+			try {
+				final Transport transport = session.getTransport();
+				alle.add(transport);
+				return transport;
+			}
+			catch (MessagingException e) {
+				anzahlNichtErzeugt.incrementAndGet();
+				throw new MailException("Keine Verbindung zum Mailserver konfiguriert", e);
+			}
+		}
+		
+		anzahlWartend.incrementAndGet();
+		final Transport transport;
+		try {
+			transport = pool.poll(AUSLEIHEN_TIMEOUT_SEKUNDEN, SECONDS);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MailException("Warten auf eine Verbindung zum Mailserver unterbrochen", e);
+		}
+		finally {
+			anzahlWartend.decrementAndGet();
+		}
+		
+		if (transport == null) {
+			throw new MailException("Keine freie Verbindung zum Mailserver");
+		}
+		return transport;
+	}
+	
+	// false, falls die Email wegen eines voruebergehenden Fehlers spaeter erneut versendet werden soll
+	private boolean senden(Transport transport, Message message, boolean pruefen) {
+		for (int versuch = 1;; versuch++) {
+			try {
+				// isConnected() prueft bei SMTP mit NOOP, ob der Server die Verbindung zwischenzeitlich beendet
+				// hat. Nach einem Fehler ist die Verbindung geschlossen und isConnected() kostet keinen Roundtrip.
+				if ((pruefen || versuch > 1) && !transport.isConnected()) {
+					transport.connect();
+					anzahlVerbindungen.incrementAndGet();
+				}
+				transport.sendMessage(message, message.getAllRecipients());
+				anzahlGesendet.incrementAndGet();
+				return true;
+			}
+			catch (SendFailedException e) {
+				// Die Verbindung bleibt bestehen; eine sofortige Wiederholung aendert nichts
+				if (isVoruebergehend(e)) {
+					LOGGER.log(WARNING, "Email voruebergehend nicht versendet", e);
+					return false;
+				}
+				anzahlFehlgeschlagen.incrementAndGet();
+				LOGGER.log(WARNING, "Email an ungueltige Empfaenger nicht versendet", e);
+				return true;
+			}
+			catch (MessagingException e) {
+				schliessen(transport);
+				if (versuch >= VERSUCHE_MAX) {
+					throw new MailException("Email nach " + versuch + " Versuchen nicht versendet", e);
+				}
+				
+				anzahlWiederholt.incrementAndGet();
+				final long backoff = BACKOFF_MILLIS << (versuch - 1);
+				if (LOGGER.isLoggable(FINEST)) {
+					LOGGER.log(FINEST, "Versuch " + versuch + " fehlgeschlagen, naechster in " + backoff + " ms", e);
+				}
+				warten(backoff);
+			}
+		}
+	}
+	
+	// SMTP-Status 4xx, z.B. Greylisting oder Mailbox voll, im Gegensatz zu 5xx fuer dauerhafte Fehler
+	private static boolean isVoruebergehend(SendFailedException e) {
+		if (e instanceof SMTPSendFailedException) {
+			return ((SMTPSendFailedException) e).getReturnCode() / 100 == 4;
+		}
+		
+		// Bei RCPT TO werden Empfaenger mit 4xx als gueltig, aber nicht versendet gemeldet
+		final Address[] ungueltig = e.getInvalidAddresses();
+		final Address[] nichtVersendet = e.getValidUnsentAddresses();
+		return (ungueltig == null || ungueltig.length == 0) && nichtVersendet != null && nichtVersendet.length > 0;
+	}
+	
+	private static void warten(long millis) {
+		try {
+			Thread.sleep(millis);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MailException("Warten auf einen erneuten Versuch unterbrochen", e);
+		}
+	}
+	
+	private static void schliessen(Transport transport) {
+		try {
+			transport.close();
+		}
+		catch (MessagingException e) {
+			LOGGER.warning(e.getMessage());
+		}
+	}
+}
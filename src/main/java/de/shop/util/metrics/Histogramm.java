@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2013 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.util.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Histogramm fuer Latenzen in Nanosekunden mit fester Speichergroesse und ohne Sperren.
+ * <p>
+ * Die Buckets sind log-linear wie bei HdrHistogram: jede Zweierpotenz ist in 16 gleich breite Buckets
+ * unterteilt, d.h. der relative Fehler eines Perzentils ist hoechstens 1/16. Bis 2^40 ns (ca. 18 Minuten)
+ * genuegen 592 Buckets. Damit sich parallele Threads beim Erfassen nicht gegenseitig die Cache-Lines
+ * streitig machen, gibt es mehrere Streifen, die erst beim Auswerten addiert werden.
+ * </p>
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+public class Histogramm {
+	private static final int SUB_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+	private static final long WERT_MAX = (1L << 40) - 1;
+	private static final int ANZAHL_BUCKETS = index(WERT_MAX) + 1;
+	
+	// Zweierpotenz, damit der Streifen mit einer Bitmaske bestimmt werden kann
+	private static final int ANZAHL_STREIFEN = 4;
+	
+	private final AtomicLongArray[] streifen = new AtomicLongArray[ANZAHL_STREIFEN];
+	private final LongAdder summe = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+	
+	public Histogramm() {
+		super();
+		for (int i = 0; i < ANZAHL_STREIFEN; i++) {
+			streifen[i] = new AtomicLongArray(ANZAHL_BUCKETS);
+		}
+	}
+	
+	/**
+	 * Eine Messung erfassen
+	 * @param nanos Dauer in Nanosekunden
+	 */
+	public void erfassen(long nanos) {
+		final long wert = nanos < 0 ? 0 : Math.min(nanos, WERT_MAX);
+		final int i = (int) Thread.currentThread().getId() & (ANZAHL_STREIFEN - 1);
+		streifen[i].incrementAndGet(index(wert));
+		summe.add(wert);
+		
+		// CAS nur bei einem neuen Maximum
+		if (wert > max.get()) {
+			max.accumulateAndGet(wert, Math::max);
+		}
+	}
+	
+	/**
+	 * Die aktuellen Werte auswerten. Parallele Messungen koennen teilweise enthalten sein.
+	 * @return Anzahl, Summe und Perzentile in Nanosekunden
+	 */
+	public Schnappschuss getSchnappschuss() {
+		final long[] buckets = new long[ANZAHL_BUCKETS];
+		long anzahl = 0;
+		for (AtomicLongArray s : streifen) {
+			for (int i = 0; i < ANZAHL_BUCKETS; i++) {
+				final long n = s.get(i);
+				buckets[i] += n;
+				anzahl += n;
+			}
+		}
+		
+		// Die Obergrenze eines Buckets kann ueber dem tatsaechlichen Maximum liegen
+		final long maxWert = max.get();
+		return new Schnappschuss(anzahl,
+		                         summe.sum(),
+		                         Math.min(maxWert, perzentil(buckets, anzahl, 0.50)),
+		                         Math.min(maxWert, perzentil(buckets, anzahl, 0.95)),
+		                         Math.min(maxWert, perzentil(buckets, anzahl, 0.99)),
+		                         maxWert);
+	}
+	
+	static int index(long wert) {
+		if (wert < 2 * SUB_BUCKETS) {
+			return (int) wert;
+		}
+		
+		// Die fuehrende 1 und die naechsten SUB_BITS Bits bestimmen den Bucket innerhalb der Zweierpotenz
+		final int shift = 63 - Long.numberOfLeadingZeros(wert) - SUB_BITS;
+		return shift * SUB_BUCKETS + (int) (wert >>> shift);
+	}
+	
+	// Groesster Wert, der im Bucket liegt
+	static long obergrenze(int index) {
+		if (index < 2 * SUB_BUCKETS) {
+			return index;
+		}
+		
+		final int shift = index / SUB_BUCKETS - 1;
+		final long mantisse = index % SUB_BUCKETS + SUB_BUCKETS;
+		return ((mantisse + 1) << shift) - 1;
+	}
+	
+	private static long perzentil(long[] buckets, long anzahl, double p) {
+		if (anzahl == 0) {
+			return 0;
+		}
+		
+		final long rang = Math.max(1, (long) Math.ceil(p * anzahl));
+		long kumuliert = 0;
+		for (int i = 0; i < buckets.length; i++) {
+			kumuliert += buckets[i];
+			if (kumuliert >= rang) {
+				return obergrenze(i);
+			}
+		}
+		return WERT_MAX;
+	}
+	
+	/**
+	 * Ausgewertete Werte eines Histogramms in Nanosekunden
+	 */
+	public static class Schnappschuss {
+		private final long anzahl;
+		private final long summe;
+		private final long p50;
+		private final long p95;
+		private final long p99;
+		private final long max;
+		
+		Schnappschuss(long anzahl, long summe, long p50, long p95, long p99, long max) {
+			super();
+			this.anzahl = anzahl;
+			this.summe = summe;
+			this.p50 = p50;
+			this.p95 = p95;
+			this.p99 = p99;
+			this.max = max;
+		}
+		
+		public long getAnzahl() {
+			return anzahl;
+		}
+		
+		public long getSumme() {
+			return summe;
+		}
+		
+		public long getMittelwert() {
+			return anzahl == 0 ? 0 : summe / anzahl;
+		}
+		
+		public long getP50() {
+			return p50;
+		}
+		
+		public long getP95() {
+			return p95;
+		}
+		
+		public long getP99() {
+			return p99;
+		}
+		
+		public long getMax() {
+			return max;
+		}
+		
+		@Override
+		public String toString() {
+			return "Schnappschuss [anzahl=" + anzahl + ", summe=" + summe + ", p50=" + p50
+			       + ", p95=" + p95 + ", p99=" + p99 + ", max=" + max + "]";
+		}
+	}
+}
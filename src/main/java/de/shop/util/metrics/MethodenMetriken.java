@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2013 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.util.metrics;
+
+import de.shop.util.metrics.Histogramm.Schnappschuss;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import javax.enterprise.context.ApplicationScoped;
+
+
+/**
+ * Latenz-Histogramme der Methoden mit @Timed. Der Name und das Histogramm einer Methode werden beim ersten
+ * Aufruf ermittelt bzw. angelegt; danach ist das Nachschlagen ein ConcurrentHashMap.get() ohne Sperre.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+@ApplicationScoped
+public class MethodenMetriken {
+	private final Map<Method, Messpunkt> messpunkte = new ConcurrentHashMap<>();
+	
+	/**
+	 * Das Histogramm zu einer Methode
+	 * @param method Die aufgerufene Methode
+	 * @return Das Histogramm der Methode
+	 */
+	public Histogramm getHistogramm(Method method) {
+		final Messpunkt messpunkt = messpunkte.get(method);
+		if (messpunkt != null) {
+			return messpunkt.histogramm;
+		}
+		return messpunkte.computeIfAbsent(method, Messpunkt::new).histogramm;
+	}
+	
+	/**
+	 * Die aktuellen Werte aller Methoden
+	 * @return Nach "Klasse.methode(Parametertypen)" sortierte Werte in Nanosekunden
+	 */
+	public SortedMap<String, Schnappschuss> getSchnappschuesse() {
+		final SortedMap<String, Schnappschuss> schnappschuesse = new TreeMap<>();
+		
+		messpunkte.values().forEach(m -> schnappschuesse.put(m.name, m.histogramm.getSchnappschuss()));
+		return schnappschuesse;
+	}
+	
+	private static final class Messpunkt {
+		private final String name;
+		private final Histogramm histogramm = new Histogramm();
+		
+		Messpunkt(Method method) {
+			// Ueberladene Methoden werden anhand der Parametertypen unterschieden
+			name = Arrays.stream(method.getParameterTypes())
+			             .map(Class::getSimpleName)
+			             .collect(Collectors.joining(",",
+			                                         method.getDeclaringClass().getSimpleName() + "."
+			                                         + method.getName() + "(",
+			                                         ")"));
+		}
+	}
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2013 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.util.metrics;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import javax.enterprise.context.ApplicationScoped;
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.Path;
+
+
+/**
+ * Metriken pro Resource-Methode der REST-Schnittstelle: Anzahl der Requests je Statusklasse, Anzahl
+ * der gerade laufenden Requests und Latenz-Histogramm. Die Zaehler werden beim ersten Request einer
+ * Methode angelegt; danach wird beim Erfassen kein Objekt mehr erzeugt.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+@ApplicationScoped
+public class RestMetriken {
+	private final Map<Method, Endpunkt> endpunkte = new ConcurrentHashMap<>();
+	
+	/**
+	 * Die Metriken zu einer Resource-Methode
+	 * @param resourceClass Die Resource-Klasse, z.B. KundeResource
+	 * @param method Die Resource-Methode
+	 * @return Die Metriken der Methode
+	 */
+	public Endpunkt getEndpunkt(Class<?> resourceClass, Method method) {
+		final Endpunkt endpunkt = endpunkte.get(method);
+		if (endpunkt != null) {
+			return endpunkt;
+		}
+		return endpunkte.computeIfAbsent(method, m -> new Endpunkt(resourceClass, m));
+	}
+	
+	public Collection<Endpunkt> getEndpunkte() {
+		return Collections.unmodifiableCollection(endpunkte.values());
+	}
+	
+	/**
+	 * Metriken einer Resource-Methode
+	 */
+	public static final class Endpunkt {
+		// 1xx bis 5xx; Index 0 fuer ungueltige Statuscodes
+		private static final int ANZAHL_STATUSKLASSEN = 6;
+		
+		private final String resource;
+		private final String methode;
+		private final String httpMethod;
+		private final String pfad;
+		
+		private final LongAdder[] anzahlProStatusklasse = new LongAdder[ANZAHL_STATUSKLASSEN];
+		private final LongAdder laufend = new LongAdder();
+		private final Histogramm histogramm = new Histogramm();
+		
+		Endpunkt(Class<?> resourceClass, Method method) {
+			resource = resourceClass.getSimpleName();
+			methode = method.getName();
+			httpMethod = httpMethod(method);
+			pfad = pfad(resourceClass.getAnnotation(Path.class)) + pfad(method.getAnnotation(Path.class));
+			for (int i = 0; i < ANZAHL_STATUSKLASSEN; i++) {
+				anzahlProStatusklasse[i] = new LongAdder();
+			}
+		}
+		
+		public void anfang() {
+			laufend.increment();
+		}
+		
+		public void ende(int status, long nanos) {
+			laufend.decrement();
+			final int klasse = status / 100;
+			anzahlProStatusklasse[klasse > 0 && klasse < ANZAHL_STATUSKLASSEN ? klasse : 0].increment();
+			histogramm.erfassen(nanos);
+		}
+		
+		public String getResource() {
+			return resource;
+		}
+		
+		public String getMethode() {
+			return methode;
+		}
+		
+		public String getHttpMethod() {
+			return httpMethod;
+		}
+		
+		public String getPfad() {
+			return pfad;
+		}
+		
+		/**
+		 * Anzahl der beendeten Requests einer Statusklasse
+		 * @param klasse 1 bis 5 fuer 1xx bis 5xx
+		 * @return Anzahl der Requests
+		 */
+		public long getAnzahl(int klasse) {
+			return anzahlProStatusklasse[klasse].sum();
+		}
+		
+		public long getLaufend() {
+			return laufend.sum();
+		}
+		
+		public Histogramm getHistogramm() {
+			return histogramm;
+		}
+		
+		private static String httpMethod(Method method) {
+			for (Annotation a : method.getAnnotations()) {
+				final HttpMethod httpMethod = a.annotationType().getAnnotation(HttpMethod.class);
+				if (httpMethod != null) {
+					return httpMethod.value();
+				}
+			}
+			return "";
+		}
+		
+		private static String pfad(Path path) {
+			if (path == null) {
+				return "";
+			}
+			final String value = path.value();
+			return value.startsWith("/") ? value : "/" + value;
+		}
+	}
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2013 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.util.persistence;
+
+
+/**
+ * Event, um eine hochgeladene Datei nach dem Commit als Blob abzulegen bzw. nach einem Rollback zu loeschen
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+public class BlobAblage {
+	private final HochgeladeneDatei upload;
+	private final MimeType mimeType;
+	
+	public BlobAblage(HochgeladeneDatei upload, MimeType mimeType) {
+		super();
+		this.upload = upload;
+		this.mimeType = mimeType;
+	}
+	
+	public HochgeladeneDatei getUpload() {
+		return upload;
+	}
+	
+	public MimeType getMimeType() {
+		return mimeType;
+	}
+	
+	@Override
+	public String toString() {
+		return "BlobAblage [upload=" + upload + ", mimeType=" + mimeType + "]";
+	}
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2013 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.util.persistence;
+
+
+/**
+ * Event, falls eine Datei nicht mehr auf einen Blob verweist, z.B. nach einem neuen Upload oder
+ * beim Loeschen eines Kunden. Der Blob wird geloescht, falls keine andere Datei mehr auf ihn verweist.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+public class BlobFreigabe {
+	private final String hash;
+	private final MimeType mimeType;
+	
+	public BlobFreigabe(String hash, MimeType mimeType) {
+		super();
+		this.hash = hash;
+		this.mimeType = mimeType;
+	}
+	
+	public String getHash() {
+		return hash;
+	}
+	
+	public MimeType getMimeType() {
+		return mimeType;
+	}
+	
+	@Override
+	public String toString() {
+		return "BlobFreigabe [hash=" + hash + ", mimeType=" + mimeType + "]";
+	}
+}
@@ -21,12 +21,13 @@ import java.lang.invoke.MethodHandles;
 import java.util.Objects;
 import java.util.logging.Logger;
 import javax.enterprise.inject.Vetoed;
-import javax.persistence.Basic;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
-import javax.persistence.Lob;
+import javax.persistence.Index;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
 import javax.persistence.Table;
 import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlTransient;
@@ -39,7 +40,23 @@ import static javax.xml.bind.annotation.XmlAccessType.FIELD;
  * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
  */
 @Entity
-@Table(name = "file_tbl")   // "file" ist in Oracle kein gueltiger Tabellenname
+@Table(name = "file_tbl",   // "file" ist in Oracle kein gueltiger Tabellenname
+       indexes = @Index(columnList = "hash"))
+@NamedQueries({
+	@NamedQuery(name  = File.FIND_ANZAHL_BY_HASH_MIME_TYPE,
+	            query = "SELECT   COUNT(f)"
+	                    + " FROM  File f"
+	                    + " WHERE f.hash = :" + File.PARAM_HASH
+	                    + "       AND f.mimeType = :" + File.PARAM_MIME_TYPE),
+	@NamedQuery(name  = File.FIND_BLOBS_BY_IDS,
+	            query = "SELECT   f.hash, f.mimeType"
+	                    + " FROM  File f"
+	                    + " WHERE f.id IN :" + File.PARAM_IDS),
+	@NamedQuery(name  = File.DELETE_BY_IDS,
+	            query = "DELETE"
+	                    + " FROM  File f"
+	                    + " WHERE f.id IN :" + File.PARAM_IDS)
+})
 @XmlAccessorType(FIELD)
 @Vetoed
 public class File  extends AbstractVersionedAuditable {
@@ -48,6 +65,16 @@ public class File  extends AbstractVersionedAuditable {
 	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
 
 	public static final int FILENAME_LENGTH_MAX = 128;
+	public static final int HASH_LENGTH = 64;
+	
+	private static final String PREFIX = "File.";
+	public static final String FIND_ANZAHL_BY_HASH_MIME_TYPE = PREFIX + "findAnzahlByHashMimeType";
+	public static final String FIND_BLOBS_BY_IDS = PREFIX + "findBlobsByIds";
+	public static final String DELETE_BY_IDS = PREFIX + "deleteByIds";
+	
+	public static final String PARAM_HASH = "hash";
+	public static final String PARAM_MIME_TYPE = "mimeType";
+	public static final String PARAM_IDS = "ids";
 	
 	@Id
 	@GeneratedValue
@@ -55,10 +82,14 @@ public class File  extends AbstractVersionedAuditable {
 	@XmlTransient
 	private Long id;
 	
-	@Lob
-	@Basic(optional = false)
+	@Column(nullable = false)
+	@XmlTransient
+	private long groesse;
+	
+	// SHA-256 des Inhalts: mehrere Dateien mit gleichem Inhalt verweisen auf denselben Blob (null bei Altbestand)
+	@Column(length = HASH_LENGTH)
 	@XmlTransient
-	private byte[] bytes;  // Spaltentyp OID bei PostgreSQL, BLOB bei Oracle und LONGBLOB bei MySQL
+	private String hash;
 	
 	@Column(length = FILENAME_LENGTH_MAX, unique = true, nullable = false)
 	@XmlTransient
@@ -76,21 +107,29 @@ public class File  extends AbstractVersionedAuditable {
 		super();
 	}
 	
-	public File(byte[] bytes, String dateiname, MimeType mimeType) {
+	public File(String hash, long groesse, String dateiname, MimeType mimeType) {
 		super();
-		set(bytes, dateiname, mimeType);
+		set(hash, groesse, dateiname, mimeType);
 	}
 
 	public Long getId() {
 		return id;
 	}
 
-	public byte[] getBytes() {
-		return bytes;
+	public long getGroesse() {
+		return groesse;
+	}
+
+	public void setGroesse(long groesse) {
+		this.groesse = groesse;
+	}
+	
+	public String getHash() {
+		return hash;
 	}
 
-	public void setBytes(byte[] bytes) {
-		this.bytes = bytes;
+	public void setHash(String hash) {
+		this.hash = hash;
 	}
 	
 	public String getFilename() {
@@ -117,9 +156,10 @@ public class File  extends AbstractVersionedAuditable {
 		this.multimediaType = multimediaType;
 	}
 
-	public final void set(byte[] bytes, String filename, MimeType mimeType) {
+	public final void set(String hash, long groesse, String filename, MimeType mimeType) {
 		// Hibernate braucht den Aufruf der set-Methoden, um ein Update (Dirty-Flag!) zu erkennen
-		setBytes(bytes);
+		setHash(hash);
+		setGroesse(groesse);
 		setFilename(filename);
 		setMimeType(mimeType);
 		setMultimediaType(mimeType.getMultimediaType());
@@ -130,8 +170,7 @@ public class File  extends AbstractVersionedAuditable {
 
 	@Override
 	public String toString() {
-		final int groesse = bytes == null ? 0 : bytes.length;
-		return "File [id=" + id + ", groesse=" + groesse
+		return "File [id=" + id + ", hash=" + hash + ", groesse=" + groesse
 			   + ", filename=" + filename + ", mimeType=" + mimeType + ", multimediaType=" + multimediaType
 			   + ", " + super.toString() + "]";
 	}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2013 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.util.persistence;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+import javax.enterprise.context.ApplicationScoped;
+
+import static java.nio.file.StandardOpenOption.READ;
+import static java.util.logging.Level.FINEST;
+import static java.util.logging.Level.WARNING;
+
+
+/**
+ * Begrenzter Cache fuer haeufig heruntergeladene kleine Dateien, z.B. Avatare, mit LRU-Verdraengung.
+ * Die Inhalte liegen ausserhalb des Java-Heaps in Direct Buffers. Der Schluessel ist der Hashwert des
+ * Inhalts bzw. bei Altbestand ID und Version, damit eine neu hochgeladene Datei nie mit dem alten Inhalt
+ * ausgeliefert wird.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+@ApplicationScoped
+public class FileCache {
+	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+	
+	// Nur kleine Dateien werden im Cache gehalten, Videos werden immer von der Platte gelesen
+	private static final long DATEI_MAX = 512 * 1024;
+	private static final long GESAMT_MAX = 64 * 1024 * 1024;
+	
+	// accessOrder = true: die Iteration beginnt beim am laengsten nicht mehr angefragten Eintrag
+	private final Map<String, ByteBuffer> dateien = new LinkedHashMap<>(16, 0.75f, true);
+	private long gesamt;
+	
+	/**
+	 * Den Inhalt einer unveraenderlichen Datei, z.B. einer verkleinerten Variante, aus dem Cache lesen
+	 * bzw. beim ersten Zugriff in den Cache laden
+	 * @param schluessel Eindeutiger Schluessel fuer den Inhalt
+	 * @param groesse Die Groesse der Datei in Bytes
+	 * @param path Der Pfad der Datei im Dateisystem
+	 * @return Nur-lesender Buffer mit dem Inhalt oder null, falls die Datei nicht gecacht wird
+	 */
+	public ByteBuffer get(String schluessel, long groesse, Path path) {
+		if (groesse <= 0 || groesse > DATEI_MAX) {
+			return null;
+		}
+		
+		synchronized (dateien) {
+			final ByteBuffer buffer = dateien.get(schluessel);
+			if (buffer != null) {
+				return buffer.duplicate();
+			}
+		}
+		
+		// Einlesen ausserhalb der Sperre
+		final ByteBuffer buffer;
+		try (final FileChannel channel = FileChannel.open(path, READ)) {
+			final long tatsaechlich = channel.size();
+			if (tatsaechlich > DATEI_MAX) {
+				return null;
+			}
+			buffer = ByteBuffer.allocateDirect((int) tatsaechlich);
+			int anzahl = 0;
+			while (buffer.hasRemaining() && anzahl != -1) {
+				anzahl = channel.read(buffer);
+			}
+			buffer.flip();
+		}
+		catch (IOException e) {
+			LOGGER.log(WARNING, "Fehler beim Lesen der Datei " + path, e);
+			return null;
+		}
+		
+		final ByteBuffer readOnly = buffer.asReadOnlyBuffer();
+		synchronized (dateien) {
+			if (dateien.putIfAbsent(schluessel, readOnly) == null) {
+				gesamt += readOnly.capacity();
+				verdraengen();
+			}
+		}
+		if (LOGGER.isLoggable(FINEST)) {
+			LOGGER.finest("Datei im Cache: " + schluessel + " (" + gesamt + " Bytes insgesamt)");
+		}
+		return readOnly.duplicate();
+	}
+	
+	// Aufruf nur innerhalb von synchronized (dateien)
+	private void verdraengen() {
+		final Iterator<ByteBuffer> iter = dateien.values().iterator();
+		while (gesamt > GESAMT_MAX && iter.hasNext()) {
+			gesamt -= iter.next().capacity();
+			iter.remove();
+		}
+	}
+}
@@ -17,26 +17,38 @@
 
 package de.shop.util.persistence;
 
-import de.shop.util.interceptor.Log;
+import com.google.common.io.BaseEncoding;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
 import java.lang.invoke.MethodHandles;
 import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.attribute.BasicFileAttributeView;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.logging.Logger;
 import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
 import javax.inject.Named;
 import javax.naming.Context;
 import javax.naming.InitialContext;
 import javax.naming.NamingException;
 
-import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static javax.enterprise.event.TransactionPhase.AFTER_FAILURE;
+import static javax.enterprise.event.TransactionPhase.AFTER_SUCCESS;
 import static java.util.logging.Level.FINEST;
 import static java.util.logging.Level.WARNING;
 
@@ -50,6 +62,30 @@ public class FileHelper implements Serializable {
 	private static final long serialVersionUID = 12904207356717310L;
 	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
 	
+	// URLConnection.guessContentTypeFromStream() wertet hoechstens die ersten 16 Bytes aus
+	private static final int MIME_TYPE_BYTES = 16;
+	
+	// Puffer beim Kopieren eines hochgeladenen Streams in eine temporaere Datei
+	private static final int PUFFER_GROESSE = 64 * 1024;
+	
+	// Unterverzeichnis fuer temporaere Dateien beim Hochladen, im gleichen Dateisystem wie die fertigen Dateien
+	private static final String TMP_VERZEICHNIS = "tmp";
+	
+	// Unterverzeichnis fuer die Blobs: blobs/ab/cd/abcd...ef.png mit dem SHA-256-Hashwert als Dateiname.
+	// Durch 2 Ebenen mit je 256 Unterverzeichnissen enthaelt kein Verzeichnis Millionen von Eintraegen.
+	private static final String BLOB_VERZEICHNIS = "blobs";
+	private static final int SHARD_LAENGE = 2;
+	private static final String HASH_ALGORITHMUS = "SHA-256";
+	
+	@Inject
+	private FileService fs;
+	
+	@Inject
+	private FileSchreiber fileSchreiber;
+	
+	@Inject
+	private RenditionErzeuger renditionErzeuger;
+	
 	// Zulaessige Extensionen fuer Upload mit einer Webseite
 	private String extensionen;
 	
@@ -117,6 +153,34 @@ public class FileHelper implements Serializable {
 		}
 	}
 	
+	/**
+	 * MIME-Type zu einer Datei ermitteln, wobei nur die ersten Bytes gelesen werden
+	 * @param datei Pfad der Datei, zu der der MIME-Type ermittelt wird
+	 * @return Der zugehoerige MIME-Type
+	 */
+	public MimeType getMimeType(Path datei) {
+		if (datei == null) {
+			return null;
+		}
+		
+		final ByteBuffer buffer = ByteBuffer.allocate(MIME_TYPE_BYTES);
+		try (final FileChannel channel = FileChannel.open(datei, READ)) {
+			int anzahl = 0;
+			while (buffer.hasRemaining() && anzahl != -1) {
+				anzahl = channel.read(buffer);
+			}
+		}
+		catch (IOException e) {
+			LOGGER.warning("Fehler beim Ermitteln des MIME-Types");
+			return null;
+		}
+		
+		final byte[] bytes = new byte[buffer.position()];
+		buffer.flip();
+		buffer.get(bytes);
+		return getMimeType(bytes);
+	}
+	
 	public String getFilename(Class<? extends Serializable> clazz, Object id, MimeType mimeType) {
 		final String filename = clazz.getSimpleName() + "_" + id + "." + mimeType.getExtension();
 		if (LOGGER.isLoggable(FINEST)) {
@@ -129,48 +193,197 @@ public class FileHelper implements Serializable {
 		return extensionen;
 	}
 	
-	@Log
-	public void store(File file) {
-		if (file == null) {
-			return;
+	/**
+	 * Einen hochgeladenen Stream ueber NIO-Channels in eine temporaere Datei schreiben,
+	 * ohne die Daten als Ganzes im Hauptspeicher zu halten
+	 * @param inputStream Der hochgeladene Stream
+	 * @return Die temporaere Datei mit dem SHA-256-Hashwert, der waehrend des Schreibens berechnet wurde
+	 */
+	public HochgeladeneDatei storeTemp(InputStream inputStream) {
+		final MessageDigest messageDigest;
+		try {
+			messageDigest = MessageDigest.getInstance(HASH_ALGORITHMUS);
 		}
-		
-		final String filename = file.getFilename();
-		final Path absoluteFilename = path.resolve(filename);
-		if (LOGGER.isLoggable(FINEST)) {
-			LOGGER.finest("Absoluter Dateiname: " + absoluteFilename);
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
 		}
 		
-		// aktuelle Datei nicht ueberschreiben?
-		if (Files.exists(absoluteFilename)) {
-			long creationTime = 0L;
-			try {
-				creationTime = Files.getFileAttributeView(absoluteFilename, BasicFileAttributeView.class)
-				                    .readAttributes()
-									.creationTime()
-									.toMillis();
-			}
-			catch (IOException e) {
-				LOGGER.log(WARNING, "Fehler beim Lesen des Erzeugungsdatums der Datei " + absoluteFilename, e);
-			}
+		Path tmp = null;
+		try {
+			final Path tmpVerzeichnis = Files.createDirectories(path.resolve(TMP_VERZEICHNIS));
+			tmp = Files.createTempFile(tmpVerzeichnis, "upload", ".tmp");
 			
-			// Die Datei wurde beim Hochladen evtl. in einem parallelen Thread angelegt,
-			// der evtl. vor dem Abspeichern der Verwaltungsdaten in der DB fertig war.
-			// Als Zeitunterschied bzw. Toleranz sollten 1000 Millisekunden ausreichend sein.
-			if (creationTime + 1000 > file.getAktualisiert().getTime()) {
-				if (LOGGER.isLoggable(FINEST)) {
-					LOGGER.finest("Die Datei " + filename + " existiert bereits");
+			long groesse = 0;
+			try (final ReadableByteChannel in = Channels.newChannel(inputStream);
+				 final FileChannel out = FileChannel.open(tmp, WRITE)) {
+				final ByteBuffer buffer = ByteBuffer.allocate(PUFFER_GROESSE);
+				while (in.read(buffer) != -1) {
+					buffer.flip();
+					messageDigest.update(buffer.array(), 0, buffer.limit());
+					groesse += buffer.limit();
+					while (buffer.hasRemaining()) {
+						out.write(buffer);
+					}
+					buffer.clear();
 				}
+			}
+			
+			final String hash = BaseEncoding.base16().lowerCase().encode(messageDigest.digest());
+			final HochgeladeneDatei upload = new HochgeladeneDatei(tmp, hash, groesse);
+			if (LOGGER.isLoggable(FINEST)) {
+				LOGGER.finest("Temporaere Datei: " + upload);
+			}
+			return upload;
+		}
+		catch (IOException e) {
+			delete(tmp);
+			throw new UncheckedIOException("Fehler beim Speichern der hochgeladenen Datei", e);
+		}
+	}
+	
+	/**
+	 * Eine hochgeladene Datei als Blob zu ihrem Hashwert ablegen, sobald die Transaktion erfolgreich
+	 * abgeschlossen ist. Gibt es den Blob bereits, dann wird nur die temporaere Datei geloescht.
+	 * Zu Bildern werden anschliessend die verkleinerten Varianten erzeugt.
+	 * @param ablage Die temporaere Datei mit Hashwert und der MIME-Type fuer die Extension des Blobs
+	 */
+	public void onBlobAblage(@Observes(during = AFTER_SUCCESS) BlobAblage ablage) {
+		final HochgeladeneDatei upload = ablage.getUpload();
+		final Path blob = getBlobPath(upload.getHash(), ablage.getMimeType());
+		fileSchreiber.verschieben(upload.getPath(), blob);
+		renditionErzeuger.anstossen(blob, ablage.getMimeType());
+	}
+	
+	/**
+	 * Nach einem Rollback die temporaere Datei loeschen, damit keine verwaisten Dateien entstehen
+	 * @param ablage Die temporaere Datei mit Hashwert und der MIME-Type
+	 */
+	public void onBlobAblageFehler(@Observes(during = AFTER_FAILURE) BlobAblage ablage) {
+		delete(ablage.getUpload().getPath());
+	}
+	
+	/**
+	 * Einen Blob loeschen, sobald die Transaktion erfolgreich abgeschlossen ist und keine Datei mehr
+	 * auf den Blob verweist. Zaehlen und Loeschen erfolgen unter der Sperre des Blobs im FileSchreiber:
+	 * sonst koennte ein gleichzeitiger Upload mit demselben Inhalt den Blob noch als vorhanden sehen,
+	 * seine temporaere Datei verwerfen und danach auf einen geloeschten Blob verweisen.
+	 * @param freigabe Hashwert und MIME-Type des Blobs
+	 */
+	public void onBlobFreigabe(@Observes(during = AFTER_SUCCESS) BlobFreigabe freigabe) {
+		final Path blob = getBlobPath(freigabe.getHash(), freigabe.getMimeType());
+		fileSchreiber.gesperrt(blob, () -> {
+			if (fs.countReferenzen(freigabe.getHash(), freigabe.getMimeType()) > 0) {
 				return;
 			}
+			
+			if (LOGGER.isLoggable(FINEST)) {
+				LOGGER.finest("Blob ohne Referenzen wird geloescht: " + blob);
+			}
+			for (Rendition rendition : Rendition.values()) {
+				delete(rendition.getPath(blob));
+			}
+		});
+	}
+	
+	/**
+	 * Eine (temporaere) Datei loeschen, falls sie existiert
+	 * @param datei Pfad der Datei
+	 */
+	public void delete(Path datei) {
+		if (datei == null) {
+			return;
 		}
-		
-		// byte[] als Datei abspeichern
-		try (final InputStream inputStream = new ByteArrayInputStream(file.getBytes())) {
-			Files.copy(inputStream, absoluteFilename, REPLACE_EXISTING);
+		try {
+			Files.deleteIfExists(datei);
 		}
 		catch (IOException e) {
-			LOGGER.log(WARNING, "Fehler beim Speichern der Datei " + absoluteFilename, e);
+			LOGGER.log(WARNING, "Fehler beim Loeschen der Datei " + datei, e);
+		}
+	}
+	
+	/**
+	 * Den Inhalt einer Datei in einen OutputStream kopieren, ohne ihn vollstaendig in den Hauptspeicher zu laden
+	 * @param datei Der Pfad der Datei, siehe bereitstellen()
+	 * @param outputStream Der OutputStream, z.B. fuer einen HTTP-Response
+	 * @throws IOException Fehler beim Lesen oder Schreiben
+	 */
+	public void copy(Path datei, OutputStream outputStream) throws IOException {
+		Files.copy(datei, outputStream);
+	}
+	
+	/**
+	 * Pfad einer hochgeladenen Datei im Dateisystem. Die Datei existiert evtl. noch nicht, weil sie noch in der
+	 * Queue des FileSchreiber wartet; zum Lesen des Inhalts deshalb bereitstellen() verwenden.
+	 * @param file Die Verwaltungsdaten der Datei
+	 * @return Der absolute Pfad
+	 */
+	public Path getPath(File file) {
+		// Altbestand ohne Hashwert unter dem Dateinamen
+		return file.getHash() == null
+		       ? path.resolve(file.getFilename())
+		       : getBlobPath(file.getHash(), file.getMimeType());
+	}
+	
+	/**
+	 * Eine hochgeladene Datei zum Lesen bereitstellen. Wartet die Datei noch in der Queue des FileSchreiber,
+	 * z.B. direkt nach dem Upload, wird sie sofort im aufrufenden Thread geschrieben, d.h. der Aufruf kann
+	 * fuer die Dauer des Schreibens blockieren.
+	 * @param file Die Verwaltungsdaten der Datei
+	 * @return Der absolute Pfad der vorhandenen Datei
+	 */
+	public Path bereitstellen(File file) {
+		final Path datei = getPath(file);
+		fileSchreiber.vorziehen(datei);
+		return datei;
+	}
+	
+	/**
+	 * Pfad einer hochgeladenen Datei relativ zum Verzeichnis fuer hochgeladene Dateien, z.B. fuer eine URL
+	 * @param file Die Verwaltungsdaten der Datei
+	 * @return Der relative Pfad mit "/" als Trennzeichen
+	 */
+	public String getRelativePath(File file) {
+		return getRelativePath(getPath(file));
+	}
+	
+	/**
+	 * Pfad einer Datei relativ zum Verzeichnis fuer die Dateien, z.B. fuer eine verkleinerte Variante
+	 * @param datei Der absolute Pfad der Datei
+	 * @return Der relative Pfad mit "/" als Trennzeichen
+	 */
+	public String getRelativePath(Path datei) {
+		return path.relativize(datei)
+		           .toString()
+		           .replace('\\', '/');
+	}
+	
+	/**
+	 * Pfad einer verkleinerten Variante zu einem Bild. Fehlt die Variante noch, wird sie im Hintergrund
+	 * erzeugt, damit sie beim naechsten Zugriff vorhanden ist.
+	 * @param file Die Verwaltungsdaten der Datei
+	 * @param rendition Die gewuenschte Variante
+	 * @return Der Pfad der Variante oder null, falls (noch) das Original verwendet werden muss
+	 */
+	public Path getRenditionPath(File file, Rendition rendition) {
+		// Altbestand ohne Hashwert wird am gleichen Pfad ueberschrieben und hat deshalb keine Varianten
+		if (rendition == null || rendition == Rendition.ORIGINAL || file.getHash() == null
+		    || file.getMultimediaType() != MultimediaType.IMAGE) {
+			return null;
+		}
+		
+		final Path original = getPath(file);
+		final Path variante = rendition.getPath(original);
+		if (Files.exists(variante)) {
+			return variante;
 		}
+		renditionErzeuger.anstossen(original, file.getMimeType());
+		return null;
+	}
+	
+	private Path getBlobPath(String hash, MimeType mimeType) {
+		return path.resolve(BLOB_VERZEICHNIS)
+		           .resolve(hash.substring(0, SHARD_LAENGE))
+		           .resolve(hash.substring(SHARD_LAENGE, 2 * SHARD_LAENGE))
+		           .resolve(hash + "." + mimeType.getExtension());
 	}
 }
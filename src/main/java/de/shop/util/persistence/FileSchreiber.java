@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2013 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.util.persistence;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.concurrent.ManagedThreadFactory;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.logging.Level.FINEST;
+import static java.util.logging.Level.WARNING;
+
+
+/**
+ * Schreibauftraege fuer Dateien im Verzeichnis von FileHelper, die erst nach dem Commit eingereiht und
+ * von einem eigenen Thread abgearbeitet werden:
+ * <ul>
+ * <li>Die Queue ist begrenzt: ist sie voll, wartet der Aufrufer (Backpressure) und schreibt notfalls selbst.</li>
+ * <li>Mehrere Auftraege fuer dieselbe Zieldatei werden zusammengefasst, d.h. nur der neueste wird ausgefuehrt.</li>
+ * <li>Queue-Laenge und Latenz (Einreihen bis Abschluss) werden fuer das Monitoring mitgezaehlt.</li>
+ * <li>Ein Auftrag wird unter einer Sperre zur Zieldatei ausgefuehrt, unter der auch ein Blob freigegeben wird.</li>
+ * </ul>
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+@ApplicationScoped
+public class FileSchreiber {
+	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+	
+	private static final int QUEUE_KAPAZITAET = 256;
+	private static final long EINREIHEN_TIMEOUT_SEKUNDEN = 5;
+	private static final long WARTEN_MILLIS = 500;
+	private static final int ANZAHL_SPERREN = 64;
+	
+	@Inject
+	private ManagedThreadFactory managedThreadFactory;
+	
+	// Die Queue enthaelt nur die Zieldateien, der jeweils neueste Auftrag steht in der Map
+	private final BlockingQueue<Path> queue = new ArrayBlockingQueue<>(QUEUE_KAPAZITAET);
+	private final ConcurrentMap<Path, Auftrag> auftraege = new ConcurrentHashMap<>();
+	
+	// Gestreifte Sperren: Zieldateien mit gleichem Index teilen sich eine Sperre
+	private final Lock[] sperren = Stream.generate(ReentrantLock::new)
+	                                     .limit(ANZAHL_SPERREN)
+	                                     .toArray(Lock[]::new);
+	
+	private final AtomicLong anzahlGeschrieben = new AtomicLong();
+	private final AtomicLong anzahlZusammengefasst = new AtomicLong();
+	private final AtomicLong latenzSummeNanos = new AtomicLong();
+	private final AtomicLong latenzMaxNanos = new AtomicLong();
+	
+	private volatile boolean aktiv;
+	private Thread thread;
+	
+	@PostConstruct
+	private void postConstruct() {
+		aktiv = true;
+		thread = managedThreadFactory.newThread(this::abarbeiten);
+		thread.start();
+		LOGGER.info("FileSchreiber gestartet mit einer Queue fuer " + QUEUE_KAPAZITAET + " Auftraege");
+	}
+	
+	@PreDestroy
+	private void preDestroy() {
+		aktiv = false;
+		thread.interrupt();
+		
+		// Noch offene Auftraege nicht verlieren
+		auftraege.keySet().forEach(this::vorziehen);
+	}
+	
+	/**
+	 * Eine temporaere Datei als Zieldatei ablegen. Existiert die Zieldatei bereits, z.B. ein Blob mit
+	 * gleichem Inhalt, wird nur die temporaere Datei geloescht.
+	 * @param tmp Die temporaere Datei
+	 * @param ziel Die Zieldatei
+	 */
+	public void verschieben(Path tmp, Path ziel) {
+		einreihen(new Auftrag(ziel, tmp));
+	}
+	
+	/**
+	 * Einen noch offenen Auftrag fuer eine Zieldatei sofort im aufrufenden Thread ausfuehren,
+	 * z.B. beim Download direkt nach dem Upload
+	 * @param ziel Die Zieldatei
+	 */
+	public void vorziehen(Path ziel) {
+		final Auftrag auftrag = auftraege.remove(ziel);
+		if (auftrag != null) {
+			ausfuehren(auftrag);
+		}
+	}
+	
+	/**
+	 * Eine Aktion unter der Sperre einer Zieldatei ausfuehren, d.h. nicht gleichzeitig mit einem Auftrag
+	 * fuer diese Zieldatei, z.B. das Pruefen der Referenzen und Loeschen eines Blobs
+	 * @param ziel Die Zieldatei
+	 * @param aktion Die Aktion
+	 */
+	public void gesperrt(Path ziel, Runnable aktion) {
+		final Lock sperre = getSperre(ziel);
+		sperre.lock();
+		try {
+			aktion.run();
+		}
+		finally {
+			sperre.unlock();
+		}
+	}
+	
+	public int getQueueLaenge() {
+		return auftraege.size();
+	}
+	
+	public long getAnzahlGeschrieben() {
+		return anzahlGeschrieben.get();
+	}
+	
+	public long getAnzahlZusammengefasst() {
+		return anzahlZusammengefasst.get();
+	}
+	
+	public long getLatenzMittelwertMillis() {
+		final long anzahl = anzahlGeschrieben.get();
+		return anzahl == 0 ? 0 : NANOSECONDS.toMillis(latenzSummeNanos.get() / anzahl);
+	}
+	
+	public long getLatenzMaxMillis() {
+		return NANOSECONDS.toMillis(latenzMaxNanos.get());
+	}
+	
+	private void einreihen(Auftrag auftrag) {
+		final Auftrag vorher = auftraege.put(auftrag.ziel, auftrag);
+		if (vorher != null) {
+			// Die Zieldatei ist bereits in der Queue: nur der neueste Auftrag wird ausgefuehrt
+			anzahlZusammengefasst.incrementAndGet();
+			vorher.verwerfen();
+			return;
+		}
+		
+		boolean eingereiht;
+		try {
+			eingereiht = queue.offer(auftrag.ziel, EINREIHEN_TIMEOUT_SEKUNDEN, SECONDS);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			eingereiht = false;
+		}
+		if (!eingereiht) {
+			LOGGER.warning("Queue fuer Schreibauftraege ist voll: " + auftrag.ziel + " wird sofort geschrieben");
+			vorziehen(auftrag.ziel);
+		}
+	}
+	
+	private void abarbeiten() {
+		while (aktiv) {
+			final Path ziel;
+			try {
+				ziel = queue.poll(WARTEN_MILLIS, MILLISECONDS);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			if (ziel != null) {
+				// Evtl. schon durch vorziehen() erledigt
+				vorziehen(ziel);
+			}
+		}
+	}
+	
+	private void ausfuehren(Auftrag auftrag) {
+		final Lock sperre = getSperre(auftrag.ziel);
+		sperre.lock();
+		try {
+			if (Files.exists(auftrag.ziel)) {
+				Files.deleteIfExists(auftrag.tmp);
+			}
+			else {
+				Files.createDirectories(auftrag.ziel.getParent());
+				try {
+					Files.move(auftrag.tmp, auftrag.ziel, ATOMIC_MOVE);
+				}
+				catch (FileAlreadyExistsException e) {
+					Files.deleteIfExists(auftrag.tmp);
+				}
+			}
+		}
+		catch (IOException e) {
+			LOGGER.log(WARNING, "Fehler beim Schreiben der Datei " + auftrag.ziel, e);
+			return;
+		}
+		finally {
+			sperre.unlock();
+		}
+		
+		final long latenz = System.nanoTime() - auftrag.eingereiht;
+		anzahlGeschrieben.incrementAndGet();
+		latenzSummeNanos.addAndGet(latenz);
+		latenzMaxNanos.accumulateAndGet(latenz, Math::max);
+		if (LOGGER.isLoggable(FINEST)) {
+			LOGGER.finest("Datei geschrieben: " + auftrag.ziel + " nach " + NANOSECONDS.toMillis(latenz) + " ms");
+		}
+	}
+	
+	private Lock getSperre(Path ziel) {
+		return sperren[Math.floorMod(ziel.hashCode(), ANZAHL_SPERREN)];
+	}
+	
+	private static final class Auftrag {
+		private final Path ziel;
+		private final Path tmp;
+		private final long eingereiht = System.nanoTime();
+		
+		Auftrag(Path ziel, Path tmp) {
+			this.ziel = ziel;
+			this.tmp = tmp;
+		}
+		
+		void verwerfen() {
+			try {
+				Files.deleteIfExists(tmp);
+			}
+			catch (IOException e) {
+				LOGGER.log(WARNING, "Fehler beim Loeschen der Datei " + tmp, e);
+			}
+		}
+	}
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2013 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.util.persistence;
+
+import java.io.Serializable;
+import javax.ejb.Stateless;
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+import javax.validation.constraints.NotNull;
+
+
+/**
+ * Zugriff auf die Verwaltungsdaten hochgeladener Dateien
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+@Stateless
+public class FileService implements Serializable {
+	private static final long serialVersionUID = -4416238517203958231L;
+	
+	@Inject
+	private transient EntityManager em;
+	
+	/**
+	 * Suche nach den Verwaltungsdaten einer Datei anhand der ID
+	 * @param id ID der gesuchten Datei
+	 * @return Die gesuchte Datei
+	 * @exception ConstraintViolationException zu @NotNull, falls keine Datei gefunden wurde
+	 */
+	@NotNull(message = "{file.notFound.id}")
+	public File findFileById(Long id) {
+		return em.find(File.class, id);
+	}
+	
+	/**
+	 * Referenzzaehler eines Blobs: Anzahl der Dateien, die auf den Blob verweisen. Der MIME-Type bestimmt
+	 * die Extension und gehoert deshalb zum Schluessel des Blobs.
+	 * @param hash SHA-256 des Blobs
+	 * @param mimeType MIME-Type des Blobs
+	 * @return Anzahl der Dateien
+	 */
+	public long countReferenzen(String hash, MimeType mimeType) {
+		return em.createNamedQuery(File.FIND_ANZAHL_BY_HASH_MIME_TYPE, Long.class)
+		         .setParameter(File.PARAM_HASH, hash)
+		         .setParameter(File.PARAM_MIME_TYPE, mimeType)
+		         .getSingleResult();
+	}
+}
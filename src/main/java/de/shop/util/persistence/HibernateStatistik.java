@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2013 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.util.persistence;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
+import javax.persistence.metamodel.ManagedType;
+
+
+/**
+ * Liest die Statistik von Hibernate, d.h. je Query die Anzahl der Ausfuehrungen, die durchschnittliche und
+ * maximale Dauer sowie die Anzahl gelesener Datensaetze und je Region des 2nd-Level-Cache die Treffer.
+ * Die API von Hibernate ist nicht im Compile-Classpath, deshalb wird ueber die Interfaces
+ * org.hibernate.stat.* per Reflection zugegriffen. Die Statistik wird in persistence.xml durch
+ * hibernate.generate_statistics aktiviert, und zwar nur beim Deployment mit der System Property
+ * shop.hibernate.statistik=true.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+@ApplicationScoped
+public class HibernateStatistik {
+	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+	
+	private static final String SESSION_FACTORY = "org.hibernate.SessionFactory";
+	private static final String STATISTICS = "org.hibernate.stat.Statistics";
+	private static final String QUERY_STATISTICS = "org.hibernate.stat.QueryStatistics";
+	private static final String CACHE_STATISTICS = "org.hibernate.stat.SecondLevelCacheStatistics";
+	
+	@Inject
+	private transient EntityManager em;
+	
+	// null, falls der Persistence Provider nicht Hibernate ist
+	private Object statistics;
+	private Method isStatisticsEnabled;
+	private Method getQueries;
+	private Method getQueryStatistics;
+	private Method getRegionNames;
+	private Method getCacheStatistics;
+	private Method getExecutionCount;
+	private Method getExecutionAvgTime;
+	private Method getExecutionMaxTime;
+	private Method getExecutionRowCount;
+	private Method getQueryCacheHitCount;
+	private Method getQueryCacheMissCount;
+	private Method getHitCount;
+	private Method getMissCount;
+	private Method getPutCount;
+	private Method getElementCountInMemory;
+	
+	// Query-String -> Name der NamedQuery, z.B. Artikel.findAnzahlBestellpositionen
+	private Map<String, String> namedQueries;
+	
+	@PostConstruct
+	private void postConstruct() {
+		final EntityManagerFactory emf = em.getEntityManagerFactory();
+		namedQueries = namedQueries(emf);
+		
+		final ClassLoader classLoader = emf.getClass().getClassLoader();
+		try {
+			final Object sessionFactory = emf.unwrap(Class.forName(SESSION_FACTORY, true, classLoader));
+			
+			final Class<?> statisticsClass = Class.forName(STATISTICS, true, classLoader);
+			isStatisticsEnabled = statisticsClass.getMethod("isStatisticsEnabled");
+			getQueries = statisticsClass.getMethod("getQueries");
+			getQueryStatistics = statisticsClass.getMethod("getQueryStatistics", String.class);
+			getRegionNames = statisticsClass.getMethod("getSecondLevelCacheRegionNames");
+			getCacheStatistics = statisticsClass.getMethod("getSecondLevelCacheStatistics", String.class);
+			
+			final Class<?> queryClass = Class.forName(QUERY_STATISTICS, true, classLoader);
+			getExecutionCount = queryClass.getMethod("getExecutionCount");
+			getExecutionAvgTime = queryClass.getMethod("getExecutionAvgTime");
+			getExecutionMaxTime = queryClass.getMethod("getExecutionMaxTime");
+			getExecutionRowCount = queryClass.getMethod("getExecutionRowCount");
+			getQueryCacheHitCount = queryClass.getMethod("getCacheHitCount");
+			getQueryCacheMissCount = queryClass.getMethod("getCacheMissCount");
+			
+			final Class<?> cacheClass = Class.forName(CACHE_STATISTICS, true, classLoader);
+			getHitCount = cacheClass.getMethod("getHitCount");
+			getMissCount = cacheClass.getMethod("getMissCount");
+			getPutCount = cacheClass.getMethod("getPutCount");
+			getElementCountInMemory = cacheClass.getMethod("getElementCountInMemory");
+			
+			statistics = sessionFactory.getClass().getMethod("getStatistics").invoke(sessionFactory);
+		}
+		catch (ReflectiveOperationException | RuntimeException e) {
+			LOGGER.warning("Keine Statistik von Hibernate verfuegbar: " + e);
+			statistics = null;
+		}
+	}
+	
+	private static Map<String, String> namedQueries(EntityManagerFactory emf) {
+		final Map<String, String> result = new HashMap<>();
+		for (ManagedType<?> type : emf.getMetamodel().getManagedTypes()) {
+			final Class<?> javaType = type.getJavaType();
+			final NamedQueries queries = javaType.getAnnotation(NamedQueries.class);
+			if (queries != null) {
+				for (NamedQuery q : queries.value()) {
+					result.put(q.query(), q.name());
+				}
+			}
+			final NamedQuery query = javaType.getAnnotation(NamedQuery.class);
+			if (query != null) {
+				result.put(query.query(), query.name());
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Ist die Statistik von Hibernate verfuegbar und aktiviert?
+	 * @return true, falls die Statistik gelesen werden kann
+	 */
+	public boolean isAktiviert() {
+		return statistics != null && (Boolean) aufrufen(isStatisticsEnabled, statistics);
+	}
+	
+	/**
+	 * Die Statistik aller bisher ausgefuehrten Queries
+	 * @return Je Query ein Eintrag, absteigend sortiert nach der Gesamtdauer; Zeiten in Millisekunden
+	 */
+	public List<Map<String, Object>> getQueries() {
+		if (!isAktiviert()) {
+			return Collections.emptyList();
+		}
+		
+		final String[] queries = (String[]) aufrufen(getQueries, statistics);
+		final List<Map<String, Object>> result = new ArrayList<>(queries.length);
+		for (String query : queries) {
+			final Object s = aufrufen(getQueryStatistics, statistics, query);
+			final long anzahl = (Long) aufrufen(getExecutionCount, s);
+			final long durchschnitt = (Long) aufrufen(getExecutionAvgTime, s);
+			
+			final Map<String, Object> eintrag = new LinkedHashMap<>();
+			eintrag.put("name", namedQueries.get(query));
+			eintrag.put("query", query);
+			eintrag.put("ausfuehrungen", anzahl);
+			eintrag.put("durchschnittMs", durchschnitt);
+			eintrag.put("maximumMs", aufrufen(getExecutionMaxTime, s));
+			eintrag.put("gesamtMs", anzahl * durchschnitt);
+			eintrag.put("datensaetze", aufrufen(getExecutionRowCount, s));
+			eintrag.put("cacheTreffer", aufrufen(getQueryCacheHitCount, s));
+			eintrag.put("cacheFehlschlaege", aufrufen(getQueryCacheMissCount, s));
+			result.add(eintrag);
+		}
+		
+		result.sort(Comparator.comparing((Map<String, Object> e) -> (Long) e.get("gesamtMs")).reversed());
+		return result;
+	}
+	
+	/**
+	 * Die Statistik der Regionen im 2nd-Level-Cache
+	 * @return Je Region ein Eintrag mit Treffern, Fehlschlaegen und der Trefferquote zwischen 0 und 1
+	 */
+	public List<Map<String, Object>> getCacheRegionen() {
+		if (!isAktiviert()) {
+			return Collections.emptyList();
+		}
+		
+		final String[] regionen = (String[]) aufrufen(getRegionNames, statistics);
+		final List<Map<String, Object>> result = new ArrayList<>(regionen.length);
+		for (String region : regionen) {
+			final Object s = aufrufen(getCacheStatistics, statistics, region);
+			if (s == null) {
+				continue;
+			}
+			final long treffer = (Long) aufrufen(getHitCount, s);
+			final long fehlschlaege = (Long) aufrufen(getMissCount, s);
+			final long zugriffe = treffer + fehlschlaege;
+			
+			final Map<String, Object> eintrag = new LinkedHashMap<>();
+			eintrag.put("region", region);
+			eintrag.put("treffer", treffer);
+			eintrag.put("fehlschlaege", fehlschlaege);
+			eintrag.put("trefferquote", zugriffe == 0 ? 0.0 : (double) treffer / zugriffe);
+			eintrag.put("eingefuegt", aufrufen(getPutCount, s));
+			eintrag.put("elemente", aufrufen(getElementCountInMemory, s));
+			result.add(eintrag);
+		}
+		
+		result.sort(Comparator.comparing(e -> (String) e.get("region")));
+		return result;
+	}
+	
+	private static Object aufrufen(Method method, Object obj, Object... args) {
+		try {
+			return method.invoke(obj, args);
+		}
+		catch (IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		}
+		catch (InvocationTargetException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IllegalStateException(cause);
+		}
+	}
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2013 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.util.persistence;
+
+import java.io.Serializable;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+
+/**
+ * Temporaere Datei eines Uploads mit dem SHA-256-Hashwert, der beim Hochladen berechnet wurde
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+public class HochgeladeneDatei implements Serializable {
+	private static final long serialVersionUID = -3120937460398815567L;
+	
+	// Pfad als String, weil Path nicht serialisierbar ist
+	private final String pfad;
+	private final String hash;
+	private final long groesse;
+	
+	public HochgeladeneDatei(Path pfad, String hash, long groesse) {
+		super();
+		this.pfad = pfad.toString();
+		this.hash = hash;
+		this.groesse = groesse;
+	}
+	
+	public Path getPath() {
+		return Paths.get(pfad);
+	}
+	
+	public String getHash() {
+		return hash;
+	}
+	
+	public long getGroesse() {
+		return groesse;
+	}
+	
+	@Override
+	public String toString() {
+		return "HochgeladeneDatei [pfad=" + pfad + ", hash=" + hash + ", groesse=" + groesse + "]";
+	}
+}
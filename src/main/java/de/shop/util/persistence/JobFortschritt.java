@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2013 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.util.persistence;
+
+import javax.enterprise.inject.Vetoed;
+import javax.persistence.Basic;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+
+/**
+ * Fortschritt eines periodischen Jobs, der seine Daten in Chunks mit eigener Transaktion verarbeitet.
+ * Der Fortschritt wird in der Transaktion des jeweiligen Chunks aktualisiert, damit ein abgebrochener
+ * Durchlauf nach der zuletzt verarbeiteten ID fortgesetzt wird. Nach einem vollstaendigen Durchlauf
+ * wird er geloescht.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+@Entity
+@Table(name = "job_fortschritt")
+@Vetoed
+public class JobFortschritt extends AbstractAuditable {
+	private static final long serialVersionUID = 6263714938260114277L;
+	
+	public static final int JOB_LENGTH_MAX = 32;
+	
+	@Id
+	@Column(length = JOB_LENGTH_MAX, nullable = false, updatable = false)
+	private String job;
+	
+	// Groesste ID, die im laufenden Durchlauf schon verarbeitet wurde
+	@Column(name = "letzte_id", nullable = false)
+	private long letzteId;
+	
+	// Anzahl der im laufenden Durchlauf verarbeiteten Datensaetze
+	@Basic(optional = false)
+	private long anzahl;
+	
+	public JobFortschritt() {
+		super();
+	}
+	
+	public JobFortschritt(String job) {
+		super();
+		this.job = job;
+	}
+	
+	public String getJob() {
+		return job;
+	}
+	
+	public long getLetzteId() {
+		return letzteId;
+	}
+	
+	public long getAnzahl() {
+		return anzahl;
+	}
+	
+	/**
+	 * Den Fortschritt nach einem Chunk weiterschalten
+	 * @param id Die groesste ID des Chunks
+	 * @param verarbeitet Anzahl der im Chunk verarbeiteten Datensaetze
+	 */
+	public void weiter(long id, int verarbeitet) {
+		letzteId = id;
+		anzahl += verarbeitet;
+	}
+	
+	@Override
+	public String toString() {
+		return "JobFortschritt [job=" + job + ", letzteId=" + letzteId + ", anzahl=" + anzahl
+		       + ", " + super.toString() + "]";
+	}
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2013 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.util.persistence;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+
+/**
+ * Event fuer einen Batch ausgelieferter Outbox-Eintraege desselben Typs. Die Observer laufen synchron in
+ * der Transaktion des Batches und melden einzelne Eintraege, die sie nicht ausliefern konnten, mit
+ * fehlgeschlagen(); nur diese werden spaeter erneut ausgeliefert. Wirft ein Observer eine Exception, wird der
+ * Batch zurueckgerollt und eintragsweise wiederholt.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+public class OutboxBatch {
+	private final OutboxTyp typ;
+	private final List<Long> referenzIds;
+	private final Set<Long> fehlgeschlagen = new HashSet<>();
+	
+	public OutboxBatch(OutboxTyp typ, List<Long> referenzIds) {
+		super();
+		this.typ = typ;
+		this.referenzIds = Collections.unmodifiableList(referenzIds);
+	}
+	
+	public OutboxTyp getTyp() {
+		return typ;
+	}
+	
+	/**
+	 * IDs der Kunden bzw. Bestellungen in der Reihenfolge, in der sie eingereiht wurden
+	 * @return Nicht-modifizierbare Liste der IDs
+	 */
+	public List<Long> getReferenzIds() {
+		return referenzIds;
+	}
+	
+	/**
+	 * Einen Eintrag als nicht ausgeliefert melden, z.B. weil die Email nicht versendet werden konnte
+	 * @param referenzId ID des Kunden bzw. der Bestellung
+	 */
+	public void fehlgeschlagen(Long referenzId) {
+		fehlgeschlagen.add(referenzId);
+	}
+	
+	public boolean isFehlgeschlagen(Long referenzId) {
+		return fehlgeschlagen.contains(referenzId);
+	}
+	
+	@Override
+	public String toString() {
+		return "OutboxBatch [typ=" + typ + ", referenzIds=" + referenzIds + ", fehlgeschlagen=" + fehlgeschlagen + "]";
+	}
+}
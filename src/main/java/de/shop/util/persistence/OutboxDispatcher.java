@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2013 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.util.persistence;
+
+import java.lang.invoke.MethodHandles;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+import javax.annotation.Resource;
+import javax.ejb.Asynchronous;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.Schedule;
+import javax.ejb.SessionContext;
+import javax.ejb.Singleton;
+import javax.ejb.TransactionAttribute;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+
+import static java.util.logging.Level.FINEST;
+import static java.util.logging.Level.WARNING;
+import static javax.ejb.ConcurrencyManagementType.BEAN;
+import static javax.ejb.TransactionAttributeType.NOT_SUPPORTED;
+import static javax.enterprise.event.TransactionPhase.AFTER_SUCCESS;
+
+
+/**
+ * Leert die Outbox in Batches: nach jedem Commit mit neuen Eintraegen und zusaetzlich periodisch, damit
+ * auch Eintraege nach einem Neustart oder einem Fehlschlag ausgeliefert werden. Es laeuft hoechstens
+ * ein Durchlauf gleichzeitig; viele Commits kurz hintereinander loesen nur einen Durchlauf aus.
+ * Ein Durchlauf versucht jeden Eintrag hoechstens einmal, so dass ein fehlerhafter Eintrag die folgenden
+ * nicht aufhaelt und seine Versuche sich auf mehrere periodische Durchlaeufe verteilen.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+@Singleton
+@ConcurrencyManagement(BEAN)
+@TransactionAttribute(NOT_SUPPORTED)
+public class OutboxDispatcher {
+	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+	
+	private static final int BATCH_GROESSE = 100;
+	
+	@Inject
+	private OutboxService os;
+	
+	@Resource
+	private SessionContext ctx;
+	
+	private final Lock lock = new ReentrantLock();
+	private final AtomicBoolean angestossen = new AtomicBoolean();
+	
+	/**
+	 * Nach dem Commit neuer Eintraege einen Durchlauf anstossen, falls nicht schon einer ansteht
+	 * @param eintrag Der neue Eintrag
+	 */
+	public void onEingereiht(@Observes(during = AFTER_SUCCESS) OutboxEintrag eintrag) {
+		if (angestossen.compareAndSet(false, true)) {
+			ctx.getBusinessObject(OutboxDispatcher.class).leerenAsynchron();
+		}
+	}
+	
+	@Asynchronous
+	public void leerenAsynchron() {
+		leeren();
+	}
+	
+	@Schedule(second = "*/30", minute = "*", hour = "*", persistent = false)
+	public void leerenPeriodisch() {
+		leeren();
+	}
+	
+	private void leeren() {
+		// Eintraege, die waehrend des Durchlaufs committet werden, haben groessere IDs und werden mitgenommen.
+		// Ein Eintrag mit kleinerer ID, der erst spaeter committet wird, folgt beim naechsten Durchlauf.
+		long letzteId = 0;
+		do {
+			if (!lock.tryLock()) {
+				// Der laufende Durchlauf sieht das Flag und macht weiter
+				return;
+			}
+			try {
+				angestossen.set(false);
+				for (Long id = verarbeiten(letzteId); id != null; id = verarbeiten(letzteId)) {
+					letzteId = id;
+				}
+			}
+			finally {
+				lock.unlock();
+			}
+		} while (angestossen.get());
+	}
+	
+	private Long verarbeiten(long nachId) {
+		try {
+			return os.verarbeiten(nachId, BATCH_GROESSE);
+		}
+		catch (RuntimeException e) {
+			// Ein Observer hat eine Exception geworfen und der Batch wurde zurueckgerollt
+			if (LOGGER.isLoggable(FINEST)) {
+				LOGGER.log(FINEST, "Batch fehlgeschlagen, Eintraege werden einzeln ausgeliefert", e);
+			}
+		}
+		
+		// Die Eintraege einzeln ausliefern, damit nur der fehlerhafte einen Fehlversuch zaehlt und die
+		// folgenden trotzdem ausgeliefert werden
+		Long letzteId = null;
+		long vonId = nachId;
+		for (int i = 0; i < BATCH_GROESSE; i++) {
+			Long id;
+			try {
+				id = os.verarbeiten(vonId, 1);
+			}
+			catch (RuntimeException e) {
+				LOGGER.log(WARNING, "Fehler beim Ausliefern eines Outbox-Eintrags", e);
+				id = os.fehlversuchZaehlen(vonId);
+			}
+			if (id == null) {
+				break;
+			}
+			letzteId = id;
+			vonId = id;
+		}
+		return letzteId;
+	}
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2013 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.util.persistence;
+
+import javax.enterprise.inject.Vetoed;
+import javax.persistence.Basic;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
+import javax.persistence.Table;
+
+
+/**
+ * Ein Ereignis, das in derselben Transaktion wie die fachliche Aenderung gespeichert und nach dem Commit
+ * vom OutboxDispatcher ausgeliefert wird. Ausgelieferte Eintraege werden geloescht; das Loeschen in der
+ * Transaktion des Batches ist der Checkpoint. Fehlgeschlagene Eintraege bleiben mit einem weiteren Versuch
+ * stehen, ohne die Auslieferung der folgenden Eintraege aufzuhalten.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+@Entity
+@Table(name = "outbox")
+@NamedQueries({
+	@NamedQuery(name  = OutboxEintrag.FIND_OFFENE,
+	            query = "SELECT   e"
+	                    + " FROM  OutboxEintrag e"
+	                    + " WHERE e.id > :" + OutboxEintrag.PARAM_ID
+	                    + "       AND e.versuche < :" + OutboxEintrag.PARAM_VERSUCHE_MAX
+	                    + " ORDER BY e.id"),
+	@NamedQuery(name  = OutboxEintrag.DELETE_BY_IDS,
+	            query = "DELETE"
+	                    + " FROM  OutboxEintrag e"
+	                    + " WHERE e.id IN :" + OutboxEintrag.PARAM_IDS),
+	@NamedQuery(name  = OutboxEintrag.UPDATE_VERSUCHE_BY_IDS,
+	            query = "UPDATE   OutboxEintrag e"
+	                    + " SET   e.versuche = e.versuche + 1"
+	                    + " WHERE e.id IN :" + OutboxEintrag.PARAM_IDS)
+})
+@Vetoed
+public class OutboxEintrag extends AbstractAuditable {
+	private static final long serialVersionUID = 155858873023379089L;
+	
+	private static final String PREFIX = "OutboxEintrag.";
+	public static final String FIND_OFFENE = PREFIX + "findOffene";
+	public static final String DELETE_BY_IDS = PREFIX + "deleteByIds";
+	public static final String UPDATE_VERSUCHE_BY_IDS = PREFIX + "updateVersucheByIds";
+	
+	public static final String PARAM_ID = "id";
+	public static final String PARAM_VERSUCHE_MAX = "versucheMax";
+	public static final String PARAM_IDS = "ids";
+	
+	// Die Reihenfolge der IDs ist die Reihenfolge der Auslieferung
+	@Id
+	@GeneratedValue
+	@Column(nullable = false, updatable = false)
+	private Long id;
+	
+	@Column(length = 1, nullable = false, updatable = false)
+	private OutboxTyp typ;
+	
+	// ID des Kunden bzw. der Bestellung
+	@Column(name = "referenz_id", nullable = false, updatable = false)
+	private Long referenzId;
+	
+	// Anzahl fehlgeschlagener Auslieferungen
+	@Basic(optional = false)
+	private int versuche;
+	
+	public OutboxEintrag() {
+		super();
+	}
+	
+	public OutboxEintrag(OutboxTyp typ, Long referenzId) {
+		super();
+		this.typ = typ;
+		this.referenzId = referenzId;
+	}
+	
+	public Long getId() {
+		return id;
+	}
+	
+	public OutboxTyp getTyp() {
+		return typ;
+	}
+	
+	public Long getReferenzId() {
+		return referenzId;
+	}
+	
+	public int getVersuche() {
+		return versuche;
+	}
+	
+	@Override
+	public String toString() {
+		return "OutboxEintrag [id=" + id + ", typ=" + typ + ", referenzId=" + referenzId
+		       + ", versuche=" + versuche + ", " + super.toString() + "]";
+	}
+}
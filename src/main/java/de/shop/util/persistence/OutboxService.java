@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2013 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.util.persistence;
+
+import java.io.Serializable;
+import java.lang.invoke.MethodHandles;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import javax.ejb.Stateless;
+import javax.ejb.TransactionAttribute;
+import javax.enterprise.event.Event;
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+
+import static java.util.logging.Level.FINEST;
+import static javax.ejb.TransactionAttributeType.MANDATORY;
+import static javax.ejb.TransactionAttributeType.REQUIRES_NEW;
+
+
+/**
+ * Transaktionale Outbox: Eintraege werden in der Transaktion der fachlichen Aenderung gespeichert und
+ * in eigenen Transaktionen batchweise ausgeliefert (at-least-once).
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+@Stateless
+public class OutboxService implements Serializable {
+	private static final long serialVersionUID = 2880324691802278858L;
+	
+	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+	
+	// Danach wird ein Eintrag nicht mehr ausgeliefert und bleibt zur Analyse in der Tabelle
+	public static final int VERSUCHE_MAX = 10;
+	
+	@Inject
+	private transient EntityManager em;
+	
+	@Inject
+	private transient Event<OutboxEintrag> eventEingereiht;
+	
+	@Inject
+	private transient Event<OutboxBatch> eventBatch;
+	
+	/**
+	 * Einen Eintrag in der laufenden Transaktion speichern
+	 * @param typ Art des Ereignisses
+	 * @param referenzId ID des Kunden bzw. der Bestellung
+	 */
+	@TransactionAttribute(MANDATORY)
+	public void einreihen(OutboxTyp typ, Long referenzId) {
+		final OutboxEintrag eintrag = new OutboxEintrag(typ, referenzId);
+		em.persist(eintrag);
+		
+		// Der OutboxDispatcher wird nach dem Commit angestossen
+		eventEingereiht.fire(eintrag);
+	}
+	
+	/**
+	 * Die aeltesten offenen Eintraege nach einer ID ausliefern, alles in einer eigenen Transaktion.
+	 * Ausgelieferte Eintraege werden geloescht, fuer fehlgeschlagene wird ein Fehlversuch gezaehlt.
+	 * @param nachId Nur Eintraege mit groesserer ID
+	 * @param max Maximale Anzahl der Eintraege
+	 * @return ID des letzten verarbeiteten Eintrags oder null, falls es keinen offenen Eintrag gibt
+	 */
+	@TransactionAttribute(REQUIRES_NEW)
+	public Long verarbeiten(long nachId, int max) {
+		final List<OutboxEintrag> eintraege = findOffene(nachId, max);
+		if (eintraege.isEmpty()) {
+			return null;
+		}
+		
+		// Pro Typ ein Event, jeweils in der Reihenfolge der Eintraege
+		final Map<OutboxTyp, List<Long>> referenzIds =
+			eintraege.stream()
+			         .collect(Collectors.groupingBy(OutboxEintrag::getTyp,
+			                                        LinkedHashMap::new,
+			                                        Collectors.mapping(OutboxEintrag::getReferenzId,
+			                                                           Collectors.toList())));
+		final Map<OutboxTyp, OutboxBatch> batches = new HashMap<>();
+		referenzIds.forEach((typ, ids) -> {
+			final OutboxBatch batch = new OutboxBatch(typ, ids);
+			eventBatch.fire(batch);
+			batches.put(typ, batch);
+		});
+		
+		// Jeder Eintrag wird fuer sich als ausgeliefert oder fehlgeschlagen verbucht
+		final Map<Boolean, List<OutboxEintrag>> fehlgeschlagen =
+			eintraege.stream()
+			         .collect(Collectors.partitioningBy(e -> batches.get(e.getTyp())
+			                                                        .isFehlgeschlagen(e.getReferenzId())));
+		final List<OutboxEintrag> ausgeliefert = fehlgeschlagen.get(Boolean.FALSE);
+		if (!ausgeliefert.isEmpty()) {
+			em.createNamedQuery(OutboxEintrag.DELETE_BY_IDS)
+			  .setParameter(OutboxEintrag.PARAM_IDS, ids(ausgeliefert))
+			  .executeUpdate();
+		}
+		fehlversuche(fehlgeschlagen.get(Boolean.TRUE));
+		
+		if (LOGGER.isLoggable(FINEST)) {
+			LOGGER.finest(ausgeliefert.size() + " von " + eintraege.size() + " Outbox-Eintraegen ausgeliefert: "
+			              + batches.values());
+		}
+		return eintraege.get(eintraege.size() - 1).getId();
+	}
+	
+	/**
+	 * Einen Fehlversuch fuer den aeltesten offenen Eintrag nach einer ID zaehlen
+	 * @param nachId Nur Eintraege mit groesserer ID
+	 * @return ID des Eintrags oder null, falls es keinen offenen Eintrag gibt
+	 */
+	@TransactionAttribute(REQUIRES_NEW)
+	public Long fehlversuchZaehlen(long nachId) {
+		final List<OutboxEintrag> eintraege = findOffene(nachId, 1);
+		if (eintraege.isEmpty()) {
+			return null;
+		}
+		fehlversuche(eintraege);
+		return eintraege.get(0).getId();
+	}
+	
+	private void fehlversuche(List<OutboxEintrag> eintraege) {
+		if (eintraege.isEmpty()) {
+			return;
+		}
+		
+		em.createNamedQuery(OutboxEintrag.UPDATE_VERSUCHE_BY_IDS)
+		  .setParameter(OutboxEintrag.PARAM_IDS, ids(eintraege))
+		  .executeUpdate();
+		eintraege.stream()
+		         .filter(e -> e.getVersuche() + 1 >= VERSUCHE_MAX)
+		         .forEach(e -> LOGGER.warning("Outbox-Eintrag wird nicht mehr ausgeliefert: " + e));
+	}
+	
+	private List<OutboxEintrag> findOffene(long nachId, int max) {
+		return em.createNamedQuery(OutboxEintrag.FIND_OFFENE, OutboxEintrag.class)
+		         .setParameter(OutboxEintrag.PARAM_ID, nachId)
+		         .setParameter(OutboxEintrag.PARAM_VERSUCHE_MAX, VERSUCHE_MAX)
+		         .setMaxResults(max)
+		         .getResultList();
+	}
+	
+	private static List<Long> ids(List<OutboxEintrag> eintraege) {
+		return eintraege.stream()
+		                .map(OutboxEintrag::getId)
+		                .collect(Collectors.toList());
+	}
+}
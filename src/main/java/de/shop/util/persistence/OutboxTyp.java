@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2013 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.util.persistence;
+
+/**
+ * Art eines Eintrags in der Outbox
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+public enum OutboxTyp {
+	NEUER_KUNDE("K"),
+	NEUE_BESTELLUNG("B");
+
+	private final String value;
+	
+	private OutboxTyp(String value) {
+		this.value = value;
+	}
+	
+	public String getValue() {
+		return value;
+	}
+	
+	public static OutboxTyp build(String value) {
+		switch (value) {
+			case "K":
+			case "NEUER_KUNDE":
+				return NEUER_KUNDE;
+			case "B":
+			case "NEUE_BESTELLUNG":
+				return NEUE_BESTELLUNG;
+			default:
+				throw new RuntimeException(value + " ist kein gueltiger Wert fuer OutboxTyp");
+		}
+	}
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2013 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.util.persistence;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.util.logging.Logger;
+import javax.persistence.PersistenceException;
+import javax.persistence.Query;
+
+
+/**
+ * Native DML-Anweisungen mit den betroffenen Tabellen (Query Spaces) ausfuehren. Ohne Query Spaces weiss
+ * Hibernate nicht, welche Tabellen eine native Anweisung aendert, und invalidiert deshalb jede Region des
+ * 2nd-Level-Cache. Mit Query Spaces werden nur die Regionen der Entities und Collections zu diesen Tabellen
+ * invalidiert. Die API von Hibernate ist nicht im Compile-Classpath, deshalb wird org.hibernate.SQLQuery
+ * wie in HibernateStatistik per Reflection angesprochen. Bei einem anderen Persistence Provider wird die
+ * Anweisung ohne Query Spaces ausgefuehrt.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+public final class QuerySpaces {
+	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+	
+	private static final String SQL_QUERY = "org.hibernate.SQLQuery";
+	
+	private QuerySpaces() {
+	}
+	
+	/**
+	 * Eine native DML-Anweisung ausfuehren
+	 * @param query Die native Query mit gesetzten Parametern, z.B. aus einer NamedNativeQuery
+	 * @param tabellen Die Tabellen, die durch die Anweisung geaendert werden
+	 * @return Die Anzahl der geaenderten Datensaetze
+	 */
+	public static int executeUpdate(Query query, String... tabellen) {
+		try {
+			final Class<?> sqlQueryClass = Class.forName(SQL_QUERY, true, query.getClass().getClassLoader());
+			final Object sqlQuery = query.unwrap(sqlQueryClass);
+			final Method addSynchronizedQuerySpace = sqlQueryClass.getMethod("addSynchronizedQuerySpace",
+			                                                                 String.class);
+			for (String tabelle : tabellen) {
+				addSynchronizedQuerySpace.invoke(sqlQuery, tabelle);
+			}
+		}
+		catch (ReflectiveOperationException | PersistenceException e) {
+			LOGGER.warning("Keine Query Spaces fuer " + query + ": " + e);
+		}
+		return query.executeUpdate();
+	}
+}
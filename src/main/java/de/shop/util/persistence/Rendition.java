@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2013 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.util.persistence;
+
+import java.nio.file.Path;
+
+/**
+ * Verkleinerte Varianten eines hochgeladenen Bildes, die neben dem Original abgelegt werden.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+public enum Rendition {
+	THUMBNAIL("thumbnail", 128),
+	MEDIUM("medium", 640),
+	ORIGINAL("original", 0);
+	
+	// Standard fuer Smartphones und Tablets: fuellt den Bildschirm, ist aber nur ein Bruchteil des Originals
+	public static final Rendition MOBIL = MEDIUM;
+	
+	private final String value;
+	private final int kantenlaenge;
+
+	private Rendition(String value, int kantenlaenge) {
+		this.value = value;
+		this.kantenlaenge = kantenlaenge;
+	}
+	
+	public static Rendition build(String value) {
+		if (value == null) {
+			return null;
+		}
+		
+		switch (value.toLowerCase()) {
+			case "thumbnail":	return THUMBNAIL;
+			case "medium":		return MEDIUM;
+			case "original":	return ORIGINAL;
+			
+			default:			return null;
+		}
+	}
+	
+	/**
+	 * Maximale Laenge der laengeren Bildkante in Pixel
+	 * @return Die maximale Kantenlaenge bzw. 0 beim Original
+	 */
+	public int getKantenlaenge() {
+		return kantenlaenge;
+	}
+	
+	/**
+	 * Pfad der Variante neben dem Original, z.B. "abc.jpeg" -> "abc-thumbnail.jpeg"
+	 * @param original Pfad des Originals
+	 * @return Pfad der Variante bzw. beim Original unveraendert
+	 */
+	public Path getPath(Path original) {
+		if (this == ORIGINAL) {
+			return original;
+		}
+		
+		final String name = original.getFileName().toString();
+		final int punkt = name.lastIndexOf('.');
+		return original.resolveSibling(punkt < 0
+		                               ? name + "-" + value
+		                               : name.substring(0, punkt) + "-" + value + name.substring(punkt));
+	}
+	
+	@Override
+	public String toString() {
+		return value;
+	}
+}
@@ -0,0 +1,350 @@
+/*
+ * Copyright (C) 2013 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.util.persistence;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.concurrent.ManagedThreadFactory;
+import javax.enterprise.context.ApplicationScoped;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import javax.inject.Inject;
+
+import static de.shop.util.persistence.MimeType.PNG;
+import static de.shop.util.persistence.MultimediaType.IMAGE;
+import static java.awt.RenderingHints.KEY_INTERPOLATION;
+import static java.awt.RenderingHints.VALUE_INTERPOLATION_BILINEAR;
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.awt.image.BufferedImage.TYPE_INT_RGB;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.logging.Level.FINEST;
+import static java.util.logging.Level.WARNING;
+
+
+/**
+ * Erzeugt im Hintergrund zu einem hochgeladenen Bild die verkleinerten und neu komprimierten Varianten
+ * (siehe Rendition) und legt sie neben dem Original ab. Die Anzahl der Worker und die Queue sind begrenzt:
+ * ist die Queue voll, wird der Auftrag verworfen und beim naechsten Download der Variante erneut angestossen.
+ * Bis dahin wird das Original ausgeliefert.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+@ApplicationScoped
+public class RenditionErzeuger {
+	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+	
+	private static final int ANZAHL_THREADS = 2;
+	private static final int QUEUE_KAPAZITAET = 64;
+	private static final float JPEG_QUALITAET = 0.8f;
+	// Wartezeit beim Undeployment fuer Varianten, die gerade erzeugt werden
+	private static final long AUSLAUF_MILLIS = 5_000;
+	
+	// Von der groessten zur kleinsten Variante, damit jede aus der vorherigen berechnet werden kann
+	private static final Rendition[] VARIANTEN = { Rendition.MEDIUM, Rendition.THUMBNAIL };
+	
+	@Inject
+	private ManagedThreadFactory managedThreadFactory;
+	
+	@Inject
+	private FileSchreiber fileSchreiber;
+	
+	private ThreadPoolExecutor executor;
+	
+	// Originale, zu denen gerade Varianten erzeugt werden: parallele Downloads stossen nicht mehrfach an
+	private final Set<Path> inArbeit = ConcurrentHashMap.newKeySet();
+	
+	private final AtomicLong anzahlErzeugt = new AtomicLong();
+	private final AtomicLong anzahlVerworfen = new AtomicLong();
+	
+	@PostConstruct
+	private void postConstruct() {
+		executor = new ThreadPoolExecutor(ANZAHL_THREADS, ANZAHL_THREADS, 0L, MILLISECONDS,
+		                                  new ArrayBlockingQueue<>(QUEUE_KAPAZITAET), managedThreadFactory);
+		LOGGER.info("RenditionErzeuger gestartet mit " + ANZAHL_THREADS + " Threads");
+	}
+	
+	@PreDestroy
+	private void preDestroy() {
+		// Keine neuen Auftraege annehmen; wartende Auftraege werden beim naechsten Download erneut angestossen
+		executor.shutdown();
+		executor.getQueue().clear();
+		try {
+			if (!executor.awaitTermination(AUSLAUF_MILLIS, MILLISECONDS)) {
+				LOGGER.warning("RenditionErzeuger: Worker nach " + AUSLAUF_MILLIS + " ms noch aktiv");
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		finally {
+			executor.shutdownNow();
+			inArbeit.clear();
+		}
+	}
+	
+	/**
+	 * Die Varianten zu einem Bild im Hintergrund erzeugen, falls sie nicht schon in Arbeit sind
+	 * @param original Pfad des Originals
+	 * @param mimeType MIME-Type des Originals
+	 */
+	public void anstossen(Path original, MimeType mimeType) {
+		if (mimeType == null || mimeType.getMultimediaType() != IMAGE || !inArbeit.add(original)) {
+			return;
+		}
+		
+		try {
+			executor.execute(() -> erzeugen(original, mimeType));
+		}
+		catch (RejectedExecutionException e) {
+			inArbeit.remove(original);
+			anzahlVerworfen.incrementAndGet();
+			if (LOGGER.isLoggable(FINEST)) {
+				LOGGER.finest("Queue fuer Varianten ist voll, verworfen: " + original);
+			}
+		}
+	}
+	
+	public int getQueueLaenge() {
+		return executor.getQueue().size();
+	}
+	
+	public long getAnzahlErzeugt() {
+		return anzahlErzeugt.get();
+	}
+	
+	public long getAnzahlVerworfen() {
+		return anzahlVerworfen.get();
+	}
+	
+	private void erzeugen(Path original, MimeType mimeType) {
+		try {
+			// Direkt nach dem Upload wartet das Original evtl. noch beim FileSchreiber
+			fileSchreiber.vorziehen(original);
+			if (!Files.exists(original)) {
+				if (LOGGER.isLoggable(FINEST)) {
+					LOGGER.finest("Original nicht vorhanden: " + original);
+				}
+				return;
+			}
+			
+			final BufferedImage eingelesen = lesen(original, VARIANTEN[0].getKantenlaenge());
+			if (eingelesen == null) {
+				LOGGER.warning("Kein ImageReader fuer " + original);
+				return;
+			}
+			
+			BufferedImage bild = eingelesen;
+			for (Rendition rendition : VARIANTEN) {
+				final Path ziel = rendition.getPath(original);
+				bild = verkleinern(bild, rendition.getKantenlaenge(), mimeType);
+				if (Files.exists(ziel)) {
+					continue;
+				}
+				
+				// Kodieren ausserhalb der Sperre; ist das Original bereits klein genug, wird es verlinkt
+				Path tmp = null;
+				if (bild != eingelesen) {
+					tmp = schreiben(bild, mimeType, ziel);
+					if (tmp == null) {
+						LOGGER.warning("Kein ImageWriter fuer " + mimeType.getExtension()
+						               + ", Original wird verwendet: " + ziel);
+					}
+				}
+				try {
+					if (!ablegen(original, tmp, ziel)) {
+						if (LOGGER.isLoggable(FINEST)) {
+							LOGGER.finest("Original inzwischen geloescht: " + original);
+						}
+						return;
+					}
+				}
+				finally {
+					if (tmp != null) {
+						Files.deleteIfExists(tmp);
+					}
+				}
+				anzahlErzeugt.incrementAndGet();
+				if (LOGGER.isLoggable(FINEST)) {
+					LOGGER.finest("Variante erzeugt: " + ziel);
+				}
+			}
+		}
+		catch (IOException | RuntimeException e) {
+			LOGGER.log(WARNING, "Fehler beim Erzeugen der Varianten zu " + original, e);
+		}
+		finally {
+			inArbeit.remove(original);
+		}
+	}
+	
+	private static BufferedImage lesen(Path original, int kantenlaenge) throws IOException {
+		try (final ImageInputStream eingabe = ImageIO.createImageInputStream(original.toFile())) {
+			final Iterator<ImageReader> readers = ImageIO.getImageReaders(eingabe);
+			if (!readers.hasNext()) {
+				return null;
+			}
+			
+			final ImageReader reader = readers.next();
+			try {
+				reader.setInput(eingabe, true, true);
+				
+				// Grosse Bilder schon beim Dekodieren unterabtasten, aber mit mind. doppelter Zielgroesse,
+				// damit das anschliessende Verkleinern noch glaetten kann
+				final int laengereKante = Math.max(reader.getWidth(0), reader.getHeight(0));
+				final int faktor = Math.max(1, laengereKante / (2 * kantenlaenge));
+				final ImageReadParam param = reader.getDefaultReadParam();
+				param.setSourceSubsampling(faktor, faktor, 0, 0);
+				return reader.read(0, param);
+			}
+			finally {
+				reader.dispose();
+			}
+		}
+	}
+	
+	private static BufferedImage verkleinern(BufferedImage bild, int kantenlaenge, MimeType mimeType) {
+		final int laengereKante = Math.max(bild.getWidth(), bild.getHeight());
+		if (laengereKante <= kantenlaenge) {
+			return bild;
+		}
+		
+		final double faktor = (double) kantenlaenge / laengereKante;
+		final int zielBreite = Math.max(1, (int) Math.round(bild.getWidth() * faktor));
+		final int zielHoehe = Math.max(1, (int) Math.round(bild.getHeight() * faktor));
+		
+		// JPEG hat keinen Alphakanal
+		final int typ = mimeType == PNG ? TYPE_INT_ARGB : TYPE_INT_RGB;
+		
+		// Schrittweise halbieren: bilinear in einem einzigen Schritt ergibt bei starker Verkleinerung Treppeneffekte
+		BufferedImage ergebnis = bild;
+		int breite = bild.getWidth();
+		int hoehe = bild.getHeight();
+		do {
+			breite = Math.max(zielBreite, breite / 2);
+			hoehe = Math.max(zielHoehe, hoehe / 2);
+			final BufferedImage schritt = new BufferedImage(breite, hoehe, typ);
+			final Graphics2D g = schritt.createGraphics();
+			try {
+				g.setRenderingHint(KEY_INTERPOLATION, VALUE_INTERPOLATION_BILINEAR);
+				g.drawImage(ergebnis, 0, 0, breite, hoehe, null);
+			}
+			finally {
+				g.dispose();
+			}
+			ergebnis = schritt;
+		} while (breite != zielBreite || hoehe != zielHoehe);
+		
+		return ergebnis;
+	}
+	
+	/**
+	 * Eine Variante unter der Sperre des Originals im FileSchreiber ablegen. Sonst koennte ein gleichzeitiges
+	 * Loeschen des Blobs (siehe FileHelper.onBlobFreigabe()) die Varianten vor dem Ablegen loeschen und die
+	 * Variante danach ohne Original verwaisen.
+	 * @param tmp Die geschriebene Variante oder null, falls das Original verlinkt wird
+	 * @return false, falls das Original nicht mehr existiert
+	 */
+	private boolean ablegen(Path original, Path tmp, Path ziel) {
+		final AtomicBoolean vorhanden = new AtomicBoolean();
+		fileSchreiber.gesperrt(original, () -> {
+			if (!Files.exists(original)) {
+				return;
+			}
+			vorhanden.set(true);
+			if (Files.exists(ziel)) {
+				return;
+			}
+			
+			try {
+				if (tmp == null) {
+					verlinken(original, ziel);
+				}
+				else {
+					Files.move(tmp, ziel, ATOMIC_MOVE);
+				}
+			}
+			catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+		return vorhanden.get();
+	}
+	
+	/**
+	 * Eine Variante im Format des Originals in eine temporaere Datei schreiben, damit ein Download nie eine
+	 * halb geschriebene Variante liest
+	 * @return Die temporaere Datei oder null, falls es fuer das Format keinen ImageWriter gibt
+	 */
+	private static Path schreiben(BufferedImage bild, MimeType mimeType, Path ziel) throws IOException {
+		final Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(mimeType.getExtension());
+		if (!writers.hasNext()) {
+			return null;
+		}
+		final ImageWriter writer = writers.next();
+		
+		final Path tmp = Files.createTempFile(ziel.getParent(), ziel.getFileName().toString(), ".tmp");
+		try (final ImageOutputStream ausgabe = ImageIO.createImageOutputStream(tmp.toFile())) {
+			writer.setOutput(ausgabe);
+			final ImageWriteParam param = writer.getDefaultWriteParam();
+			if (mimeType != PNG) {
+				param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+				param.setCompressionQuality(JPEG_QUALITAET);
+			}
+			writer.write(null, new IIOImage(bild, null, null), param);
+		}
+		catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(tmp);
+			throw e;
+		}
+		finally {
+			writer.dispose();
+		}
+		return tmp;
+	}
+	
+	private static void verlinken(Path original, Path ziel) throws IOException {
+		try {
+			Files.createLink(ziel, original);
+		}
+		catch (UnsupportedOperationException e) {
+			Files.copy(original, ziel);
+		}
+	}
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright (C) 2013 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.util.rest;
+
+import de.shop.util.mail.MailVersand;
+import de.shop.util.persistence.FileSchreiber;
+import de.shop.util.persistence.HibernateStatistik;
+import java.lang.Thread.State;
+import java.lang.invoke.MethodHandles;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import javax.ejb.Stateless;
+import javax.ejb.TransactionAttribute;
+import javax.inject.Inject;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+
+import static javax.ejb.TransactionAttributeType.NOT_SUPPORTED;
+import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
+
+
+/**
+ * Diagnosedaten als JSON fuer Werkzeuge statt fuer eine JSF-Seite wie bei Snoop: Garbage Collection,
+ * Threads, Heap, der Connection-Pool von shopDS sowie die Statistik von Hibernate je Query und je Region
+ * des 2nd-Level-Cache, die Schreibauftraege fuer Dateien sowie der Email-Versand. Damit lassen sich langsame
+ * Queries und "kalte" Cache-Regionen ohne Profiler erkennen.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+@Path("/diagnose")
+@Produces(APPLICATION_JSON)
+@Stateless
+@TransactionAttribute(NOT_SUPPORTED)
+public class DiagnoseResource {
+	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+	
+	// Statistik der Datasources von WildFly; bei Deployment einer *-ds.xml ist deployment=... ein weiterer Key
+	private static final String DATASOURCE_POOL = "jboss.as:subsystem=datasources,statistics=pool,*";
+	private static final String DATASOURCE_KEY = "data-source";
+	private static final String DATASOURCE = "shopDS";
+	
+	@Inject
+	private HibernateStatistik hibernateStatistik;
+	
+	@Inject
+	private FileSchreiber fileSchreiber;
+	
+	@Inject
+	private MailVersand mailVersand;
+	
+	/**
+	 * Alle Diagnosedaten
+	 * @return Die Bereiche gc, threads, speicher, datasource, dateien und mail sowie queries und cache, falls die
+	 *         Statistik von Hibernate aktiviert ist
+	 */
+	@GET
+	public Map<String, Object> getDiagnose() {
+		final Map<String, Object> diagnose = new LinkedHashMap<>();
+		diagnose.put("gc", getGc());
+		diagnose.put("threads", getThreads());
+		diagnose.put("speicher", getSpeicher());
+		diagnose.put("datasource", getDatasource());
+		diagnose.put("hibernateStatistik", hibernateStatistik.isAktiviert());
+		if (hibernateStatistik.isAktiviert()) {
+			diagnose.put("queries", getQueries());
+			diagnose.put("cache", getCache());
+		}
+		diagnose.put("dateien", getDateien());
+		diagnose.put("mail", getMail());
+		return diagnose;
+	}
+	
+	/**
+	 * Anzahl und Dauer der Garbage Collections seit dem Start der JVM
+	 * @return Je Garbage Collector Anzahl, Gesamt- und Durchschnittsdauer in Millisekunden
+	 */
+	@GET
+	@Path("/gc")
+	public Map<String, Object> getGc() {
+		final long uptime = ManagementFactory.getRuntimeMXBean().getUptime();
+		final Map<String, Object> result = new LinkedHashMap<>();
+		result.put("uptimeMs", uptime);
+		
+		long dauerGesamt = 0;
+		final List<Map<String, Object>> collectors = new ArrayList<>();
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			// -1, falls die JVM den Wert nicht liefert
+			final long anzahl = Math.max(gc.getCollectionCount(), 0);
+			final long dauer = Math.max(gc.getCollectionTime(), 0);
+			dauerGesamt += dauer;
+			
+			final Map<String, Object> collector = new LinkedHashMap<>();
+			collector.put("name", gc.getName());
+			collector.put("anzahl", anzahl);
+			collector.put("dauerMs", dauer);
+			collector.put("durchschnittMs", anzahl == 0 ? 0.0 : (double) dauer / anzahl);
+			collector.put("speicherbereiche", gc.getMemoryPoolNames());
+			collectors.add(collector);
+		}
+		
+		result.put("collectors", collectors);
+		result.put("dauerMs", dauerGesamt);
+		// Anteil der Laufzeit, die fuer Garbage Collection verwendet wurde
+		result.put("anteil", uptime == 0 ? 0.0 : (double) dauerGesamt / uptime);
+		return result;
+	}
+	
+	/**
+	 * Anzahl der Threads je Zustand
+	 * @return Anzahl der Threads insgesamt, je Zustand und die IDs verklemmter Threads
+	 */
+	@GET
+	@Path("/threads")
+	public Map<String, Object> getThreads() {
+		final ThreadMXBean threadMxBean = ManagementFactory.getThreadMXBean();
+		
+		final Map<State, Integer> zustaende = new EnumMap<>(State.class);
+		for (State state : State.values()) {
+			zustaende.put(state, 0);
+		}
+		// Ohne Stacktrace und ohne Locks, damit der Aufruf billig bleibt
+		for (ThreadInfo info : threadMxBean.getThreadInfo(threadMxBean.getAllThreadIds(), 0)) {
+			// null, falls der Thread inzwischen beendet ist
+			if (info != null) {
+				zustaende.merge(info.getThreadState(), 1, Integer::sum);
+			}
+		}
+		
+		final long[] verklemmt = threadMxBean.findDeadlockedThreads();
+		
+		final Map<String, Object> result = new LinkedHashMap<>();
+		result.put("anzahl", threadMxBean.getThreadCount());
+		result.put("daemon", threadMxBean.getDaemonThreadCount());
+		result.put("maximum", threadMxBean.getPeakThreadCount());
+		result.put("gestartet", threadMxBean.getTotalStartedThreadCount());
+		result.put("zustaende", zustaende);
+		result.put("verklemmt", verklemmt == null ? new long[0] : verklemmt);
+		return result;
+	}
+	
+	/**
+	 * Belegung von Heap und Non-Heap wie bei Snoop
+	 * @return Belegter, zugesicherter und maximaler Speicher in Bytes
+	 */
+	@GET
+	@Path("/speicher")
+	public Map<String, Object> getSpeicher() {
+		final MemoryMXBean memoryMxBean = ManagementFactory.getMemoryMXBean();
+		final Map<String, Object> result = new LinkedHashMap<>();
+		result.put("heap", speicher(memoryMxBean.getHeapMemoryUsage()));
+		result.put("nonHeap", speicher(memoryMxBean.getNonHeapMemoryUsage()));
+		return result;
+	}
+	
+	private static Map<String, Object> speicher(MemoryUsage usage) {
+		final Map<String, Object> result = new LinkedHashMap<>();
+		result.put("belegt", usage.getUsed());
+		result.put("zugesichert", usage.getCommitted());
+		result.put("maximum", usage.getMax());
+		return result;
+	}
+	
+	/**
+	 * Statistik des Connection-Pools von shopDS, d.h. alle Attribute der MBean von WildFly wie z.B.
+	 * activeCount, inUseCount, maxUsedCount, averageBlockingTime oder timedOut
+	 * @return Die Attribute des Pools oder eine leere Map, falls es die MBean nicht gibt
+	 */
+	@GET
+	@Path("/datasource")
+	public Map<String, Object> getDatasource() {
+		final Map<String, Object> result = new LinkedHashMap<>();
+		final MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+		try {
+			for (ObjectName name : mbeanServer.queryNames(new ObjectName(DATASOURCE_POOL), null)) {
+				final String datasource = name.getKeyProperty(DATASOURCE_KEY);
+				if (datasource == null || !datasource.contains(DATASOURCE)) {
+					continue;
+				}
+				
+				final MBeanAttributeInfo[] infos = mbeanServer.getMBeanInfo(name).getAttributes();
+				final String[] attributeNames = new String[infos.length];
+				for (int i = 0; i < infos.length; i++) {
+					attributeNames[i] = infos[i].getName();
+				}
+				// Nicht lesbare Attribute fehlen in der Liste, statt eine Exception auszuloesen
+				mbeanServer.getAttributes(name, attributeNames)
+				           .asList()
+				           .forEach(a -> result.put(a.getName(), a.getValue()));
+			}
+		}
+		catch (JMException e) {
+			LOGGER.warning("Statistik von " + DATASOURCE + " nicht lesbar: " + e);
+		}
+		return result;
+	}
+	
+	/**
+	 * Statistik von Hibernate je Query, z.B. um langsame Queries zu finden
+	 * @return Je Query Name, Anzahl der Ausfuehrungen, Durchschnitts- und Maximaldauer sowie Datensaetze;
+	 *         leer, falls die Statistik von Hibernate nicht aktiviert ist
+	 */
+	@GET
+	@Path("/queries")
+	public List<Map<String, Object>> getQueries() {
+		return hibernateStatistik.getQueries();
+	}
+	
+	/**
+	 * Statistik von Hibernate je Region des 2nd-Level-Cache, z.B. um kalte Regionen zu finden
+	 * @return Je Region Treffer, Fehlschlaege und die Trefferquote; leer, falls die Statistik von Hibernate
+	 *         nicht aktiviert ist
+	 */
+	@GET
+	@Path("/cache")
+	public List<Map<String, Object>> getCache() {
+		return hibernateStatistik.getCacheRegionen();
+	}
+	
+	/**
+	 * Statistik der Schreibauftraege fuer hochgeladene Dateien, die nach dem Commit im Hintergrund geschrieben
+	 * werden
+	 * @return Laenge der Queue, geschriebene und zusammengefasste Auftraege sowie die Latenz in Millisekunden
+	 */
+	@GET
+	@Path("/dateien")
+	public Map<String, Object> getDateien() {
+		final Map<String, Object> result = new LinkedHashMap<>();
+		result.put("queueLaenge", fileSchreiber.getQueueLaenge());
+		result.put("geschrieben", fileSchreiber.getAnzahlGeschrieben());
+		result.put("zusammengefasst", fileSchreiber.getAnzahlZusammengefasst());
+		result.put("latenzMittelwertMs", fileSchreiber.getLatenzMittelwertMillis());
+		result.put("latenzMaxMs", fileSchreiber.getLatenzMaxMillis());
+		return result;
+	}
+	
+	/**
+	 * Statistik des Email-Versands ueber den Pool von Verbindungen zum Mailserver
+	 * @return Gesendete, verworfene, zurueckgestellte und wiederholte Emails, Verbindungsaufbauten,
+	 *         wartende Batches und der Durchsatz
+	 */
+	@GET
+	@Path("/mail")
+	public Map<String, Object> getMail() {
+		final Map<String, Object> result = new LinkedHashMap<>();
+		result.put("gesendet", mailVersand.getAnzahlGesendet());
+		result.put("fehlgeschlagen", mailVersand.getAnzahlFehlgeschlagen());
+		result.put("zurueckgestellt", mailVersand.getAnzahlZurueckgestellt());
+		result.put("wiederholt", mailVersand.getAnzahlWiederholt());
+		result.put("verbindungen", mailVersand.getAnzahlVerbindungen());
+		result.put("wartend", mailVersand.getAnzahlWartend());
+		result.put("proMinute", mailVersand.getDurchsatzProMinute());
+		return result;
+	}
+}
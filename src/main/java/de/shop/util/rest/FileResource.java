@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2013 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.util.rest;
+
+import de.shop.util.persistence.File;
+import de.shop.util.persistence.FileCache;
+import de.shop.util.persistence.FileHelper;
+import de.shop.util.persistence.FileService;
+import de.shop.util.persistence.Rendition;
+import de.shop.util.web.GeraeteKlassifizierer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.ejb.Stateless;
+import javax.inject.Inject;
+import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
+import javax.ws.rs.core.StreamingOutput;
+
+import static de.shop.util.persistence.MultimediaType.IMAGE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.util.logging.Level.FINEST;
+import static java.util.logging.Level.WARNING;
+import static javax.ws.rs.core.HttpHeaders.ACCEPT;
+import static javax.ws.rs.core.HttpHeaders.CONTENT_LENGTH;
+import static javax.ws.rs.core.HttpHeaders.USER_AGENT;
+import static javax.ws.rs.core.Response.Status.OK;
+import static javax.ws.rs.core.Response.Status.PARTIAL_CONTENT;
+import static javax.ws.rs.core.Response.Status.REQUESTED_RANGE_NOT_SATISFIABLE;
+
+
+/**
+ * Download hochgeladener Dateien mit Range-Requests (z.B. Spulen in Videos), ETag und Cache-Control.
+ * Die Bytes werden mit FileChannel.transferTo() bzw. aus dem FileCache geschrieben, d.h. ohne byte[]
+ * in Groesse der Datei. Von Bildern kann mit "groesse" eine verkleinerte Variante angefordert werden;
+ * ohne Angabe erhalten Smartphones und Tablets automatisch Rendition.MOBIL.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+@Path("/files")
+@Stateless
+public class FileResource {
+	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+	
+	public static final String FILES_ID_PATH_PARAM = "id";
+	public static final String FILES_VERSION_QUERY_PARAM = "v";
+	public static final String FILES_GROESSE_QUERY_PARAM = "groesse";
+	
+	private static final String ACCEPT_RANGES = "Accept-Ranges";
+	private static final String CONTENT_RANGE = "Content-Range";
+	private static final String BYTES = "bytes";
+	private static final String VARY = "Vary";
+	
+	// Genau ein Bereich, z.B. "bytes=0-499", "bytes=500-" oder "bytes=-500" fuer die letzten 500 Bytes.
+	// Mehrere Bereiche werden ignoriert und die ganze Datei gesendet, was nach RFC 7233 zulaessig ist.
+	private static final Pattern RANGE_PATTERN = Pattern.compile(BYTES + "=(\\d{0,18})-(\\d{0,18})");
+	
+	// Eine URI mit der aktuellen Version aendert ihren Inhalt nie: 1 Jahr in Sekunden
+	private static final int MAX_AGE_UNVERAENDERLICH = 365 * 24 * 60 * 60;
+	
+	@Inject
+	private FileService fs;
+	
+	@Inject
+	private FileHelper fileHelper;
+	
+	@Inject
+	private FileCache fileCache;
+	
+	@Inject
+	private GeraeteKlassifizierer geraeteKlassifizierer;
+	
+	/**
+	 * Eine Datei ganz oder teilweise herunterladen
+	 * @param id ID der Datei
+	 * @param version Version der Datei, damit die Response dauerhaft gecacht werden kann
+	 * @param groesse Optionale Variante bei Bildern, z.B. "thumbnail"
+	 * @param range Optionaler Header "Range"
+	 * @param ifRange Optionaler Header "If-Range"
+	 * @param userAgent Header "User-Agent" fuer die Standard-Variante bei mobilen Clients
+	 * @param accept Header "Accept" fuer die Erkennung mobiler Clients
+	 * @param request Der Request fuer die Auswertung von "If-None-Match"
+	 * @return Response mit der Datei bzw. einem Teil der Datei
+	 */
+	@Path("{" + FILES_ID_PATH_PARAM + ":[1-9][0-9]*}")
+	@GET
+	public Response download(@PathParam(FILES_ID_PATH_PARAM) Long id,
+	                         @QueryParam(FILES_VERSION_QUERY_PARAM) Integer version,
+	                         @QueryParam(FILES_GROESSE_QUERY_PARAM) String groesse,
+	                         @HeaderParam("Range") String range,
+	                         @HeaderParam("If-Range") String ifRange,
+	                         @HeaderParam(USER_AGENT) String userAgent,
+	                         @HeaderParam(ACCEPT) String accept,
+	                         @Context Request request) {
+		final File file = fs.findFileById(id);
+		if (LOGGER.isLoggable(FINEST)) {
+			LOGGER.finest(file.toString());
+		}
+		
+		// Variante explizit per Query-Parameter oder abhaengig vom Endgeraet
+		final boolean nachUserAgent = groesse == null && file.getMultimediaType() == IMAGE;
+		Rendition rendition = Rendition.build(groesse);
+		if (rendition == null) {
+			rendition = nachUserAgent && geraeteKlassifizierer.klassifizieren(userAgent, accept).isMobil()
+			            ? Rendition.MOBIL
+			            : Rendition.ORIGINAL;
+		}
+		
+		// Fehlt die Variante noch, wird sie im Hintergrund erzeugt und solange das Original gesendet
+		java.nio.file.Path path = null;
+		long laenge = 0;
+		String schluessel = null;
+		final java.nio.file.Path variante = fileHelper.getRenditionPath(file, rendition);
+		if (variante != null) {
+			try {
+				laenge = Files.size(variante);
+				path = variante;
+				schluessel = file.getHash() + "-" + rendition;
+			}
+			catch (IOException e) {
+				LOGGER.log(WARNING, "Fehler beim Lesen der Groesse von " + variante, e);
+			}
+		}
+		if (path == null) {
+			path = fileHelper.bereitstellen(file);
+			laenge = file.getGroesse();
+		}
+		
+		// Starkes ETag aus dem Hashwert des Inhalts (ggf. mit Variante) bzw. bei Altbestand aus ID und Version
+		if (schluessel == null) {
+			schluessel = file.getHash() == null ? file.getId() + "-" + file.getVersion() : file.getHash();
+		}
+		final EntityTag etag = new EntityTag(schluessel);
+		final CacheControl cacheControl = new CacheControl();
+		if (version != null && version.intValue() == file.getVersion()) {
+			cacheControl.setMaxAge(MAX_AGE_UNVERAENDERLICH);
+		}
+		else {
+			cacheControl.setMaxAge(0);
+			cacheControl.setMustRevalidate(true);
+		}
+		
+		final ResponseBuilder notModified = request.evaluatePreconditions(etag);
+		if (notModified != null) {
+			if (nachUserAgent) {
+				notModified.header(VARY, USER_AGENT);
+			}
+			return notModified.cacheControl(cacheControl)
+			                  .build();
+		}
+		
+		long von = 0;
+		long bis = laenge - 1;
+		boolean teilweise = false;
+		
+		// Bei "If-Range" nur dann einen Teil senden, wenn sich die Datei nicht geaendert hat
+		if (range != null && (ifRange == null || ifRange.equals(etag.toString()))) {
+			final Matcher matcher = RANGE_PATTERN.matcher(range.trim());
+			if (matcher.matches() && !(matcher.group(1).isEmpty() && matcher.group(2).isEmpty())) {
+				if (matcher.group(1).isEmpty()) {
+					von = Math.max(0, laenge - Long.parseLong(matcher.group(2)));
+				}
+				else {
+					von = Long.parseLong(matcher.group(1));
+					if (!matcher.group(2).isEmpty()) {
+						bis = Math.min(bis, Long.parseLong(matcher.group(2)));
+					}
+				}
+				
+				if (von >= laenge || von > bis) {
+					return Response.status(REQUESTED_RANGE_NOT_SATISFIABLE)
+					               .header(CONTENT_RANGE, BYTES + " */" + laenge)
+					               .build();
+				}
+				teilweise = true;
+			}
+		}
+		
+		final long anfang = von;
+		final long anzahl = bis - von + 1;
+		final java.nio.file.Path datei = path;
+		final String cacheSchluessel = schluessel;
+		final long dateiGroesse = laenge;
+		final StreamingOutput output = outputStream -> senden(datei, cacheSchluessel, dateiGroesse, anfang, anzahl,
+		                                                      outputStream);
+		final ResponseBuilder builder = Response.status(teilweise ? PARTIAL_CONTENT : OK)
+		                                        .entity(output)
+		                                        .type(file.getMimeType().toString())
+		                                        .tag(etag)
+		                                        .cacheControl(cacheControl)
+		                                        .header(ACCEPT_RANGES, BYTES)
+		                                        .header(CONTENT_LENGTH, anzahl);
+		if (teilweise) {
+			builder.header(CONTENT_RANGE, BYTES + " " + von + "-" + bis + "/" + laenge);
+		}
+		if (nachUserAgent) {
+			builder.header(VARY, USER_AGENT);
+		}
+		return builder.build();
+	}
+	
+	private void senden(java.nio.file.Path path, String schluessel, long groesse, long von, long anzahl,
+	                    OutputStream outputStream) throws IOException {
+		final WritableByteChannel ziel = Channels.newChannel(outputStream);
+		final ByteBuffer buffer = fileCache.get(schluessel, groesse, path);
+		if (buffer != null) {
+			buffer.limit((int) Math.min(buffer.capacity(), von + anzahl));
+			buffer.position((int) Math.min(buffer.limit(), von));
+			while (buffer.hasRemaining()) {
+				ziel.write(buffer);
+			}
+			return;
+		}
+		
+		try (final FileChannel channel = FileChannel.open(path, READ)) {
+			long position = von;
+			long rest = anzahl;
+			while (rest > 0) {
+				final long uebertragen = channel.transferTo(position, rest, ziel);
+				if (uebertragen <= 0) {
+					// Die Datei wurde zwischenzeitlich gekuerzt
+					break;
+				}
+				position += uebertragen;
+				rest -= uebertragen;
+			}
+		}
+	}
+}
@@ -18,11 +18,12 @@
 package de.shop.util.rest;
 
 import com.google.common.base.Splitter;
+import de.shop.util.MessageFormatCache;
 import de.shop.util.interceptor.Log;
 import java.lang.invoke.MethodHandles;
-import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.IllformedLocaleException;
@@ -31,13 +32,20 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.ResourceBundle;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Logger;
 import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
 import javax.enterprise.context.ApplicationScoped;
 import javax.ws.rs.core.HttpHeaders;
 
+import static javax.ws.rs.core.HttpHeaders.ACCEPT_LANGUAGE;
+
 /**
+ * Lokalisierte Fehlermeldungen fuer REST. Der Header Accept-Language wird je Wert nur einmal ausgewertet und
+ * auf die kompilierten Meldungstexte des passenden ResourceBundle abgebildet. Formatiert wird mit der
+ * konfigurierten Locale des ResourceBundle, d.h. es gibt die kompilierten Meldungstexte nur je ResourceBundle.
  * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
  */
 @ApplicationScoped
@@ -48,6 +56,11 @@ public class Messages {
 	private static final String APPLICATION_MESSAGES = "/ApplicationMessages";
 	private static final List<Locale> LOCALES_DEFAULT = Arrays.asList(Locale.ENGLISH);
 	
+	// Obergrenze, damit beliebige Werte fuer Accept-Language den Cache nicht wachsen lassen
+	static final int MAX_ACCEPT_LANGUAGES = 256;
+	// Schluessel, falls es keinen Header Accept-Language gibt
+	private static final String OHNE_ACCEPT_LANGUAGE = "";
+	
 	@Resource(name = "locales")
 	private String locales;
 
@@ -56,6 +69,11 @@ public class Messages {
 	private transient Map<Locale, ResourceBundle> bundles;
 	private transient Map<String, ResourceBundle> bundlesLanguageStr;	 // z.B. "en" als Schluessel auch fuer en_US
 	
+	// Wert von Accept-Language -> kompilierte Meldungstexte
+	private final ConcurrentMap<String, MessageFormatCache> acceptLanguages = new ConcurrentHashMap<>();
+	// ResourceBundle -> kompilierte Meldungstexte mit der konfigurierten Locale
+	private transient Map<ResourceBundle, MessageFormatCache> formate;
+	
 	@PostConstruct
 	private void postConstruct() {
 		List<Locale> localesList;
@@ -83,10 +101,12 @@ public class Messages {
 		
 		bundles = new HashMap<>();
 		bundlesLanguageStr = new HashMap<>();
+		formate = new HashMap<>();
 		final Set<String> languages = new HashSet<>();
 		localesList.forEach(locale -> {
 			final ResourceBundle bundle = ResourceBundle.getBundle(APPLICATION_MESSAGES, locale);
 			bundles.put(locale, bundle);
+			formate.putIfAbsent(bundle, new MessageFormatCache(bundle, locale));
 			
 			String localeStr = locale.toString();
 			if (localeStr.length() > 2) {
@@ -103,15 +123,30 @@ public class Messages {
 	}
 	
 	public String getMessage(HttpHeaders headers, String key, Object... args) {
-		final List<Locale> acceptableLocales = headers == null ? new ArrayList<>(0) : headers.getAcceptableLanguages();
+		return getFormate(headers).format(key, args);
+	}
+	
+	private MessageFormatCache getFormate(HttpHeaders headers) {
+		final String acceptLanguage = headers == null ? null : headers.getHeaderString(ACCEPT_LANGUAGE);
+		final String acceptLanguageKey = acceptLanguage == null ? OHNE_ACCEPT_LANGUAGE : acceptLanguage;
+		final MessageFormatCache formateAcceptLanguage = acceptLanguages.get(acceptLanguageKey);
+		if (formateAcceptLanguage != null) {
+			return formateAcceptLanguage;
+		}
+		
+		// Neuer Wert fuer Accept-Language: Locales parsen und ResourceBundle ermitteln
+		final List<Locale> acceptableLocales = headers == null
+				                               ? Collections.emptyList()
+				                               : headers.getAcceptableLanguages();
 		final ResourceBundle bundle = getBundle(acceptableLocales);
 		
-		final String pattern = bundle.getString(key);
-		final Locale locale = acceptableLocales == null || acceptableLocales.isEmpty()
-				              ? Locale.getDefault()
-				              : acceptableLocales.get(0);
-		final MessageFormat messageFormat = new MessageFormat(pattern, locale);
-		return messageFormat.format(args);
+		// Verschiedene Werte fuer Accept-Language, z.B. "de", "de-CH" und "de,en;q=0.5", teilen sich die
+		// Meldungstexte. Deshalb gibt es nicht mehr kompilierte Meldungstexte als konfigurierte Locales.
+		final MessageFormatCache result = formate.get(bundle);
+		if (acceptLanguages.size() < MAX_ACCEPT_LANGUAGES) {
+			acceptLanguages.putIfAbsent(acceptLanguageKey, result);
+		}
+		return result;
 	}
 	
 	private ResourceBundle getBundle(List<Locale> locales) {
@@ -135,4 +170,12 @@ public class Messages {
 		
 		return bundle == null ? defaultBundle : bundle;
 	}
+	
+	int getAnzahlAcceptLanguages() {
+		return acceptLanguages.size();
+	}
+	
+	int getAnzahlFormate() {
+		return formate.size();
+	}
 }
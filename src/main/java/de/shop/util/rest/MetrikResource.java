@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2013 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.util.rest;
+
+import de.shop.util.metrics.Histogramm.Schnappschuss;
+import de.shop.util.metrics.MethodenMetriken;
+import de.shop.util.metrics.RestMetriken;
+import de.shop.util.metrics.RestMetriken.Endpunkt;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import javax.ejb.Stateless;
+import javax.inject.Inject;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+
+
+/**
+ * Metriken der REST-Schnittstelle und der Methoden mit @Timed im Textformat von Prometheus, d.h.
+ * GET /rest/metrics kann direkt als Scrape-Target konfiguriert werden. Latenzen werden als Summary
+ * mit den Quantilen 0.5, 0.95 und 0.99 in Sekunden ausgegeben.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+@Path("/metrics")
+@Stateless
+public class MetrikResource {
+	private static final String TEXT_PROMETHEUS = "text/plain; version=0.0.4; charset=utf-8";
+	
+	private static final String REQUESTS = "shop_rest_requests_total";
+	private static final String LAUFEND = "shop_rest_requests_in_flight";
+	private static final String REST_DAUER = "shop_rest_request_duration_seconds";
+	private static final String METHODEN_DAUER = "shop_method_duration_seconds";
+	
+	private static final double NANOS_PRO_SEKUNDE = 1_000_000_000.0;
+	
+	@Inject
+	private RestMetriken restMetriken;
+	
+	@Inject
+	private MethodenMetriken methodenMetriken;
+	
+	@GET
+	@Produces(TEXT_PROMETHEUS)
+	public String getMetriken() {
+		final List<Endpunkt> endpunkte = restMetriken.getEndpunkte()
+		                                             .stream()
+		                                             .sorted(Comparator.comparing(Endpunkt::getResource)
+		                                                               .thenComparing(Endpunkt::getMethode))
+		                                             .collect(Collectors.toList());
+		final StringBuilder sb = new StringBuilder(4096);
+		
+		kopf(sb, REQUESTS, "counter", "Anzahl der beendeten REST-Requests je Statusklasse");
+		endpunkte.forEach(e -> {
+			for (int klasse = 1; klasse <= 5; klasse++) {
+				final long anzahl = e.getAnzahl(klasse);
+				if (anzahl > 0) {
+					sb.append(REQUESTS).append('{');
+					labels(sb, e);
+					sb.append(",status=\"").append(klasse).append("xx\"} ").append(anzahl).append('\n');
+				}
+			}
+		});
+		
+		kopf(sb, LAUFEND, "gauge", "Anzahl der gerade laufenden REST-Requests");
+		endpunkte.forEach(e -> {
+			sb.append(LAUFEND).append('{');
+			labels(sb, e);
+			sb.append("} ").append(e.getLaufend()).append('\n');
+		});
+		
+		kopf(sb, REST_DAUER, "summary", "Dauer der REST-Requests");
+		endpunkte.forEach(e -> {
+			final StringBuilder labels = new StringBuilder();
+			labels(labels, e);
+			summary(sb, REST_DAUER, labels.toString(), e.getHistogramm().getSchnappschuss());
+		});
+		
+		kopf(sb, METHODEN_DAUER, "summary", "Dauer der Methoden mit @Timed");
+		methodenMetriken.getSchnappschuesse()
+		                .forEach((name, s) -> summary(sb, METHODEN_DAUER, "method=\"" + escape(name) + "\"", s));
+		
+		return sb.toString();
+	}
+	
+	private static void kopf(StringBuilder sb, String name, String typ, String hilfe) {
+		sb.append("# HELP ").append(name).append(' ').append(hilfe).append('\n')
+		  .append("# TYPE ").append(name).append(' ').append(typ).append('\n');
+	}
+	
+	private static void labels(StringBuilder sb, Endpunkt e) {
+		sb.append("resource=\"").append(e.getResource())
+		  .append("\",method=\"").append(e.getMethode())
+		  .append("\",http_method=\"").append(e.getHttpMethod())
+		  .append("\",path=\"").append(escape(e.getPfad())).append('"');
+	}
+	
+	private static void summary(StringBuilder sb, String name, String labels, Schnappschuss s) {
+		quantil(sb, name, labels, "0.5", s.getP50());
+		quantil(sb, name, labels, "0.95", s.getP95());
+		quantil(sb, name, labels, "0.99", s.getP99());
+		sb.append(name).append("_sum{").append(labels).append("} ")
+		  .append(s.getSumme() / NANOS_PRO_SEKUNDE).append('\n');
+		sb.append(name).append("_count{").append(labels).append("} ").append(s.getAnzahl()).append('\n');
+	}
+	
+	private static void quantil(StringBuilder sb, String name, String labels, String quantil, long nanos) {
+		sb.append(name).append('{').append(labels).append(",quantile=\"").append(quantil).append("\"} ")
+		  .append(nanos / NANOS_PRO_SEKUNDE).append('\n');
+	}
+	
+	// Backslash, Anfuehrungszeichen und Zeilenumbruch muessen in Label-Werten maskiert werden
+	private static String escape(String wert) {
+		return wert.replace("\\", "\\\\")
+		           .replace("\"", "\\\"")
+		           .replace("\n", "\\n");
+	}
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2013 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.util.rest;
+
+import de.shop.util.metrics.RestMetriken;
+import de.shop.util.metrics.RestMetriken.Endpunkt;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.ext.Provider;
+
+
+/**
+ * Ermittelt zu jedem Request die Metriken der Resource-Methode, zaehlt ihn als laufend und legt die
+ * Metriken als Property ab. Properties im Request-Kontext sind in einem Servlet-Container die Attribute
+ * des ServletRequest: der RestMetrikServletFilter beendet die Messung deshalb in einem finally-Block,
+ * auch bei Exceptions ohne ExceptionMapper und erst nach dem Schreiben des Response, z.B. StreamingOutput.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+@Provider
+@ApplicationScoped
+public class RestMetrikFilter implements ContainerRequestFilter {
+	static final String ENDPUNKT = RestMetrikFilter.class.getName() + ".endpunkt";
+	
+	@Context
+	private ResourceInfo resourceInfo;
+	
+	@Inject
+	private RestMetriken metriken;
+	
+	@Override
+	public void filter(ContainerRequestContext requestCtx) throws IOException {
+		final Method method = resourceInfo.getResourceMethod();
+		if (method == null) {
+			return;
+		}
+		
+		final Endpunkt endpunkt = metriken.getEndpunkt(resourceInfo.getResourceClass(), method);
+		endpunkt.anfang();
+		requestCtx.setProperty(ENDPUNKT, endpunkt);
+	}
+}
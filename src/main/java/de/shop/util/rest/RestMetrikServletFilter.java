@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2013 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.util.rest;
+
+import de.shop.util.metrics.RestMetriken.Endpunkt;
+import java.io.IOException;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.annotation.WebFilter;
+import javax.servlet.http.HttpServletResponse;
+
+import static de.shop.util.Constants.REST_PATH;
+import static de.shop.util.rest.RestMetrikFilter.ENDPUNKT;
+import static javax.servlet.http.HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+
+
+/**
+ * Beendet die Messung eines REST-Requests, nachdem der Response vollstaendig geschrieben ist. Die Dauer
+ * enthaelt damit auch das Schreiben eines StreamingOutput, und ein laufender Request wird auch dann
+ * wieder abgezogen, wenn eine Exception ohne ExceptionMapper den Response-Filter von JAX-RS uebergeht.
+ * Ohne passende Resource-Methode, z.B. bei 404, hat der RestMetrikFilter keine Metriken abgelegt.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+@WebFilter(REST_PATH + "/*")
+public class RestMetrikServletFilter implements Filter {
+	@Override
+	public void init(FilterConfig filterConfig) {
+		// nichts zu initialisieren
+	}
+	
+	@Override
+	public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+	       throws IOException, ServletException {
+		final long start = System.nanoTime();
+		boolean fehler = true;
+		try {
+			chain.doFilter(request, response);
+			fehler = false;
+		}
+		finally {
+			final Endpunkt endpunkt = (Endpunkt) request.getAttribute(ENDPUNKT);
+			if (endpunkt != null) {
+				final int status = fehler ? SC_INTERNAL_SERVER_ERROR : ((HttpServletResponse) response).getStatus();
+				endpunkt.ende(status, System.nanoTime() - start);
+			}
+		}
+	}
+	
+	@Override
+	public void destroy() {
+		// nichts freizugeben
+	}
+}
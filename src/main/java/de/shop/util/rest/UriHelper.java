@@ -18,28 +18,131 @@
 package de.shop.util.rest;
 
 import java.net.URI;
-import javax.ejb.Stateless;
-import javax.ejb.TransactionAttribute;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.enterprise.context.ApplicationScoped;
+import javax.ws.rs.core.UriBuilder;
 import javax.ws.rs.core.UriInfo;
 
-import static javax.ejb.TransactionAttributeType.SUPPORTS;
-
 /**
+ * URIs fuer Links in den REST-Resourcen. Die Pfade aus @Path werden je Resource-Klasse und Methode nur einmal
+ * per Reflection ermittelt und als Praefix und Suffix um den Platzhalter fuer die ID abgelegt. Je Basis-URI
+ * wird der vollstaendige Praefix ebenfalls gecacht, so dass ein Link nur noch eine String-Verkettung ist.
  * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
  */
-@Stateless
-@TransactionAttribute(SUPPORTS)
+@ApplicationScoped
 public class UriHelper {
+	// Schluessel fuer den Pfad der Resource-Klasse ohne Methode
+	private static final String OHNE_METHODE = "";
+	
+	// Obergrenze je Template, damit beliebige Host-Header den Cache nicht wachsen lassen
+	static final int MAX_BASIS_URIS = 16;
+	
+	private final ClassValue<ConcurrentMap<String, LinkTemplate>> templates =
+		new ClassValue<ConcurrentMap<String, LinkTemplate>>() {
+			@Override
+			protected ConcurrentMap<String, LinkTemplate> computeValue(Class<?> clazz) {
+				return new ConcurrentHashMap<>();
+			}
+		};
+	
 	public URI getUri(Class<?> clazz, UriInfo uriInfo) {
-		return uriInfo.getBaseUriBuilder()
-				      .path(clazz)
-				      .build();
+		return getTemplate(clazz, OHNE_METHODE).build(uriInfo.getBaseUri().toString(), null);
 	}
 
 	public URI getUri(Class<?> clazz, String methodName, Long id, UriInfo uriInfo) {
-		return uriInfo.getBaseUriBuilder()
-		              .path(clazz)
-		              .path(clazz, methodName)
-		              .build(id);
+		return getTemplate(clazz, methodName).build(uriInfo.getBaseUri().toString(), id);
+	}
+	
+	private LinkTemplate getTemplate(Class<?> clazz, String methodName) {
+		final ConcurrentMap<String, LinkTemplate> templatesClazz = templates.get(clazz);
+		final LinkTemplate template = templatesClazz.get(methodName);
+		if (template != null) {
+			return template;
+		}
+		return templatesClazz.computeIfAbsent(methodName, name -> new LinkTemplate(clazz, name));
+	}
+	
+	/**
+	 * Anzahl der gecachten Templates einer Resource-Klasse, z.B. fuer Tests
+	 * @param clazz Die Resource-Klasse
+	 * @return Anzahl der Methoden einschliesslich der Klasse selbst, zu denen es ein Template gibt
+	 */
+	int getAnzahlTemplates(Class<?> clazz) {
+		return templates.get(clazz).size();
+	}
+	
+	/**
+	 * Anzahl der gecachten Basis-URIs zu einem Template, z.B. fuer Tests
+	 * @param clazz Die Resource-Klasse
+	 * @param methodName Die Methode oder null fuer den Pfad der Klasse
+	 * @return Anzahl der Basis-URIs oder 0, falls es zur Methode noch kein Template gibt
+	 */
+	int getAnzahlBasisUris(Class<?> clazz, String methodName) {
+		final LinkTemplate template = templates.get(clazz).get(methodName == null ? OHNE_METHODE : methodName);
+		return template == null ? 0 : template.basisPraefixe.size();
+	}
+	
+	/**
+	 * Pfad zu einer Methode einer Resource-Klasse mit hoechstens einem Platzhalter, z.B. /kunden/{id:[1-9][0-9]*}
+	 */
+	private static final class LinkTemplate {
+		private final String praefix;
+		// null, falls der Pfad keinen Platzhalter hat
+		private final String suffix;
+		private final ConcurrentMap<String, String> basisPraefixe = new ConcurrentHashMap<>();
+		
+		LinkTemplate(Class<?> clazz, String methodName) {
+			final UriBuilder builder = UriBuilder.fromPath("/").path(clazz);
+			if (!OHNE_METHODE.equals(methodName)) {
+				builder.path(clazz, methodName);
+			}
+			final String template = builder.toTemplate();
+			
+			final int anfang = template.indexOf('{');
+			if (anfang < 0) {
+				praefix = template;
+				suffix = null;
+				return;
+			}
+			
+			// Ein regulaerer Ausdruck im Platzhalter kann selbst geschweifte Klammern enthalten, z.B. {plz:[0-9]{5}}
+			int ende = anfang;
+			for (int tiefe = 0; ende < template.length(); ende++) {
+				final char c = template.charAt(ende);
+				if (c == '{') {
+					tiefe++;
+				}
+				else if (c == '}' && --tiefe == 0) {
+					break;
+				}
+			}
+			if (ende >= template.length() || template.indexOf('{', ende) >= 0) {
+				throw new IllegalArgumentException("Pfad mit genau einem Platzhalter erwartet: " + template);
+			}
+			praefix = template.substring(0, anfang);
+			suffix = template.substring(ende + 1);
+		}
+		
+		URI build(String baseUri, Long id) {
+			String basis = basisPraefixe.get(baseUri);
+			if (basis == null) {
+				// Die Basis-URI endet mit "/" und der Pfad beginnt mit "/"
+				basis = baseUri.endsWith("/")
+				        ? baseUri.substring(0, baseUri.length() - 1) + praefix
+				        : baseUri + praefix;
+				if (basisPraefixe.size() < MAX_BASIS_URIS) {
+					basisPraefixe.putIfAbsent(baseUri, basis);
+				}
+			}
+			
+			if (suffix == null) {
+				return URI.create(basis);
+			}
+			if (id == null) {
+				throw new IllegalArgumentException("Keine ID fuer den Platzhalter in " + praefix);
+			}
+			return URI.create(basis + id + suffix);
+		}
 	}
 }
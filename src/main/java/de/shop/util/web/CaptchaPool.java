@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2013 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.util.web;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.security.SecureRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Logger;
+import javax.annotation.PostConstruct;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.Schedule;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.ejb.TransactionAttribute;
+import javax.imageio.ImageIO;
+
+import static java.util.logging.Level.WARNING;
+import static javax.ejb.ConcurrencyManagementType.BEAN;
+import static javax.ejb.TransactionAttributeType.NOT_SUPPORTED;
+
+
+/**
+ * Vorab gezeichnete und als PNG kodierte Captchas mit ihrer Loesung. Der Pool wird beim Deployment gefuellt
+ * und danach durch einen Timer periodisch zum Teil ersetzt, so dass der gesamte Pool regelmaessig erneuert
+ * wird. Beim Request wird nur ein zufaelliges Captcha ausgewaehlt und dessen Bytes geschrieben, d.h. es gibt
+ * keine Arbeit mit AWT oder ImageIO im Request-Thread.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(BEAN)
+@TransactionAttribute(NOT_SUPPORTED)
+public class CaptchaPool {
+	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+	
+	private static final int POOL_GROESSE = 64;
+	// Jede Minute werden 16 Captchas ersetzt, d.h. nach 4 Minuten ist der Pool vollstaendig erneuert
+	private static final int ROTATION_ANZAHL = 16;
+	
+	private static final int WIDTH = 110;
+	private static final int HEIGHT = 50;
+	private static final int X_COORD = 20;
+	private static final int Y_COORD = 35;
+	private static final Color BACKGROUND = new Color(190, 214, 248);
+	private static final Color DRAW_COLOR = new Color(0, 0, 0);
+	private static final Font FONT = new Font(Font.SERIF, Font.TRUETYPE_FONT, 30);
+	private static final int CAPTCHA_LENGTH = 4;
+	// Buchstaben und Ziffern wie bisher bei den Zeichen aus einem Base64-String
+	private static final char[] ZEICHEN = ("ABCDEFGHIJKLMNOPQRSTUVWXYZ" + "abcdefghijklmnopqrstuvwxyz" + "0123456789")
+	                                     .toCharArray();
+	
+	// Nach postConstruct() ist jeder Platz belegt; danach schreibt nur noch rotieren()
+	private final AtomicReferenceArray<CaptchaBild> pool = new AtomicReferenceArray<>(POOL_GROESSE);
+	
+	private final SecureRandom random = new SecureRandom();
+	private int naechsterPlatz;
+	
+	@PostConstruct
+	private void postConstruct() {
+		for (int i = 0; i < POOL_GROESSE; i++) {
+			pool.set(i, zeichnen());
+		}
+		LOGGER.info("CaptchaPool gefuellt mit " + POOL_GROESSE + " Captchas");
+	}
+	
+	/**
+	 * Ein zufaelliges Captcha aus dem Pool
+	 * @return Ein Captcha mit dem PNG-Bild und der Loesung
+	 */
+	public CaptchaBild naechstes() {
+		return pool.get(ThreadLocalRandom.current().nextInt(POOL_GROESSE));
+	}
+	
+	@Schedule(minute = "*", hour = "*", persistent = false)
+	public void rotieren() {
+		// Eine Exception darf den Timer nicht beenden; die bisherigen Captchas bleiben dann im Pool
+		try {
+			for (int i = 0; i < ROTATION_ANZAHL; i++) {
+				pool.set(naechsterPlatz, zeichnen());
+				naechsterPlatz = (naechsterPlatz + 1) % POOL_GROESSE;
+			}
+		}
+		catch (RuntimeException e) {
+			LOGGER.log(WARNING, "Fehler beim Rotieren des CaptchaPool", e);
+		}
+	}
+	
+	private CaptchaBild zeichnen() {
+		final char[] loesung = new char[CAPTCHA_LENGTH];
+		for (int i = 0; i < CAPTCHA_LENGTH; i++) {
+			loesung[i] = ZEICHEN[random.nextInt(ZEICHEN.length)];
+		}
+		final String value = new String(loesung);
+		
+		final BufferedImage img = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+		final Graphics2D graphics2D = img.createGraphics();
+		try {
+			graphics2D.setBackground(BACKGROUND);
+			graphics2D.setColor(DRAW_COLOR);
+			graphics2D.clearRect(0, 0, WIDTH, HEIGHT); // x, y, Breite, Hoehe
+			graphics2D.setFont(FONT);
+			graphics2D.drawString(value, X_COORD, Y_COORD); // String zeichnen an x-/y-Koordinaten
+		}
+		finally {
+			graphics2D.dispose();
+		}
+		
+		final ByteArrayOutputStream png = new ByteArrayOutputStream(2048);
+		try {
+			ImageIO.write(img, "png", png);  // PNG-Bild erzeugen
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		
+		return new CaptchaBild(value, png.toByteArray());
+	}
+	
+	/**
+	 * Unveraenderliches Captcha: das PNG-Bild wird nur ueber schreiben() herausgegeben
+	 */
+	public static final class CaptchaBild {
+		private final String loesung;
+		private final byte[] png;
+		
+		CaptchaBild(String loesung, byte[] png) {
+			this.loesung = loesung;
+			this.png = png;
+		}
+		
+		public String getLoesung() {
+			return loesung;
+		}
+		
+		/**
+		 * Das PNG-Bild in einen Stream schreiben
+		 * @param stream Der Stream fuer die Response
+		 * @throws IOException Fehler beim Schreiben
+		 */
+		public void schreiben(OutputStream stream) throws IOException {
+			stream.write(png);
+		}
+	}
+}
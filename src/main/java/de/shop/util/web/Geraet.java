@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2013 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.util.web;
+
+/**
+ * Geraeteklasse eines Webbrowsers bzw. REST-Clients wie bei UAgentInfo.detectTierIphone() und
+ * UAgentInfo.detectTierTablet()
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+public enum Geraet {
+	DESKTOP(false, false),
+	PHONE(true, false),
+	TABLET(false, true),
+	PHONE_TABLET(true, true);
+	
+	private final boolean phone;
+	private final boolean tablet;
+	
+	private Geraet(boolean phone, boolean tablet) {
+		this.phone = phone;
+		this.tablet = tablet;
+	}
+	
+	public static Geraet build(boolean phone, boolean tablet) {
+		if (phone) {
+			return tablet ? PHONE_TABLET : PHONE;
+		}
+		return tablet ? TABLET : DESKTOP;
+	}
+	
+	/**
+	 * Geraete, die fuer das iPhone optimierte Inhalte darstellen koennen
+	 * @return true bei iPhone, Android-Phone, Windows Phone, BlackBerry 10 usw.
+	 */
+	public boolean isPhone() {
+		return phone;
+	}
+	
+	/**
+	 * Tablets mit groesserem Bildschirm
+	 * @return true bei iPad, Android-Tablet, BlackBerry PlayBook oder WebOS-Tablet
+	 */
+	public boolean isTablet() {
+		return tablet;
+	}
+	
+	public boolean isMobil() {
+		return phone || tablet;
+	}
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2013 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.util.web;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.util.Arrays;
+import javax.enterprise.context.ApplicationScoped;
+
+import static de.shop.util.web.UAgentInfo.deviceAndroid;
+import static de.shop.util.web.UAgentInfo.deviceBB;
+import static de.shop.util.web.UAgentInfo.deviceBB10;
+import static de.shop.util.web.UAgentInfo.deviceBBBoldTouch;
+import static de.shop.util.web.UAgentInfo.deviceBBCurveTouch;
+import static de.shop.util.web.UAgentInfo.deviceBBPlaybook;
+import static de.shop.util.web.UAgentInfo.deviceBBStorm;
+import static de.shop.util.web.UAgentInfo.deviceBBTorch;
+import static de.shop.util.web.UAgentInfo.deviceBada;
+import static de.shop.util.web.UAgentInfo.deviceGoogleTV;
+import static de.shop.util.web.UAgentInfo.deviceHtcFlyer;
+import static de.shop.util.web.UAgentInfo.deviceIpad;
+import static de.shop.util.web.UAgentInfo.deviceIphone;
+import static de.shop.util.web.UAgentInfo.deviceIpod;
+import static de.shop.util.web.UAgentInfo.devicePlaystation;
+import static de.shop.util.web.UAgentInfo.devicePlaystationVita;
+import static de.shop.util.web.UAgentInfo.deviceTablet;
+import static de.shop.util.web.UAgentInfo.deviceTizen;
+import static de.shop.util.web.UAgentInfo.deviceWebOS;
+import static de.shop.util.web.UAgentInfo.deviceWebOShp;
+import static de.shop.util.web.UAgentInfo.deviceWinPhone7;
+import static de.shop.util.web.UAgentInfo.deviceWinPhone8;
+import static de.shop.util.web.UAgentInfo.engineOpera;
+import static de.shop.util.web.UAgentInfo.engineWebKit;
+import static de.shop.util.web.UAgentInfo.mini;
+import static de.shop.util.web.UAgentInfo.mobi;
+import static de.shop.util.web.UAgentInfo.mobile;
+import static de.shop.util.web.UAgentInfo.vndRIM;
+
+/**
+ * Ermittelt die Geraeteklasse zum Header User-Agent mit derselben Logik wie UAgentInfo.detectTierIphone()
+ * und UAgentInfo.detectTierTablet(). Statt rund 100 einzelner Aufrufe von indexOf() werden alle benoetigten
+ * Begriffe in einem einzigen Durchlauf durch einen Aho-Corasick-Automaten gefunden. Da fast der gesamte
+ * Verkehr von wenigen hundert verschiedenen User-Agents stammt, werden die gefundenen Begriffe je Header
+ * in einem begrenzten LRU-Cache abgelegt.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+@ApplicationScoped
+public class GeraeteKlassifizierer {
+	private static final int CACHE_MAX = 1024;
+	
+	private static final TokenAutomat AUTOMAT = new TokenAutomat(Arrays.stream(Token.values())
+	                                                                   .map(Token::getWert)
+	                                                                   .toArray(String[]::new));
+	
+	// User-Agent -> Bitmaske der enthaltenen Begriffe
+	private final Cache<String, Long> begriffe = CacheBuilder.newBuilder()
+	                                                         .maximumSize(CACHE_MAX)
+	                                                         .build();
+	
+	/**
+	 * Die Geraeteklasse zu den Headern eines Requests ermitteln
+	 * @param userAgent Der Header User-Agent oder null
+	 * @param accept Der Header Accept oder null; nur fuer BlackBerry relevant
+	 * @return Die Geraeteklasse
+	 */
+	public Geraet klassifizieren(String userAgent, String accept) {
+		final long maske = getMaske(userAgent);
+		final boolean acceptRim = enthaelt(accept, vndRIM);
+		return Geraet.build(isTierIphone(maske, acceptRim), isTierTablet(maske));
+	}
+	
+	private long getMaske(String userAgent) {
+		if (userAgent == null) {
+			return 0L;
+		}
+		
+		final Long maske = begriffe.getIfPresent(userAgent);
+		if (maske != null) {
+			return maske;
+		}
+		final long result = AUTOMAT.suchen(userAgent);
+		begriffe.put(userAgent, result);
+		return result;
+	}
+	
+	/**
+	 * Anzahl der gecachten User-Agents, z.B. fuer Diagnosezwecke
+	 * @return Anzahl der Eintraege im Cache
+	 */
+	public long getAnzahlGecacht() {
+		return begriffe.size();
+	}
+	
+	// Entspricht UAgentInfo.detectTierTablet()
+	private static boolean isTierTablet(long m) {
+		final boolean ipad = has(m, Token.IPAD) && has(m, Token.WEBKIT);
+		final boolean androidTablet = isAndroid(m)
+		                              && !(has(m, Token.OPERA) && (has(m, Token.MINI) || has(m, Token.MOBI)))
+		                              && !has(m, Token.HTC_FLYER)
+		                              && !has(m, Token.MOBILE);
+		final boolean webOsTablet = has(m, Token.HPWOS) && has(m, Token.TABLET);
+		return ipad || androidTablet || has(m, Token.PLAYBOOK) || webOsTablet;
+	}
+	
+	// Entspricht UAgentInfo.detectTierIphone()
+	private static boolean isTierIphone(long m, boolean acceptRim) {
+		final boolean androidPhone = isAndroid(m) && has(m, Token.MOBILE)
+		                             || has(m, Token.OPERA) && has(m, Token.ANDROID) && has(m, Token.MOBI)
+		                             || has(m, Token.HTC_FLYER);
+		final boolean bb10Phone = has(m, Token.BB10) && has(m, Token.MOBILE);
+		final boolean blackBerry = has(m, Token.BB) || acceptRim || bb10Phone;
+		final boolean blackBerryTouch = blackBerry
+		                                && (has(m, Token.BB_STORM) || has(m, Token.BB_TORCH)
+		                                    || has(m, Token.BB_BOLD_TOUCH) || has(m, Token.BB_CURVE_TOUCH));
+		
+		return has(m, Token.IPHONE) || has(m, Token.IPOD)
+		       || androidPhone
+		       || has(m, Token.WIN_PHONE_7) || has(m, Token.WIN_PHONE_8)
+		       || bb10Phone
+		       || blackBerry && has(m, Token.WEBKIT) && blackBerryTouch
+		       || has(m, Token.WEBOS)
+		       || has(m, Token.BADA)
+		       || has(m, Token.TIZEN)
+		       || has(m, Token.PLAYSTATION) && has(m, Token.VITA);
+	}
+	
+	// Entspricht UAgentInfo.detectAndroid()
+	private static boolean isAndroid(long m) {
+		return has(m, Token.ANDROID) || has(m, Token.GOOGLE_TV) || has(m, Token.HTC_FLYER);
+	}
+	
+	private static boolean has(long maske, Token token) {
+		return (maske & token.bit) != 0;
+	}
+	
+	// Wie indexOf() nach toLowerCase(), aber ohne neuen String
+	private static boolean enthaelt(String text, String begriff) {
+		if (text == null) {
+			return false;
+		}
+		final int max = text.length() - begriff.length();
+		for (int i = 0; i <= max; i++) {
+			if (text.regionMatches(true, i, begriff, 0, begriff.length())) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Die Begriffe aus UAgentInfo, die fuer detectTierIphone() und detectTierTablet() benoetigt werden
+	 */
+	private enum Token {
+		WEBKIT(engineWebKit),
+		IPHONE(deviceIphone),
+		IPOD(deviceIpod),
+		IPAD(deviceIpad),
+		ANDROID(deviceAndroid),
+		GOOGLE_TV(deviceGoogleTV),
+		HTC_FLYER(deviceHtcFlyer),
+		WIN_PHONE_7(deviceWinPhone7),
+		WIN_PHONE_8(deviceWinPhone8),
+		BB(deviceBB),
+		BB10(deviceBB10),
+		BB_STORM(deviceBBStorm),
+		BB_TORCH(deviceBBTorch),
+		BB_BOLD_TOUCH(deviceBBBoldTouch),
+		BB_CURVE_TOUCH(deviceBBCurveTouch),
+		PLAYBOOK(deviceBBPlaybook),
+		WEBOS(deviceWebOS),
+		HPWOS(deviceWebOShp),
+		BADA(deviceBada),
+		TIZEN(deviceTizen),
+		PLAYSTATION(devicePlaystation),
+		VITA(devicePlaystationVita),
+		TABLET(deviceTablet),
+		OPERA(engineOpera),
+		MINI(mini),
+		MOBI(mobi),
+		MOBILE(mobile);
+		
+		private final String wert;
+		private final long bit;
+		
+		private Token(String wert) {
+			this.wert = wert;
+			bit = 1L << ordinal();
+		}
+		
+		String getWert() {
+			return wert;
+		}
+	}
+}
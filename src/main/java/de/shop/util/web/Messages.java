@@ -17,10 +17,10 @@
 
 package de.shop.util.web;
 
+import de.shop.util.MessageFormatCache;
 import de.shop.util.interceptor.Log;
 import java.io.Serializable;
 import java.lang.invoke.MethodHandles;
-import java.text.MessageFormat;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -28,6 +28,8 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.ResourceBundle;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Logger;
 import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
@@ -41,6 +43,9 @@ import static javax.faces.application.FacesMessage.SEVERITY_INFO;
 import static javax.faces.application.FacesMessage.SEVERITY_WARN;
 
 /**
+ * Lokalisierte Meldungen fuer JSF. Das ResourceBundle wird je Locale des Webbrowsers nur einmal ermittelt
+ * und die Meldungstexte werden kompiliert wiederverwendet. Formatiert wird mit der unterstuetzten Locale des
+ * ResourceBundle, d.h. es gibt die kompilierten Meldungstexte nur je ResourceBundle.
  * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
  */
 @ApplicationScoped
@@ -50,10 +55,18 @@ public class Messages implements Serializable {
 	
 	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
 	
+	// Obergrenze, damit beliebige Locales der Webbrowser den Cache nicht wachsen lassen
+	private static final int MAX_LOCALES = 256;
+	
 	private transient ResourceBundle defaultBundle;
 	private Locale defaultLocale;
 	private transient Map<Locale, ResourceBundle> bundles;
 	private transient Map<String, ResourceBundle> bundlesLanguageStr;	 // z.B. "en" als Schluessel auch fuer en_US
+	
+	// Locale im Webbrowser -> kompilierte Meldungstexte
+	private transient ConcurrentMap<Locale, MessageFormatCache> formateLocale;
+	// ResourceBundle -> kompilierte Meldungstexte mit der unterstuetzten Locale
+	private transient Map<ResourceBundle, MessageFormatCache> formate;
 
 	@PostConstruct
 	private void postConstruct() {
@@ -67,6 +80,8 @@ public class Messages implements Serializable {
 		
 		bundles = new HashMap<>();
 		bundles.put(defaultLocale, defaultBundle);
+		formate = new HashMap<>();
+		formate.put(defaultBundle, new MessageFormatCache(defaultBundle, defaultLocale));
 		
 		bundlesLanguageStr = new HashMap<>();
 		String localeStr = defaultLocale.toString();
@@ -81,6 +96,7 @@ public class Messages implements Serializable {
 			final Locale lc = locales.next();
 			final ResourceBundle bundle = ResourceBundle.getBundle(messageBundle, lc);
 			bundles.put(lc, bundle);
+			formate.putIfAbsent(bundle, new MessageFormatCache(bundle, lc));
 			
 			localeStr = lc.toString();
 			if (localeStr.length() > 2) {
@@ -92,6 +108,8 @@ public class Messages implements Serializable {
 			}
 		}
 		LOGGER.info("Locales: " + bundles.keySet());
+		
+		formateLocale = new ConcurrentHashMap<>();
 	}
 	
 	/**
@@ -118,10 +136,22 @@ public class Messages implements Serializable {
 			               String idUiKomponente,
 			               Severity severity,
 			               Object... args) {
-		ResourceBundle bundle = bundles.get(locale);
+		final String msg = getFormate(locale).format(msgKey, args);
+		
+		final FacesMessage facesMsg = new FacesMessage(severity, msg, null);
+		FacesContext.getCurrentInstance().addMessage(idUiKomponente, facesMsg);
+	}
+	
+	private MessageFormatCache getFormate(Locale browserLocale) {
+		final MessageFormatCache formateBrowser = formateLocale.get(browserLocale);
+		if (formateBrowser != null) {
+			return formateBrowser;
+		}
+		
+		ResourceBundle bundle = bundles.get(browserLocale);
 		if (bundle == null) {
 			// Sprache (z.B. "en") statt Locale (z.B. "en_US") verwenden, da die Sprache allgemeiner ist
-			String localeStr = locale.toString();
+			String localeStr = browserLocale.toString();
 			if (localeStr.length() > 2) {
 				localeStr = localeStr.substring(0, 2);
 				bundle = bundlesLanguageStr.get(localeStr);
@@ -130,14 +160,14 @@ public class Messages implements Serializable {
 			if (bundle == null) {
 				// Keine Texte zu aktuellen Sprache gefunden: Default-Sprache verwenden
 				bundle = defaultBundle;
-				locale = defaultLocale;
 			}
 		}
-		final String msgPattern = bundle.getString(msgKey);
-		final MessageFormat formatter = new MessageFormat(msgPattern, locale);
-		final String msg = formatter.format(args);
 		
-		final FacesMessage facesMsg = new FacesMessage(severity, msg, null);
-		FacesContext.getCurrentInstance().addMessage(idUiKomponente, facesMsg);
+		// Locales mit demselben ResourceBundle, z.B. "en_US" und "en_GB", teilen sich die Meldungstexte
+		final MessageFormatCache result = formate.get(bundle);
+		if (formateLocale.size() < MAX_LOCALES) {
+			formateLocale.putIfAbsent(browserLocale, result);
+		}
+		return result;
 	}
 }
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2013 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.util.web;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * Aho-Corasick-Automat fuer hoechstens 64 Suchbegriffe aus ASCII-Zeichen in Kleinbuchstaben. Die
+ * Uebergaenge werden vorab vollstaendig berechnet, so dass ein Text in einem einzigen Durchlauf ohne
+ * Ruecksprung und ohne Allokation untersucht wird. Grossbuchstaben im Text werden wie bei
+ * String.toLowerCase() behandelt.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+final class TokenAutomat {
+	private static final int ALPHABET = 128;
+	private static final int START = 0;
+	private static final char GROSSES_I_MIT_PUNKT = '\u0130';
+	
+	// Folgezustand = uebergaenge[zustand * ALPHABET + zeichen]
+	private final int[] uebergaenge;
+	// Bit i ist gesetzt, wenn im Zustand der Suchbegriff i (ggf. als Suffix) erkannt ist
+	private final long[] treffer;
+	
+	/**
+	 * @param begriffe Die Suchbegriffe; Bit i im Ergebnis von suchen() steht fuer begriffe[i]
+	 */
+	TokenAutomat(String... begriffe) {
+		if (begriffe.length > Long.SIZE) {
+			throw new IllegalArgumentException("Hoechstens " + Long.SIZE + " Suchbegriffe");
+		}
+		
+		// Trie aufbauen; -1 = noch kein Uebergang
+		final List<int[]> trie = new ArrayList<>();
+		final List<Long> trieTreffer = new ArrayList<>();
+		trie.add(leererZustand());
+		trieTreffer.add(0L);
+		for (int i = 0; i < begriffe.length; i++) {
+			int zustand = START;
+			for (char c : begriffe[i].toCharArray()) {
+				if (c >= ALPHABET || Character.isUpperCase(c)) {
+					throw new IllegalArgumentException("Nur ASCII in Kleinbuchstaben: " + begriffe[i]);
+				}
+				if (trie.get(zustand)[c] < 0) {
+					trie.get(zustand)[c] = trie.size();
+					trie.add(leererZustand());
+					trieTreffer.add(0L);
+				}
+				zustand = trie.get(zustand)[c];
+			}
+			trieTreffer.set(zustand, trieTreffer.get(zustand) | 1L << i);
+		}
+		
+		final int anzahl = trie.size();
+		uebergaenge = new int[anzahl * ALPHABET];
+		treffer = new long[anzahl];
+		treffer[START] = trieTreffer.get(START);
+		
+		// Breitensuche: Fehlerfunktion und fehlende Uebergaenge aus dem Zustand des laengsten echten Suffix
+		final int[] fehler = new int[anzahl];
+		final Queue<Integer> queue = new ArrayDeque<>();
+		for (int c = 0; c < ALPHABET; c++) {
+			final int folge = trie.get(START)[c];
+			if (folge < 0) {
+				uebergaenge[START * ALPHABET + c] = START;
+			}
+			else {
+				uebergaenge[START * ALPHABET + c] = folge;
+				fehler[folge] = START;
+				queue.add(folge);
+			}
+		}
+		while (!queue.isEmpty()) {
+			final int zustand = queue.remove();
+			treffer[zustand] = trieTreffer.get(zustand) | treffer[fehler[zustand]];
+			for (int c = 0; c < ALPHABET; c++) {
+				final int folge = trie.get(zustand)[c];
+				if (folge < 0) {
+					uebergaenge[zustand * ALPHABET + c] = uebergaenge[fehler[zustand] * ALPHABET + c];
+				}
+				else {
+					uebergaenge[zustand * ALPHABET + c] = folge;
+					fehler[folge] = uebergaenge[fehler[zustand] * ALPHABET + c];
+					queue.add(folge);
+				}
+			}
+		}
+	}
+	
+	private static int[] leererZustand() {
+		final int[] zustand = new int[ALPHABET];
+		Arrays.fill(zustand, -1);
+		return zustand;
+	}
+	
+	/**
+	 * Alle Suchbegriffe ermitteln, die im Text enthalten sind
+	 * @param text Der zu untersuchende Text oder null
+	 * @return Bitmaske mit einem gesetzten Bit je gefundenem Suchbegriff
+	 */
+	long suchen(CharSequence text) {
+		if (text == null) {
+			return 0L;
+		}
+		
+		long result = 0L;
+		int zustand = START;
+		final int laenge = text.length();
+		for (int i = 0; i < laenge; i++) {
+			final char zeichen = text.charAt(i);
+			final char c = Character.toLowerCase(zeichen);
+			// Die Suchbegriffe enthalten nur ASCII: jedes andere Zeichen fuehrt in den Startzustand
+			zustand = c < ALPHABET ? uebergaenge[zustand * ALPHABET + c] : START;
+			result |= treffer[zustand];
+			if (zeichen == GROSSES_I_MIT_PUNKT) {
+				// String.toLowerCase() liefert "i" gefolgt vom kombinierenden Punkt U+0307, also kein ASCII
+				zustand = START;
+			}
+		}
+		return result;
+	}
+}
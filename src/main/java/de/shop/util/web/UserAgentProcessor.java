@@ -43,29 +43,32 @@ import javax.servlet.http.HttpServletRequest;
 public class UserAgentProcessor implements Serializable {
 	private static final long serialVersionUID = -1469351849761688348L;
 
-	private transient UAgentInfo uAgentInfo;
+	private Geraet geraet;
     
 	@Inject
 	private transient HttpServletRequest request;
+	
+	@Inject
+	private transient GeraeteKlassifizierer geraeteKlassifizierer;
 
     @PostConstruct
     public void postConstruct() {
         final String userAgentStr = request.getHeader("user-agent");
         final String httpAccept = request.getHeader("accept");
-        uAgentInfo = new UAgentInfo(userAgentStr, httpAccept);
+        geraet = geraeteKlassifizierer.klassifizieren(userAgentStr, httpAccept);
     }
 
     public boolean isPhone() {
         // Detects a whole tier of phones that support similar functionality as the iphone
-        return uAgentInfo.detectTierIphone();
+        return geraet.isPhone();
     }
 
     public boolean isTablet() {
         // Will detect iPads, Xooms, Blackberry tablets, but not Galaxy - they use a strange user-agent
-        return uAgentInfo.detectTierTablet();
+        return geraet.isTablet();
     }
 
     public boolean isMobile() {
-        return isPhone() || isTablet();
+        return geraet.isMobil();
     }
 }
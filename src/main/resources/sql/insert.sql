@@ -34,6 +34,7 @@ INSERT INTO kunde (id, version, nachname, vorname, kategorie, umsatz, seit, art,
 INSERT INTO kunde (id, version, nachname, vorname, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, email, password, bemerkungen, erzeugt, aktualisiert) VALUES (150,0,'Omega','Ok',1,101500.5,'2014-02-01','P','VH','M',TRUE,NULL,'150@hs-karlsruhe.de','x',NULL,'2014-02-01 00:00:00','2014-02-01 00:00:00')
 INSERT INTO kunde (id, version, nachname, vorname, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, email, password, bemerkungen, erzeugt, aktualisiert) VALUES (151,0,'Omega','Ol',2,111500.5,'2014-02-01','P','VH','M',TRUE,NULL,'151@hs-karlsruhe.de','x',NULL,'2014-02-01 00:00:00','2014-02-01 00:00:00')
 INSERT INTO kunde (id, version, nachname, vorname, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, email, password, bemerkungen, erzeugt, aktualisiert) VALUES (152,0,'Omega','Om',3,121500.5,'2014-02-01','P','VH','M',TRUE,NULL,'152@hs-karlsruhe.de','x',NULL,'2014-02-01 00:00:00','2014-02-01 00:00:00')
+UPDATE kunde SET nachname_upper = UPPER(nachname), email_upper = UPPER(email)
 
 INSERT INTO kunde_rolle (kunde_fk, rolle) VALUES (1,'admin')
 INSERT INTO kunde_rolle (kunde_fk, rolle) VALUES (1,'mitarbeiter')
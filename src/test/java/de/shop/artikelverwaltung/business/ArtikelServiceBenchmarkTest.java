@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2013 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.artikelverwaltung.business;
+
+import de.shop.artikelverwaltung.domain.Artikel;
+import de.shop.artikelverwaltung.domain.Artikel_;
+import de.shop.util.ArchiveBuilder;
+import java.lang.invoke.MethodHandles;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.transaction.UserTransaction;
+import org.jboss.arquillian.container.test.api.Deployment;
+import org.jboss.arquillian.container.test.api.OverProtocol;
+import org.jboss.arquillian.junit.Arquillian;
+import org.jboss.arquillian.junit.InSequence;
+import org.jboss.shrinkwrap.api.Archive;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static de.shop.util.TestConstants.BEGINN;
+import static de.shop.util.TestConstants.ENDE;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+
+/**
+ * Microbenchmark fuer ArtikelService.findArtikelByIds(): bisherige OR-Verknuepfung im Vergleich zu
+ * 2nd-Level-Cache und IN-Listen. Die Messwerte werden protokolliert. Der Benchmark laeuft nicht mit den
+ * uebrigen Tests, sondern nur im Profil "benchmark" (mvn test -Pbenchmark) mit einem eigenen Deployment und legt
+ * die benoetigten Artikel selbst an.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+@RunWith(Arquillian.class)
+public class ArtikelServiceBenchmarkTest {
+	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+	
+	private static final int[] ANZAHL_IDS = { 1, 10, 100, 1000 };
+	private static final int WARMUP = 20;
+	private static final int ITERATIONEN = 100;
+	
+	@Inject
+	private ArtikelService as;
+	
+	@Inject
+	private EntityManager em;
+	
+	@Inject
+	private UserTransaction trans;
+	
+	@Deployment
+	@OverProtocol(value = "Servlet 3.0")
+	protected static Archive<?> deployment() {
+		return ArchiveBuilder.getInstance().getArchive(ArtikelServiceBenchmarkTest.class);
+	}
+	
+	@Test
+	@InSequence(1)
+	public void findArtikelByIds() throws Exception {
+		LOGGER.finer(BEGINN);
+		
+		// Die Testdaten enthalten nur wenige Artikel
+		final List<Long> alleIds = artikelAnlegen(ANZAHL_IDS[ANZAHL_IDS.length - 1]);
+		
+		for (int anzahl : ANZAHL_IDS) {
+			// Given
+			final List<Long> ids = alleIds.subList(0, anzahl);
+			
+			// When
+			final long nanosOr = messen(this::findArtikelByIdsOr, ids);
+			final long nanosIn = messen(as::findArtikelByIds, ids);
+			LOGGER.info(String.format("findArtikelByIds mit %4d IDs: OR %8d us, Cache + IN %8d us",
+			                          anzahl, nanosOr / 1000, nanosIn / 1000));
+			
+			// Then
+			final Set<Long> gefunden = toIds(as.findArtikelByIds(ids));
+			assertThat(gefunden.size(), is(anzahl));
+			assertThat(gefunden, is(toIds(findArtikelByIdsOr(ids))));
+		}
+		
+		LOGGER.finer(ENDE);
+	}
+	
+	private List<Long> artikelAnlegen(int anzahl) throws Exception {
+		final List<Artikel> artikel = new ArrayList<>(anzahl);
+		trans.begin();
+		for (int i = 0; i < anzahl; i++) {
+			final Artikel a = new Artikel("Benchmark " + i, BigDecimal.ONE);
+			em.persist(a);
+			artikel.add(a);
+		}
+		trans.commit();
+		
+		return artikel.stream()
+		              .map(Artikel::getId)
+		              .collect(Collectors.toList());
+	}
+	
+	private static long messen(Function<List<Long>, List<Artikel>> finder, List<Long> ids) {
+		for (int i = 0; i < WARMUP; i++) {
+			finder.apply(ids);
+		}
+		
+		final long start = System.nanoTime();
+		for (int i = 0; i < ITERATIONEN; i++) {
+			finder.apply(ids);
+		}
+		return (System.nanoTime() - start) / ITERATIONEN;
+	}
+	
+	private static Set<Long> toIds(List<Artikel> artikel) {
+		return artikel.stream()
+		              .map(Artikel::getId)
+		              .collect(Collectors.toSet());
+	}
+	
+	/**
+	 * Bisherige Implementierung von ArtikelService.findArtikelByIds() als Vergleichsbasis
+	 * @param ids Liste der IDs
+	 * @return Liste der gefundenen Artikel
+	 */
+	private List<Artikel> findArtikelByIdsOr(List<Long> ids) {
+		// SELECT a
+		// FROM   Artikel a
+		// WHERE  a.id = ? OR a.id = ? OR ...
+		final CriteriaBuilder builder = em.getCriteriaBuilder();
+		final CriteriaQuery<Artikel> criteriaQuery = builder.createQuery(Artikel.class);
+		final Root<Artikel> a = criteriaQuery.from(Artikel.class);
+		final Path<Long> idPath = a.get(Artikel_.id);
+		final Predicate[] equals = ids.stream()
+		                              .map(id -> builder.equal(idPath, id))
+		                              .toArray(Predicate[]::new);
+		criteriaQuery.where(builder.or(equals));
+		
+		return em.createQuery(criteriaQuery)
+		         .getResultList();
+	}
+}
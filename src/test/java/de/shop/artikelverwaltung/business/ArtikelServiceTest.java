@@ -0,0 +1,265 @@
+/*
+ * Copyright (C) 2013 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.artikelverwaltung.business;
+
+import de.shop.artikelverwaltung.domain.Artikel;
+import de.shop.util.AbstractServiceTest;
+import java.lang.invoke.MethodHandles;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import javax.inject.Inject;
+import javax.transaction.HeuristicMixedException;
+import javax.transaction.HeuristicRollbackException;
+import javax.transaction.NotSupportedException;
+import javax.transaction.RollbackException;
+import javax.transaction.SystemException;
+import javax.transaction.UserTransaction;
+import javax.validation.ConstraintViolationException;
+import org.jboss.arquillian.junit.Arquillian;
+import org.jboss.arquillian.junit.InSequence;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static de.shop.util.TestConstants.BEGINN;
+import static de.shop.util.TestConstants.ENDE;
+import static de.shop.util.TestConstants.PASSWORD_ADMIN;
+import static de.shop.util.TestConstants.USERNAME_ADMIN;
+import static org.hamcrest.CoreMatchers.hasItem;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+
+
+/**
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+@RunWith(Arquillian.class)
+public class ArtikelServiceTest extends AbstractServiceTest {
+	private static final Long ARTIKEL_1_ID = Long.valueOf(301);
+	private static final Long ARTIKEL_2_ID = Long.valueOf(302);
+	private static final Long ARTIKEL_3_ID = Long.valueOf(303);
+	private static final Long ARTIKEL_4_ID = Long.valueOf(304);
+	private static final Long ARTIKEL_5_ID = Long.valueOf(305);
+	private static final Long ARTIKEL_ID_NICHT_VORHANDEN = Long.valueOf(999);
+	private static final String BEZEICHNUNG_TEIL = "Glas";
+	private static final String BEZEICHNUNG_EXAKT = "Glasklar";
+	private static final String BEZEICHNUNG_KLEIN = "glasklar";
+	private static final String BEZEICHNUNG_2_ZEICHEN = "Ti";
+	private static final String BEZEICHNUNG_1_ZEICHEN = "O";
+	private static final String BEZEICHNUNG_NEU = "Lampe 'Indexneu'";
+	private static final String BEZEICHNUNG_NEU_TEIL = "Indexneu";
+	private static final String BEZEICHNUNG_GEAENDERT = "Lampe 'Indexgeaendert'";
+	private static final String BEZEICHNUNG_GEAENDERT_TEIL = "Indexgeaendert";
+	private static final BigDecimal PREIS_NEU = new BigDecimal("19.99");
+	
+	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+	
+	@Inject
+	private ArtikelService as;
+	
+	@Inject
+	private ArtikelIndex index;
+	
+	@Test
+	@InSequence(1)
+	public void findArtikelByIdsVorhanden() {
+		LOGGER.finer("findArtikelByIdsVorhanden " + BEGINN);
+		
+		// Given: 5 IDs werden zu einer IN-Liste mit 8 Elementen aufgefuellt
+		final List<Long> ids = Arrays.asList(ARTIKEL_1_ID, ARTIKEL_2_ID, ARTIKEL_3_ID, ARTIKEL_4_ID, ARTIKEL_5_ID);
+		
+		// When
+		final List<Artikel> artikel = as.findArtikelByIds(ids);
+		
+		// Then
+		assertThat(artikel.size(), is(ids.size()));
+		assertThat(toIds(artikel), is(new HashSet<>(ids)));
+		
+		LOGGER.finer("findArtikelByIdsVorhanden " + ENDE);
+	}
+	
+	@Test
+	@InSequence(2)
+	public void findArtikelByIdsAusCache() {
+		LOGGER.finer("findArtikelByIdsAusCache " + BEGINN);
+		
+		// Given: ARTIKEL_1_ID ist nach dem 1. Aufruf im 2nd-Level-Cache, ARTIKEL_2_ID evtl. nicht
+		final List<Long> ids = Arrays.asList(ARTIKEL_1_ID, ARTIKEL_2_ID);
+		as.findArtikelByIds(Collections.singletonList(ARTIKEL_1_ID));
+		
+		// When
+		final List<Artikel> artikel = as.findArtikelByIds(ids);
+		
+		// Then
+		assertThat(artikel.size(), is(ids.size()));
+		assertThat(toIds(artikel), is(new HashSet<>(ids)));
+		
+		LOGGER.finer("findArtikelByIdsAusCache " + ENDE);
+	}
+	
+	@Test
+	@InSequence(3)
+	public void findArtikelByIdsMitDuplikatenUndNull() {
+		LOGGER.finer("findArtikelByIdsMitDuplikatenUndNull " + BEGINN);
+		
+		// Given
+		final List<Long> ids = Arrays.asList(ARTIKEL_1_ID, null, ARTIKEL_2_ID, ARTIKEL_1_ID);
+		
+		// When
+		final List<Artikel> artikel = as.findArtikelByIds(ids);
+		
+		// Then
+		assertThat(artikel.size(), is(2));
+		assertThat(toIds(artikel), is(new HashSet<>(Arrays.asList(ARTIKEL_1_ID, ARTIKEL_2_ID))));
+		
+		LOGGER.finer("findArtikelByIdsMitDuplikatenUndNull " + ENDE);
+	}
+	
+	@Test
+	@InSequence(4)
+	public void findArtikelByIdsTeilweiseNichtVorhanden() {
+		LOGGER.finer("findArtikelByIdsTeilweiseNichtVorhanden " + BEGINN);
+		
+		// Given: die IN-Liste wird mit der nicht vorhandenen ID aufgefuellt
+		final List<Long> ids = Arrays.asList(ARTIKEL_3_ID, ARTIKEL_4_ID, ARTIKEL_ID_NICHT_VORHANDEN);
+		
+		// When
+		final List<Artikel> artikel = as.findArtikelByIds(ids);
+		
+		// Then
+		assertThat(artikel.size(), is(2));
+		assertThat(toIds(artikel), is(new HashSet<>(Arrays.asList(ARTIKEL_3_ID, ARTIKEL_4_ID))));
+		
+		LOGGER.finer("findArtikelByIdsTeilweiseNichtVorhanden " + ENDE);
+	}
+	
+	@Test
+	@InSequence(5)
+	public void findArtikelByIdsNichtVorhanden() {
+		LOGGER.finer("findArtikelByIdsNichtVorhanden " + BEGINN);
+		
+		// Given
+		final List<Long> ids = Collections.singletonList(ARTIKEL_ID_NICHT_VORHANDEN);
+		
+		// When
+		thrown.expect(ConstraintViolationException.class);
+		as.findArtikelByIds(ids);
+	}
+	
+	@Test
+	@InSequence(10)
+	public void findArtikelByBezeichnungTeilstring() {
+		LOGGER.finer("findArtikelByBezeichnungTeilstring " + BEGINN);
+		
+		// Given: der Index ist nach der Suche nach verfuegbaren Artikeln aufgebaut
+		as.findVerfuegbareArtikel();
+		assertThat(index.isWarm(), is(true));
+		
+		// When
+		final List<Artikel> artikel = as.findArtikelByBezeichnung(BEZEICHNUNG_TEIL);
+		
+		// Then
+		assertThat(toIds(artikel), hasItem(ARTIKEL_4_ID));
+		artikel.forEach(a -> assertThat(a.getBezeichnung().contains(BEZEICHNUNG_TEIL), is(true)));
+		
+		LOGGER.finer("findArtikelByBezeichnungTeilstring " + ENDE);
+	}
+	
+	@Test
+	@InSequence(11)
+	public void findArtikelByBezeichnungKurz() {
+		LOGGER.finer("findArtikelByBezeichnungKurz " + BEGINN);
+		
+		// Given: zu kurz fuer ein Trigramm
+		as.findVerfuegbareArtikel();
+		
+		for (String bezeichnung : new String[] { BEZEICHNUNG_2_ZEICHEN, BEZEICHNUNG_1_ZEICHEN }) {
+			// When
+			final List<Artikel> artikel = as.findArtikelByBezeichnung(bezeichnung);
+			
+			// Then
+			assertThat(bezeichnung, toIds(artikel), hasItem(ARTIKEL_1_ID));
+			assertThat(bezeichnung, toIds(artikel), not(hasItem(ARTIKEL_2_ID)));
+			artikel.forEach(a -> assertThat(a.getBezeichnung(), a.getBezeichnung().contains(bezeichnung), is(true)));
+		}
+		
+		LOGGER.finer("findArtikelByBezeichnungKurz " + ENDE);
+	}
+	
+	@Test
+	@InSequence(12)
+	public void findArtikelByBezeichnungGrossKleinschreibung() {
+		LOGGER.finer("findArtikelByBezeichnungGrossKleinschreibung " + BEGINN);
+		
+		// Given
+		as.findVerfuegbareArtikel();
+		
+		// When
+		final List<Artikel> artikel = as.findArtikelByBezeichnung(BEZEICHNUNG_EXAKT);
+		
+		// Then: wie bei LIKE wird Gross-/Kleinschreibung unterschieden, obwohl die Trigramme klein sind
+		assertThat(toIds(artikel), hasItem(ARTIKEL_4_ID));
+		thrown.expect(ConstraintViolationException.class);
+		as.findArtikelByBezeichnung(BEZEICHNUNG_KLEIN);
+	}
+	
+	@Test
+	@InSequence(13)
+	public void findArtikelByBezeichnungNachCreateUndUpdate() throws RollbackException, HeuristicMixedException,
+	                                                                HeuristicRollbackException, SystemException,
+	                                                                NotSupportedException {
+		LOGGER.finer("findArtikelByBezeichnungNachCreateUndUpdate " + BEGINN);
+		
+		// Given
+		as.findVerfuegbareArtikel();
+		login(USERNAME_ADMIN, PASSWORD_ADMIN);
+		final UserTransaction trans = getUserTransaction();
+		
+		// When
+		trans.begin();
+		final Artikel artikel = as.createArtikel(new Artikel(BEZEICHNUNG_NEU, PREIS_NEU));
+		trans.commit();
+		final Long id = artikel.getId();
+		
+		// Then: der neue Artikel wird nach dem Commit ueber den Index gefunden
+		assertThat(toIds(as.findArtikelByBezeichnung(BEZEICHNUNG_NEU_TEIL)), hasItem(id));
+		
+		// When
+		trans.begin();
+		artikel.setBezeichnung(BEZEICHNUNG_GEAENDERT);
+		as.updateArtikel(artikel);
+		trans.commit();
+		
+		// Then: die neue Bezeichnung wird gefunden, die alte nicht mehr
+		assertThat(toIds(as.findArtikelByBezeichnung(BEZEICHNUNG_GEAENDERT_TEIL)), hasItem(id));
+		thrown.expect(ConstraintViolationException.class);
+		as.findArtikelByBezeichnung(BEZEICHNUNG_NEU_TEIL);
+	}
+	
+	private static Set<Long> toIds(List<Artikel> artikel) {
+		return artikel.stream()
+		              .map(Artikel::getId)
+		              .collect(Collectors.toSet());
+	}
+}
@@ -25,8 +25,11 @@ import de.shop.util.AbstractResourceTest;
 import java.lang.invoke.MethodHandles;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.List;
 import java.util.logging.Logger;
 import javax.ws.rs.core.Form;
+import javax.ws.rs.core.GenericType;
 import javax.ws.rs.core.Response;
 import org.jboss.arquillian.junit.Arquillian;
 import org.jboss.arquillian.junit.InSequence;
@@ -35,6 +38,7 @@ import org.junit.runner.RunWith;
 
 import static de.shop.util.TestConstants.ARTIKEL_URI;
 import static de.shop.util.TestConstants.BEGINN;
+import static de.shop.util.TestConstants.BESTELLUNGEN_BATCH_URI;
 import static de.shop.util.TestConstants.BESTELLUNGEN_ID_KUNDE_URI;
 import static de.shop.util.TestConstants.BESTELLUNGEN_ID_PATH_PARAM;
 import static de.shop.util.TestConstants.BESTELLUNGEN_ID_URI;
@@ -277,6 +281,89 @@ public class BestellungResourceTest extends AbstractResourceTest {
 		LOGGER.finer(ENDE);
 	}
 	
+	@Test
+	@InSequence(12)
+	public void bestellenBatch() throws URISyntaxException {
+		LOGGER.finer(BEGINN);
+		
+		// Given
+		final Long artikelId = ARTIKEL_ID_VORHANDEN_1;
+		final String artikelIdInvalid = ARTIKEL_ID_INVALID;
+		final String username = USERNAME;
+		final String password = PASSWORD;
+		
+		// 1. Bestellung mit einem vorhandenen Artikel
+		final Bestellung bestellung = new Bestellung();
+		Bestellposition bp = new Bestellposition();
+		bp.setArtikelUri(new URI(ARTIKEL_URI + "/" + artikelId));
+		bp.setAnzahl(1);
+		bestellung.addBestellposition(bp);
+		bestellung.setGesamtbetrag(ZERO);   // Dummy, damit @NotNull nicht verletzt wird
+		
+		// 2. Bestellung mit einer ungueltigen Artikel-ID
+		final Bestellung bestellungInvalid = new Bestellung();
+		bp = new Bestellposition();
+		bp.setArtikelUri(new URI(ARTIKEL_URI + "/" + artikelIdInvalid));
+		bp.setAnzahl(1);
+		bestellungInvalid.addBestellposition(bp);
+		bestellungInvalid.setGesamtbetrag(ZERO);
+		
+		// When
+		final Response response = getHttpsClient(username, password)
+				                  .target(BESTELLUNGEN_BATCH_URI)
+                                  .request()
+                                  .accept(APPLICATION_JSON)
+                                  .post(json(Arrays.asList(bestellung, bestellungInvalid)));
+		
+		// Then
+		assertThat(response.getStatus(), is(HTTP_OK));
+		final List<BestellungErgebnis> ergebnisse =
+				                       response.readEntity(new GenericType<List<BestellungErgebnis>>() { });
+		assertThat(ergebnisse.size(), is(2));
+		assertThat(ergebnisse.get(0).getStatus(), is(HTTP_CREATED));
+		assertThat(ergebnisse.get(0).getBestellungUri(), is(notNullValue()));
+		assertThat(ergebnisse.get(1).getStatus(), is(HTTP_BAD_REQUEST));
+		assertThat(ergebnisse.get(1).getFehlermeldung(), is(notNullValue()));
+		
+		LOGGER.finer(ENDE);
+	}
+	
+	@Test
+	@InSequence(13)
+	public void bestellenBatchOhneGueltigeArtikelId() throws URISyntaxException {
+		LOGGER.finer(BEGINN);
+		
+		// Given
+		final String artikelIdInvalid = ARTIKEL_ID_INVALID;
+		final String username = USERNAME;
+		final String password = PASSWORD;
+		
+		final Bestellung bestellung = new Bestellung();
+		final Bestellposition bp = new Bestellposition();
+		bp.setArtikelUri(new URI(ARTIKEL_URI + "/" + artikelIdInvalid));
+		bp.setAnzahl(1);
+		bestellung.addBestellposition(bp);
+		bestellung.setGesamtbetrag(ZERO);   // Dummy, damit @NotNull nicht verletzt wird
+		
+		// When
+		final Response response = getHttpsClient(username, password)
+				                  .target(BESTELLUNGEN_BATCH_URI)
+                                  .request()
+                                  .accept(APPLICATION_JSON)
+                                  .post(json(Arrays.asList(bestellung)));
+		
+		// Then
+		// Auch ohne eine einzige gueltige Artikel-ID ein Ergebnis pro Bestellung
+		assertThat(response.getStatus(), is(HTTP_OK));
+		final List<BestellungErgebnis> ergebnisse =
+				                       response.readEntity(new GenericType<List<BestellungErgebnis>>() { });
+		assertThat(ergebnisse.size(), is(1));
+		assertThat(ergebnisse.get(0).getStatus(), is(HTTP_BAD_REQUEST));
+		assertThat(ergebnisse.get(0).getFehlermeldung(), is(notNullValue()));
+		
+		LOGGER.finer(ENDE);
+	}
+	
 	@Test
 	@InSequence(20)
 	public void bestellenWarenkorb() throws URISyntaxException {
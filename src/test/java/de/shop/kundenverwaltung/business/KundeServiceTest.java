@@ -34,6 +34,7 @@ import java.util.Calendar;
 import java.util.Collection;
 import java.util.Date;
 import java.util.GregorianCalendar;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import java.util.logging.Logger;
@@ -96,11 +97,23 @@ public class KundeServiceTest extends AbstractServiceTest {
 	private static final String ORT_NEU = "Karlsruhe";
 	private static final String STRASSE_NEU = "Moltkestra\u00DFe";
 	private static final String HAUSNR_NEU = "40";
+	private static final String KUNDE_INDEX_NACHNAME = "Indexneu";
+	private static final String KUNDE_INDEX_EMAIL = KUNDE_INDEX_NACHNAME + "@" + KUNDE_INDEX_NACHNAME + ".de";
+	private static final String NACHNAME_PREFIX = "nachnameindex";
+	private static final String NACHNAME_INDEX_NEU = "Nachnameindexneu";
+	private static final String NACHNAME_INDEX_GEAENDERT = "Nachnameindexgeaendert";
+	private static final String NACHNAME_INDEX_EMAIL = NACHNAME_INDEX_NEU + "@" + NACHNAME_INDEX_NEU + ".de";
+	private static final String NACHNAME_INDEX_BULK = "Nachnameindexbulk";
+	private static final String NACHNAME_INDEX_BULK_EMAIL_1 = NACHNAME_INDEX_BULK + "1@" + NACHNAME_INDEX_BULK + ".de";
+	private static final String NACHNAME_INDEX_BULK_EMAIL_2 = NACHNAME_INDEX_BULK + "2@" + NACHNAME_INDEX_BULK + ".de";
 
 	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
 	
 	@Inject
 	private KundeService ks;
+	
+	@Inject
+	private KundeRemover remover;
 
 
 	@Test
@@ -570,4 +583,139 @@ public class KundeServiceTest extends AbstractServiceTest {
 		trans.rollback();
 		logout();
 	}
+	
+	@Test
+	@InSequence(60)
+	public void findIdsByPrefixNachCreateUndDelete() throws RollbackException, HeuristicMixedException,
+	                                                        HeuristicRollbackException, SystemException,
+	                                                        NotSupportedException {
+		LOGGER.finer("findIdsByPrefixNachCreateUndDelete " + BEGINN);
+		
+		// Given: der Index der Kunden-IDs ist bereits eingelesen
+		final String username = USERNAME_ADMIN;
+		final String password = PASSWORD_ADMIN;
+		login(username, password);
+		assertThat(ks.findIdsByPrefix(PRIVATKUNDE_ID_VORHANDEN.toString()).contains(PRIVATKUNDE_ID_VORHANDEN),
+		           is(true));
+		
+		final UserTransaction trans = getUserTransaction();
+		trans.begin();
+		final AbstractKunde kunde = ks.createKunde(neuerPrivatkunde(KUNDE_INDEX_NACHNAME, KUNDE_INDEX_EMAIL));
+		trans.commit();
+		final Long kundeId = kunde.getId();
+		final String prefix = String.valueOf(kundeId / 10);
+		
+		// When
+		final List<Long> idsNachCreate = ks.findIdsByPrefix(prefix);
+		
+		trans.begin();
+		ks.deleteKunde(ks.findKundeById(kundeId, FetchType.MIT_BESTELLUNGEN));
+		trans.commit();
+		final List<Long> idsNachDelete = ks.findIdsByPrefix(prefix);
+		
+		// Then
+		assertThat(idsNachCreate.contains(kundeId), is(true));
+		idsNachCreate.forEach(id -> assertThat(id.toString().startsWith(prefix), is(true)));
+		assertThat(idsNachDelete.contains(kundeId), is(false));
+		assertThat(idsNachDelete.size(), is(idsNachCreate.size() - 1));
+		
+		logout();
+		LOGGER.finer("findIdsByPrefixNachCreateUndDelete " + ENDE);
+	}
+	
+	@Test
+	@InSequence(61)
+	public void findNachnamenByPrefixNachCreateUpdateUndDelete() throws RollbackException, HeuristicMixedException,
+	                                                                    HeuristicRollbackException, SystemException,
+	                                                                    NotSupportedException {
+		LOGGER.finer("findNachnamenByPrefixNachCreateUpdateUndDelete " + BEGINN);
+		
+		// Given: das Verzeichnis der Nachnamen ist bereits eingelesen
+		final String username = USERNAME_ADMIN;
+		final String password = PASSWORD_ADMIN;
+		login(username, password);
+		ks.findNachnamenByPrefix(NACHNAME_PREFIX);
+		
+		final UserTransaction trans = getUserTransaction();
+		trans.begin();
+		final Long kundeId = ks.createKunde(neuerPrivatkunde(NACHNAME_INDEX_NEU, NACHNAME_INDEX_EMAIL)).getId();
+		trans.commit();
+		
+		// When
+		final List<String> nachnamenNachCreate = ks.findNachnamenByPrefix(NACHNAME_PREFIX);
+		
+		AbstractKunde kunde = ks.findKundeById(kundeId, FetchType.NUR_KUNDE);
+		kunde.setNachname(NACHNAME_INDEX_GEAENDERT);
+		trans.begin();
+		ks.updateKunde(kunde, false);
+		trans.commit();
+		final List<String> nachnamenNachUpdate = ks.findNachnamenByPrefix(NACHNAME_PREFIX);
+		
+		kunde = ks.findKundeById(kundeId, FetchType.MIT_BESTELLUNGEN);
+		trans.begin();
+		ks.deleteKunde(kunde);
+		trans.commit();
+		final List<String> nachnamenNachDelete = ks.findNachnamenByPrefix(NACHNAME_PREFIX);
+		
+		// Then: der Praefix wird ohne Gross-/Kleinschreibung verglichen
+		assertThat(nachnamenNachCreate.contains(NACHNAME_INDEX_NEU), is(true));
+		assertThat(nachnamenNachUpdate.contains(NACHNAME_INDEX_NEU), is(false));
+		assertThat(nachnamenNachUpdate.contains(NACHNAME_INDEX_GEAENDERT), is(true));
+		assertThat(nachnamenNachDelete.contains(NACHNAME_INDEX_GEAENDERT), is(false));
+		
+		logout();
+		LOGGER.finer("findNachnamenByPrefixNachCreateUpdateUndDelete " + ENDE);
+	}
+	
+	@Test
+	@InSequence(62)
+	public void findNachnamenByPrefixNachBulkDelete() throws RollbackException, HeuristicMixedException,
+	                                                         HeuristicRollbackException, SystemException,
+	                                                         NotSupportedException {
+		LOGGER.finer("findNachnamenByPrefixNachBulkDelete " + BEGINN);
+		
+		// Given: 2 Kunden ohne Bestellungen mit demselben Nachnamen
+		final String username = USERNAME_ADMIN;
+		final String password = PASSWORD_ADMIN;
+		login(username, password);
+		ks.findNachnamenByPrefix(NACHNAME_PREFIX);
+		
+		final UserTransaction trans = getUserTransaction();
+		trans.begin();
+		final Long kundeId1 = ks.createKunde(neuerPrivatkunde(NACHNAME_INDEX_BULK, NACHNAME_INDEX_BULK_EMAIL_1))
+		                        .getId();
+		final Long kundeId2 = ks.createKunde(neuerPrivatkunde(NACHNAME_INDEX_BULK, NACHNAME_INDEX_BULK_EMAIL_2))
+		                        .getId();
+		trans.commit();
+		
+		// When: Bulk Delete wie beim naechtlichen Loeschen, jeweils ein Chunk mit genau einem Kunden
+		final int anzahl1 = remover.deleteChunk(kundeId1 - 1, kundeId1);
+		final List<String> nachnamenNachDelete1 = ks.findNachnamenByPrefix(NACHNAME_PREFIX);
+		final int anzahl2 = remover.deleteChunk(kundeId2 - 1, kundeId2);
+		final List<String> nachnamenNachDelete2 = ks.findNachnamenByPrefix(NACHNAME_PREFIX);
+		remover.fortschrittLoeschen();
+		
+		// Then: der Nachname verschwindet erst mit dem letzten Kunden
+		assertThat(anzahl1, is(1));
+		assertThat(anzahl2, is(1));
+		assertThat(nachnamenNachDelete1.contains(NACHNAME_INDEX_BULK), is(true));
+		assertThat(nachnamenNachDelete2.contains(NACHNAME_INDEX_BULK), is(false));
+		
+		logout();
+		LOGGER.finer("findNachnamenByPrefixNachBulkDelete " + ENDE);
+	}
+	
+	private static Privatkunde neuerPrivatkunde(String nachname, String email) {
+		final Privatkunde kunde = new Privatkunde();
+		kunde.setNachname(nachname);
+		final Adresse adresse = new Adresse(PLZ_NEU, ORT_NEU, STRASSE_NEU, HAUSNR_NEU);
+		kunde.setAdresse(adresse);
+		adresse.setKunde(kunde);
+		kunde.setEmail(email);
+		kunde.setSeit(SEIT_NEU);
+		kunde.setAgbAkzeptiert(AGB_AKZEPTIERT_NEU);
+		kunde.setPassword(PASSWORD_NEU);
+		kunde.setPasswordWdh(PASSWORD_NEU);
+		return kunde;
+	}
 }
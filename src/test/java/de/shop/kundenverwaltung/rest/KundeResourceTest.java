@@ -37,9 +37,11 @@ import java.util.Calendar;
 import java.util.Collection;
 import java.util.Date;
 import java.util.GregorianCalendar;
+import java.util.List;
 import java.util.logging.Logger;
 import javax.ws.rs.core.Form;
 import javax.ws.rs.core.GenericType;
+import javax.ws.rs.core.Link;
 import javax.ws.rs.core.Response;
 import org.jboss.arquillian.junit.Arquillian;
 import org.jboss.arquillian.junit.InSequence;
@@ -51,9 +53,11 @@ import org.junit.runner.RunWith;
 
 import static de.shop.kundenverwaltung.rest.KundeResource.KUNDEN_GESCHLECHT_QUERY_PARAM;
 import static de.shop.kundenverwaltung.rest.KundeResource.KUNDEN_ID_PATH_PARAM;
+import static de.shop.kundenverwaltung.rest.KundeResource.KUNDEN_LIMIT_QUERY_PARAM;
 import static de.shop.kundenverwaltung.rest.KundeResource.KUNDEN_NACHNAME_QUERY_PARAM;
 import static de.shop.util.Constants.FIRST_LINK;
 import static de.shop.util.Constants.LAST_LINK;
+import static de.shop.util.Constants.NEXT_LINK;
 import static de.shop.util.Constants.SELF_LINK;
 import static de.shop.util.TestConstants.ARTIKEL_URI;
 import static de.shop.util.TestConstants.BEGINN;
@@ -411,6 +415,48 @@ public class KundeResourceTest extends AbstractResourceTest {
 		LOGGER.finer(ENDE);
 	}
 	
+	@Test
+	@InSequence(31)
+	public void findKundenSeitenweise() {
+		LOGGER.finer(BEGINN);
+		
+		// Given
+		final String username = USERNAME_ADMIN;
+		final String password = PASSWORD_ADMIN;
+		final int limit = 2;
+		
+		// When
+		Response response = getHttpsClient(username, password)
+				            .target(KUNDEN_URI)
+                            .queryParam(KUNDEN_LIMIT_QUERY_PARAM, limit)
+                            .request()
+                            .accept(APPLICATION_JSON)
+                            .get();
+		
+		// Then
+		assertThat(response.getStatus(), is(HTTP_OK));
+		final Link next = response.getLink(NEXT_LINK);
+		assertThat(next, is(notNullValue()));
+		final List<AbstractKunde> ersteSeite = response.readEntity(new GenericType<List<AbstractKunde>>() { });
+		assertThat(ersteSeite.size(), is(limit));
+		final Long lastId = ersteSeite.get(limit - 1).getId();
+		
+		// When
+		response = getHttpsClient(username, password)
+				   .target(next.getUri())
+                   .request()
+                   .accept(APPLICATION_JSON)
+                   .get();
+		
+		// Then
+		assertThat(response.getStatus(), is(HTTP_OK));
+		final List<AbstractKunde> zweiteSeite = response.readEntity(new GenericType<List<AbstractKunde>>() { });
+		assertThat(zweiteSeite.isEmpty(), is(false));
+		zweiteSeite.forEach(k -> assertThat(k.getId() > lastId, is(true)));
+		
+		LOGGER.finer(ENDE);
+	}
+	
 	@Test
 	@InSequence(40)
 	public void createPrivatkunde() throws URISyntaxException {
@@ -17,10 +17,14 @@
 
 package de.shop.util;
 
+import de.shop.artikelverwaltung.business.ArtikelServiceTest;
 import de.shop.bestellverwaltung.business.BestellungServiceTest;
 import de.shop.kundenverwaltung.business.KundeServiceConcurrencyHelper;
 import de.shop.kundenverwaltung.business.KundeServiceConcurrencyTest;
 import de.shop.kundenverwaltung.business.KundeServiceTest;
+import de.shop.util.persistence.OutboxServiceTest;
+import de.shop.util.persistence.OutboxTestObserver;
+import de.shop.util.rest.MessagesTest;
 import java.lang.invoke.MethodHandles;
 import java.util.logging.Logger;
 import javax.inject.Inject;
@@ -56,7 +60,11 @@ public abstract class AbstractServiceTest {
                                                      KundeServiceTest.class,
                                                      KundeServiceConcurrencyHelper.class,
                                                      KundeServiceConcurrencyTest.class,
-                                                     BestellungServiceTest.class, };
+                                                     BestellungServiceTest.class,
+                                                     OutboxServiceTest.class,
+                                                     OutboxTestObserver.class,
+                                                     ArtikelServiceTest.class,
+                                                     MessagesTest.class, };
 	
 	@Inject
 	private UserTransaction trans;
@@ -59,6 +59,7 @@ public final class TestConstants {
 	public static final String BESTELLUNGEN_ID_URI = BESTELLUNGEN_URI + "/{" + BESTELLUNGEN_ID_PATH_PARAM + "}";
 	public static final String BESTELLUNGEN_ID_KUNDE_URI = BESTELLUNGEN_ID_URI + "/kunde";
 	public static final String WARENKORBPOSITION_URI = BESTELLUNGEN_URI + "/warenkorbposition";
+	public static final String BESTELLUNGEN_BATCH_URI = BESTELLUNGEN_URI + "/batch";
 	
 	public static final String ARTIKEL_URI = BASE_URI + "/artikel";
 	public static final String ARTIKEL_ID_URI = ARTIKEL_URI + "/{" + ArtikelResource.ARTIKEL_ID_PATH_PARAM + "}";
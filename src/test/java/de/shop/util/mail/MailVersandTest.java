@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2013 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.util.mail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import javax.mail.Message.RecipientType;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.hasItems;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+
+
+/**
+ * Test von MailVersand gegen einen lokalen SMTP-Ersatz, ohne Applikationsserver
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+public class MailVersandTest {
+	private static final String ABSENDER = "absender@hs-karlsruhe.de";
+	private static final String EMPFAENGER_1 = "empfaenger1@hs-karlsruhe.de";
+	private static final String EMPFAENGER_2 = "empfaenger2@hs-karlsruhe.de";
+	private static final String EMPFAENGER_3 = "empfaenger3@hs-karlsruhe.de";
+	private static final String EMPFAENGER_SPAETER = "spaeter@hs-karlsruhe.de";
+	private static final String EMPFAENGER_UNGUELTIG = "ungueltig@hs-karlsruhe.de";
+	private static final String ANTWORT_SPAETER = "451 4.7.1 Bitte spaeter erneut versuchen";
+	private static final String ANTWORT_UNGUELTIG = "550 5.1.1 Unbekannter Empfaenger";
+	
+	// Ohne erreichbaren Mailserver nur die Wiederholungen mit Backoff, nicht das Warten auf eine Verbindung
+	private static final long MAX_DAUER_MILLIS = 5_000;
+	
+	private SmtpAttrappe smtp;
+	private Session session;
+	private MailVersand mailVersand;
+	
+	@Before
+	public void before() throws IOException {
+		smtp = new SmtpAttrappe();
+		session = session(smtp.getPort());
+		mailVersand = new MailVersand(session);
+	}
+	
+	@After
+	public void after() throws IOException {
+		smtp.close();
+	}
+	
+	@Test
+	public void verbindungWiederverwenden() throws MessagingException {
+		// Given
+		final List<MimeMessage> batch1 = messages(EMPFAENGER_1, EMPFAENGER_2, EMPFAENGER_3);
+		final List<MimeMessage> batch2 = messages(EMPFAENGER_1, EMPFAENGER_2, EMPFAENGER_3);
+		
+		// When
+		final List<MimeMessage> nichtGesendet1 = mailVersand.senden(batch1);
+		final List<MimeMessage> nichtGesendet2 = mailVersand.senden(batch2);
+		
+		// Then
+		assertThat(nichtGesendet1.isEmpty(), is(true));
+		assertThat(nichtGesendet2.isEmpty(), is(true));
+		assertThat(smtp.getEmpfangen().size(), is(6));
+		assertThat(mailVersand.getAnzahlGesendet(), is(6L));
+		
+		// Eine Verbindung fuer beide Batches und nur ein NOOP, um sie vor dem 2. Batch zu pruefen
+		assertThat(smtp.getAnzahlVerbindungen(), is(1));
+		assertThat(smtp.getAnzahlNoop(), is(1));
+	}
+	
+	@Test
+	public void voruebergehenderFehler() throws MessagingException {
+		// Given
+		smtp.setAntwort(EMPFAENGER_SPAETER, ANTWORT_SPAETER);
+		final List<MimeMessage> messages = messages(EMPFAENGER_1, EMPFAENGER_SPAETER, EMPFAENGER_2);
+		
+		// When
+		final List<MimeMessage> nichtGesendet = mailVersand.senden(messages);
+		
+		// Then
+		// Die Email mit 4xx wird zum spaeteren Versand zurueckgegeben, die folgende trotzdem versendet
+		assertThat(nichtGesendet.size(), is(1));
+		assertThat(nichtGesendet.get(0), is(messages.get(1)));
+		assertThat(smtp.getEmpfangen(), hasItems(EMPFAENGER_1, EMPFAENGER_2));
+		assertThat(smtp.getEmpfangen(), not(hasItems(EMPFAENGER_SPAETER)));
+		assertThat(mailVersand.getAnzahlZurueckgestellt(), is(1L));
+	}
+	
+	@Test
+	public void dauerhafterFehler() throws MessagingException {
+		// Given
+		smtp.setAntwort(EMPFAENGER_UNGUELTIG, ANTWORT_UNGUELTIG);
+		final List<MimeMessage> messages = messages(EMPFAENGER_1, EMPFAENGER_UNGUELTIG, EMPFAENGER_2);
+		
+		// When
+		final List<MimeMessage> nichtGesendet = mailVersand.senden(messages);
+		
+		// Then
+		// Eine Email an einen ungueltigen Empfaenger wird verworfen
+		assertThat(nichtGesendet.isEmpty(), is(true));
+		assertThat(smtp.getEmpfangen(), hasItems(EMPFAENGER_1, EMPFAENGER_2));
+		assertThat(mailVersand.getAnzahlFehlgeschlagen(), is(1L));
+	}
+	
+	@Test
+	public void mailserverNichtErreichbar() throws MessagingException, IOException {
+		// Given
+		smtp.close();
+		final List<MimeMessage> messages = messages(EMPFAENGER_1, EMPFAENGER_2);
+		
+		// When
+		final long start = System.currentTimeMillis();
+		final List<MimeMessage> nichtGesendet1 = mailVersand.senden(messages);
+		final List<MimeMessage> nichtGesendet2 = mailVersand.senden(messages);
+		final long dauer = System.currentTimeMillis() - start;
+		
+		// Then
+		// Alle Emails werden zurueckgegeben, ohne auf eine Verbindung aus dem Pool zu warten
+		assertThat(nichtGesendet1, is(messages));
+		assertThat(nichtGesendet2, is(messages));
+		assertThat(dauer < MAX_DAUER_MILLIS, is(true));
+	}
+	
+	private static Session session(int port) {
+		final Properties props = new Properties();
+		props.setProperty("mail.transport.protocol", "smtp");
+		props.setProperty("mail.smtp.host", "localhost");
+		props.setProperty("mail.smtp.port", String.valueOf(port));
+		props.setProperty("mail.smtp.connectiontimeout", "1000");
+		props.setProperty("mail.smtp.timeout", "1000");
+		return Session.getInstance(props);
+	}
+	
+	private List<MimeMessage> messages(String... empfaenger) throws MessagingException {
+		final List<MimeMessage> messages = new ArrayList<>(empfaenger.length);
+		for (String adresse : empfaenger) {
+			final MimeMessage message = new MimeMessage(session);
+			message.setFrom(new InternetAddress(ABSENDER));
+			message.setRecipient(RecipientType.TO, new InternetAddress(adresse));
+			message.setSubject("Test");
+			message.setText("Test");
+			message.saveChanges();
+			messages.add(message);
+		}
+		return messages;
+	}
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2013 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.util.mail;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+
+/**
+ * Minimaler SMTP-Server auf localhost fuer Tests ohne echten Mailserver. Fuer einzelne Empfaenger kann die
+ * Antwort auf RCPT TO vorgegeben werden, z.B. "451 ..." fuer einen voruebergehenden Fehler.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+public class SmtpAttrappe implements AutoCloseable {
+	private static final String OK = "250 OK";
+	
+	private final ServerSocket serverSocket;
+	private final Queue<Socket> sockets = new ConcurrentLinkedQueue<>();
+	
+	// Empfaenger -> Antwort auf RCPT TO
+	private final Map<String, String> antworten = new ConcurrentHashMap<>();
+	
+	private final List<String> empfangen = new CopyOnWriteArrayList<>();
+	private final AtomicInteger anzahlVerbindungen = new AtomicInteger();
+	private final AtomicInteger anzahlNoop = new AtomicInteger();
+	
+	public SmtpAttrappe() throws IOException {
+		serverSocket = new ServerSocket(0, 0, InetAddress.getLoopbackAddress());
+		final Thread thread = new Thread(this::annehmen, "SmtpAttrappe");
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+	
+	public void setAntwort(String empfaenger, String antwort) {
+		antworten.put(empfaenger, antwort);
+	}
+	
+	/**
+	 * Empfaenger der angenommenen Emails
+	 * @return Je angenommener Email und Empfaenger ein Eintrag
+	 */
+	public List<String> getEmpfangen() {
+		return empfangen;
+	}
+	
+	public int getAnzahlVerbindungen() {
+		return anzahlVerbindungen.get();
+	}
+	
+	public int getAnzahlNoop() {
+		return anzahlNoop.get();
+	}
+	
+	@Override
+	public void close() throws IOException {
+		serverSocket.close();
+		for (Socket socket : sockets) {
+			socket.close();
+		}
+	}
+	
+	private void annehmen() {
+		while (!serverSocket.isClosed()) {
+			final Socket socket;
+			try {
+				socket = serverSocket.accept();
+			}
+			catch (IOException e) {
+				// Der ServerSocket wurde geschlossen
+				return;
+			}
+			sockets.add(socket);
+			anzahlVerbindungen.incrementAndGet();
+			
+			final Thread thread = new Thread(() -> bedienen(socket), "SmtpAttrappe-" + anzahlVerbindungen.get());
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+	
+	private void bedienen(Socket socket) {
+		try (final BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), US_ASCII));
+		     final Writer out = new OutputStreamWriter(socket.getOutputStream(), US_ASCII)) {
+			antworten(out, "220 localhost SMTP-Attrappe");
+			
+			final List<String> empfaenger = new ArrayList<>();
+			String zeile;
+			while ((zeile = in.readLine()) != null) {
+				final String befehl = zeile.length() < 4 ? zeile : zeile.substring(0, 4).toUpperCase();
+				switch (befehl) {
+					case "EHLO":
+					case "HELO":
+						antworten(out, "250 localhost");
+						break;
+					case "MAIL":
+					case "RSET":
+						empfaenger.clear();
+						antworten(out, OK);
+						break;
+					case "NOOP":
+						anzahlNoop.incrementAndGet();
+						antworten(out, OK);
+						break;
+					case "RCPT":
+						final String adresse = zeile.substring(zeile.indexOf('<') + 1, zeile.lastIndexOf('>'));
+						final String antwort = antworten.getOrDefault(adresse, OK);
+						if (antwort.startsWith("2")) {
+							empfaenger.add(adresse);
+						}
+						antworten(out, antwort);
+						break;
+					case "DATA":
+						antworten(out, "354 Ende mit <CRLF>.<CRLF>");
+						while ((zeile = in.readLine()) != null && !".".equals(zeile)) {
+							// Inhalt der Email wird nicht benoetigt
+							continue;
+						}
+						empfangen.addAll(empfaenger);
+						empfaenger.clear();
+						antworten(out, OK);
+						break;
+					case "QUIT":
+						antworten(out, "221 Bye");
+						return;
+					default:
+						antworten(out, "500 Unbekannter Befehl");
+						break;
+				}
+			}
+		}
+		catch (IOException e) {
+			// Die Verbindung wurde vom Client oder durch close() beendet
+			return;
+		}
+		finally {
+			sockets.remove(socket);
+		}
+	}
+	
+	private static void antworten(Writer out, String antwort) throws IOException {
+		out.write(antwort + "\r\n");
+		out.flush();
+	}
+}
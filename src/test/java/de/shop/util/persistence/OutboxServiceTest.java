@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2013 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.util.persistence;
+
+import de.shop.util.AbstractServiceTest;
+import java.lang.invoke.MethodHandles;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Logger;
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+import javax.transaction.HeuristicMixedException;
+import javax.transaction.HeuristicRollbackException;
+import javax.transaction.NotSupportedException;
+import javax.transaction.RollbackException;
+import javax.transaction.SystemException;
+import javax.transaction.UserTransaction;
+import org.jboss.arquillian.junit.Arquillian;
+import org.jboss.arquillian.junit.InSequence;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static de.shop.util.TestConstants.BEGINN;
+import static de.shop.util.TestConstants.ENDE;
+import static de.shop.util.persistence.OutboxTyp.NEUER_KUNDE;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+
+/**
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+@RunWith(Arquillian.class)
+public class OutboxServiceTest extends AbstractServiceTest {
+	// Mindestens ein periodischer Durchlauf des OutboxDispatcher
+	private static final long TIMEOUT_MILLIS = 60_000;
+	private static final long INTERVALL_MILLIS = 100;
+	
+	private static final Long REFERENZ_ID_1 = Long.valueOf(-11);
+	private static final Long REFERENZ_ID_FEHLGESCHLAGEN = Long.valueOf(-12);
+	private static final Long REFERENZ_ID_3 = Long.valueOf(-13);
+	private static final Long REFERENZ_ID_4 = Long.valueOf(-21);
+	private static final Long REFERENZ_ID_EXCEPTION = Long.valueOf(-22);
+	private static final Long REFERENZ_ID_6 = Long.valueOf(-23);
+	
+	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+	
+	@Inject
+	private OutboxService os;
+	
+	@Inject
+	private OutboxDispatcher dispatcher;
+	
+	@Inject
+	private OutboxTestObserver observer;
+	
+	@Inject
+	private EntityManager em;
+	
+	@Test
+	@InSequence(1)
+	public void fehlgeschlagenerEintragHaeltNichtAuf() throws RollbackException, HeuristicMixedException,
+	                                                         HeuristicRollbackException, SystemException,
+	                                                         NotSupportedException, InterruptedException {
+		LOGGER.finer("fehlgeschlagenerEintragHaeltNichtAuf " + BEGINN);
+		
+		// Given
+		final Long referenzId1 = REFERENZ_ID_1;
+		final Long referenzIdFehlgeschlagen = REFERENZ_ID_FEHLGESCHLAGEN;
+		final Long referenzId3 = REFERENZ_ID_3;
+		observer.setFehlgeschlagen(referenzIdFehlgeschlagen, true);
+		
+		// When
+		final UserTransaction trans = getUserTransaction();
+		trans.begin();
+		os.einreihen(NEUER_KUNDE, referenzId1);
+		os.einreihen(NEUER_KUNDE, referenzIdFehlgeschlagen);
+		os.einreihen(NEUER_KUNDE, referenzId3);
+		trans.commit();
+		
+		// Then
+		// Der Eintrag nach dem fehlgeschlagenen wird trotzdem ausgeliefert
+		warten(() -> observer.getAnzahlAusgeliefert(referenzId3) > 0);
+		assertThat(observer.getAnzahlAusgeliefert(referenzId1), is(1));
+		assertThat(observer.getAnzahlAusgeliefert(referenzIdFehlgeschlagen), is(0));
+		assertThat(findVersuche(referenzIdFehlgeschlagen) > 0, is(true));
+		
+		// Checkpoint: beim naechsten Durchlauf wird nur der fehlgeschlagene Eintrag erneut ausgeliefert
+		observer.setFehlgeschlagen(referenzIdFehlgeschlagen, false);
+		dispatcher.leerenAsynchron();
+		warten(() -> observer.getAnzahlAusgeliefert(referenzIdFehlgeschlagen) > 0);
+		assertThat(observer.getAnzahlAusgeliefert(referenzId1), is(1));
+		assertThat(observer.getAnzahlAusgeliefert(referenzIdFehlgeschlagen), is(1));
+		assertThat(observer.getAnzahlAusgeliefert(referenzId3), is(1));
+		assertThat(findAnzahlEintraege(referenzIdFehlgeschlagen), is(0L));
+		
+		LOGGER.finer("fehlgeschlagenerEintragHaeltNichtAuf " + ENDE);
+	}
+	
+	@Test
+	@InSequence(2)
+	public void exceptionImBatch() throws RollbackException, HeuristicMixedException, HeuristicRollbackException,
+	                                      SystemException, NotSupportedException, InterruptedException {
+		LOGGER.finer("exceptionImBatch " + BEGINN);
+		
+		// Given
+		final Long referenzId4 = REFERENZ_ID_4;
+		final Long referenzIdException = REFERENZ_ID_EXCEPTION;
+		final Long referenzId6 = REFERENZ_ID_6;
+		observer.setException(referenzIdException, true);
+		
+		// When
+		final UserTransaction trans = getUserTransaction();
+		trans.begin();
+		os.einreihen(NEUER_KUNDE, referenzId4);
+		os.einreihen(NEUER_KUNDE, referenzIdException);
+		os.einreihen(NEUER_KUNDE, referenzId6);
+		trans.commit();
+		
+		// Then
+		// Nach dem Rollback des Batches werden die Eintraege einzeln ausgeliefert: at-least-once
+		warten(() -> findAnzahlEintraege(referenzId6) == 0);
+		assertThat(observer.getAnzahlAusgeliefert(referenzId4) > 0, is(true));
+		assertThat(observer.getAnzahlAusgeliefert(referenzIdException), is(0));
+		assertThat(observer.getAnzahlAusgeliefert(referenzId6) > 0, is(true));
+		assertThat(findAnzahlEintraege(referenzId4), is(0L));
+		assertThat(findVersuche(referenzIdException) > 0, is(true));
+		
+		observer.setException(referenzIdException, false);
+		dispatcher.leerenAsynchron();
+		warten(() -> observer.getAnzahlAusgeliefert(referenzIdException) > 0);
+		assertThat(findAnzahlEintraege(referenzIdException), is(0L));
+		
+		LOGGER.finer("exceptionImBatch " + ENDE);
+	}
+	
+	private int findVersuche(Long referenzId) {
+		return em.createQuery("SELECT e.versuche FROM OutboxEintrag e WHERE e.referenzId = :referenzId",
+		                      Integer.class)
+		         .setParameter("referenzId", referenzId)
+		         .getResultList()
+		         .stream()
+		         .findFirst()
+		         .orElse(0);
+	}
+	
+	private long findAnzahlEintraege(Long referenzId) {
+		return em.createQuery("SELECT COUNT(e) FROM OutboxEintrag e WHERE e.referenzId = :referenzId", Long.class)
+		         .setParameter("referenzId", referenzId)
+		         .getSingleResult();
+	}
+	
+	private static void warten(BooleanSupplier bedingung) throws InterruptedException {
+		final long ende = System.currentTimeMillis() + TIMEOUT_MILLIS;
+		while (!bedingung.getAsBoolean()) {
+			assertThat("Timeout beim Warten auf den OutboxDispatcher", System.currentTimeMillis() < ende, is(true));
+			Thread.sleep(INTERVALL_MILLIS);
+		}
+	}
+}
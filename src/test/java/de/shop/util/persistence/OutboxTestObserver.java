@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2013 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.util.persistence;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+
+
+/**
+ * Liefert die Outbox-Eintraege der Tests aus und zaehlt, wie oft jeder ausgeliefert wurde. Die Tests
+ * verwenden negative Referenz-IDs, damit die Observer fuer Emails keine Kunden oder Bestellungen finden.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+@ApplicationScoped
+public class OutboxTestObserver {
+	// Wird als fehlgeschlagen gemeldet
+	private final Set<Long> fehlgeschlagen = ConcurrentHashMap.newKeySet();
+	
+	// Wirft eine Exception, so dass der gesamte Batch zurueckgerollt wird
+	private final Set<Long> exception = ConcurrentHashMap.newKeySet();
+	
+	private final ConcurrentMap<Long, AtomicInteger> ausgeliefert = new ConcurrentHashMap<>();
+	
+	public void onBatch(@Observes OutboxBatch batch) {
+		for (Long referenzId : batch.getReferenzIds()) {
+			if (referenzId >= 0) {
+				continue;
+			}
+			if (exception.contains(referenzId)) {
+				throw new IllegalStateException("Auslieferung fehlgeschlagen: " + referenzId);
+			}
+			if (fehlgeschlagen.contains(referenzId)) {
+				batch.fehlgeschlagen(referenzId);
+				continue;
+			}
+			ausgeliefert.computeIfAbsent(referenzId, id -> new AtomicInteger())
+			            .incrementAndGet();
+		}
+	}
+	
+	public void setFehlgeschlagen(Long referenzId, boolean wert) {
+		if (wert) {
+			fehlgeschlagen.add(referenzId);
+		}
+		else {
+			fehlgeschlagen.remove(referenzId);
+		}
+	}
+	
+	public void setException(Long referenzId, boolean wert) {
+		if (wert) {
+			exception.add(referenzId);
+		}
+		else {
+			exception.remove(referenzId);
+		}
+	}
+	
+	public int getAnzahlAusgeliefert(Long referenzId) {
+		final AtomicInteger anzahl = ausgeliefert.get(referenzId);
+		return anzahl == null ? 0 : anzahl.get();
+	}
+}
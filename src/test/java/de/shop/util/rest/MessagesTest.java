@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2013 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.util.rest;
+
+import de.shop.util.AbstractServiceTest;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.logging.Logger;
+import javax.inject.Inject;
+import javax.ws.rs.core.HttpHeaders;
+import org.jboss.arquillian.junit.Arquillian;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static de.shop.util.TestConstants.BEGINN;
+import static de.shop.util.TestConstants.ENDE;
+import static javax.ws.rs.core.HttpHeaders.ACCEPT_LANGUAGE;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+@RunWith(Arquillian.class)
+public class MessagesTest extends AbstractServiceTest {
+	private static final String KEY = "kunde.notFound.id";
+	private static final Long ID = Long.valueOf(4711);
+	private static final int ANZAHL_HEADER = 1000;
+	
+	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+	
+	@Inject
+	private Messages messages;
+	
+	@Test
+	public void getMessage() {
+		LOGGER.finer("getMessage " + BEGINN);
+		
+		// When
+		final String deutsch = messages.getMessage(headers("de", Locale.GERMAN), KEY, ID);
+		final String englisch = messages.getMessage(headers("en-US", Locale.US), KEY, ID);
+		final String ohne = messages.getMessage(null, KEY, ID);
+		
+		// Then: formatiert mit der konfigurierten Locale, d.h. mit "de" bzw. "en"
+		assertThat(deutsch, is("Kein Kunde mit der ID 4.711 gefunden."));
+		assertThat(englisch, is("No customer for the id 4,711 was found."));
+		assertThat(ohne, is(deutsch));
+		
+		LOGGER.finer("getMessage " + ENDE);
+	}
+	
+	@Test
+	public void getMessageVieleAcceptLanguages() {
+		LOGGER.finer("getMessageVieleAcceptLanguages " + BEGINN);
+		
+		// Given: beliebige Werte fuer Accept-Language, wie sie ein Client senden kann
+		final int anzahlFormate = messages.getAnzahlFormate();
+		
+		for (int i = 0; i < ANZAHL_HEADER; i++) {
+			final Locale region = new Locale("de", "X" + i);
+			final Locale unbekannt = new Locale("x" + i);
+			
+			// When
+			final String deutsch = messages.getMessage(headers("de-X" + i, region), KEY, ID);
+			final String englisch = messages.getMessage(headers("x" + i + ",en;q=0.5", unbekannt, Locale.ENGLISH),
+			                                            KEY, ID);
+			
+			// Then: auch mit der Locale des Clients wird mit der konfigurierten Locale formatiert
+			assertThat(deutsch, is("Kein Kunde mit der ID 4.711 gefunden."));
+			assertThat(englisch, is("No customer for the id 4,711 was found."));
+		}
+		assertThat(messages.getAnzahlFormate(), is(anzahlFormate));
+		assertTrue(messages.getAnzahlAcceptLanguages() <= Messages.MAX_ACCEPT_LANGUAGES);
+		
+		LOGGER.finer("getMessageVieleAcceptLanguages " + ENDE);
+	}
+	
+	/**
+	 * HttpHeaders ausserhalb eines Requests: nur Accept-Language wird von Messages benoetigt
+	 */
+	private static HttpHeaders headers(String acceptLanguage, Locale... locales) {
+		final List<Locale> acceptableLanguages = Arrays.asList(locales);
+		final InvocationHandler handler = (proxy, method, args) -> {
+			switch (method.getName()) {
+				case "getHeaderString":
+					return ACCEPT_LANGUAGE.equals(args[0]) ? acceptLanguage : null;
+				case "getAcceptableLanguages":
+					return acceptableLanguages;
+				default:
+					throw new UnsupportedOperationException(method.getName());
+			}
+		};
+		return (HttpHeaders) Proxy.newProxyInstance(HttpHeaders.class.getClassLoader(),
+		                                            new Class<?>[] { HttpHeaders.class },
+		                                            handler);
+	}
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2013 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.util.rest;
+
+import de.shop.kundenverwaltung.rest.KundeResource;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.util.function.LongFunction;
+import java.util.logging.Logger;
+import javax.ws.rs.core.UriBuilder;
+import javax.ws.rs.core.UriInfo;
+import org.junit.Before;
+import org.junit.Test;
+
+import static de.shop.util.TestConstants.BEGINN;
+import static de.shop.util.TestConstants.ENDE;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+
+/**
+ * Microbenchmark fuer UriHelper.getUri(): bisheriger Aufbau mit UriBuilder je Link im Vergleich zu den
+ * gecachten Link-Templates. Die Kosten je Link werden protokolliert. Der Benchmark laeuft wie UriHelperTest
+ * ohne Applikationsserver, aber nicht mit den uebrigen Tests, sondern nur im Profil "benchmark"
+ * (mvn test -Pbenchmark).
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+public class UriHelperBenchmarkTest {
+	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+	
+	private static final URI BASE_URI = URI.create("https://localhost:8443/shop/rest/");
+	private static final String FIND_KUNDE_BY_ID = "findKundeById";
+	private static final String FIND_BESTELLUNGEN_BY_KUNDE_ID = "findBestellungenByKundeId";
+	private static final int[] ANZAHL_LINKS = { 1, 100, 10_000 };
+	private static final int WARMUP = 20;
+	private static final int ITERATIONEN = 50;
+	
+	private UriHelper uriHelper;
+	
+	@Before
+	public void before() {
+		uriHelper = new UriHelper();
+	}
+	
+	@Test
+	public void getUri() {
+		LOGGER.finer(BEGINN);
+		
+		// Given
+		final UriInfo uriInfo = uriInfo(BASE_URI);
+		
+		for (int anzahl : ANZAHL_LINKS) {
+			// When
+			final long nanosBuilder = messen(anzahl, id -> getUriBuilder(KundeResource.class, FIND_KUNDE_BY_ID,
+			                                                              id, uriInfo));
+			final long nanosTemplate = messen(anzahl, id -> uriHelper.getUri(KundeResource.class, FIND_KUNDE_BY_ID,
+			                                                                  id, uriInfo));
+			LOGGER.info(String.format("getUri fuer %5d Links: UriBuilder %6d ns/Link, Template %6d ns/Link",
+			                          anzahl, nanosBuilder, nanosTemplate));
+		}
+		
+		// Then
+		for (long id = 1; id <= 1000; id++) {
+			assertThat(uriHelper.getUri(KundeResource.class, FIND_KUNDE_BY_ID, id, uriInfo),
+			           is(getUriBuilder(KundeResource.class, FIND_KUNDE_BY_ID, id, uriInfo)));
+			assertThat(uriHelper.getUri(KundeResource.class, FIND_BESTELLUNGEN_BY_KUNDE_ID, id, uriInfo),
+			           is(getUriBuilder(KundeResource.class, FIND_BESTELLUNGEN_BY_KUNDE_ID, id, uriInfo)));
+		}
+		assertThat(uriHelper.getUri(KundeResource.class, uriInfo),
+		           is(uriInfo.getBaseUriBuilder().path(KundeResource.class).build()));
+		
+		LOGGER.finer(ENDE);
+	}
+	
+	/**
+	 * Mittlere Dauer je Link, wenn wie in einer Liste fuer jede ID ein Link erzeugt wird
+	 */
+	private static long messen(int anzahl, LongFunction<URI> linkErzeugen) {
+		for (int i = 0; i < WARMUP; i++) {
+			for (long id = 1; id <= anzahl; id++) {
+				linkErzeugen.apply(id);
+			}
+		}
+		
+		final long start = System.nanoTime();
+		for (int i = 0; i < ITERATIONEN; i++) {
+			for (long id = 1; id <= anzahl; id++) {
+				linkErzeugen.apply(id);
+			}
+		}
+		return (System.nanoTime() - start) / ((long) ITERATIONEN * anzahl);
+	}
+	
+	/**
+	 * Bisherige Implementierung von UriHelper.getUri() als Vergleichsbasis
+	 */
+	private static URI getUriBuilder(Class<?> clazz, String methodName, Long id, UriInfo uriInfo) {
+		return uriInfo.getBaseUriBuilder()
+		              .path(clazz)
+		              .path(clazz, methodName)
+		              .build(id);
+	}
+	
+	/**
+	 * UriInfo ausserhalb eines Requests: nur die Basis-URI wird von UriHelper benoetigt
+	 */
+	private static UriInfo uriInfo(URI baseUri) {
+		return (UriInfo) Proxy.newProxyInstance(UriInfo.class.getClassLoader(),
+		                                        new Class<?>[] { UriInfo.class },
+		                                        (proxy, method, args) -> {
+		                                        	switch (method.getName()) {
+		                                        		case "getBaseUri":
+		                                        			return baseUri;
+		                                        		case "getBaseUriBuilder":
+		                                        			return UriBuilder.fromUri(baseUri);
+		                                        		default:
+		                                        			throw new UnsupportedOperationException(method.getName());
+		                                        	}
+		                                        });
+	}
+}
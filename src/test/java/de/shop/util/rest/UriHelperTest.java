@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2013 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.util.rest;
+
+import de.shop.artikelverwaltung.rest.ArtikelResource;
+import de.shop.bestellverwaltung.rest.BestellungResource;
+import de.shop.kundenverwaltung.rest.KundeResource;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import javax.ws.rs.core.UriBuilder;
+import javax.ws.rs.core.UriInfo;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+
+/**
+ * Test der Link-Templates von UriHelper mit den Resource-Klassen, ohne Applikationsserver
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+public class UriHelperTest {
+	private static final URI BASE_URI = URI.create("https://localhost:8443/shop/rest/");
+	private static final URI BASE_URI_2 = URI.create("http://localhost:8080/shop/rest/");
+	private static final Long ID = Long.valueOf(4711);
+	
+	// Resource-Klasse, Methode (null fuer die Klasse selbst) und erwarteter Pfad relativ zur Basis-URI
+	private static final Object[][] LINKS = {
+		{ KundeResource.class, null, "kunden" },
+		{ KundeResource.class, "findKundeById", "kunden/4711" },
+		{ KundeResource.class, "findBestellungenByKundeId", "kunden/4711/bestellungen" },
+		{ KundeResource.class, "deleteKunde", "kunden/4711" },
+		{ KundeResource.class, "downloadImage", "kunden/image/4711" },
+		{ KundeResource.class, "downloadBase64", "kunden/base64/4711" },
+		{ BestellungResource.class, null, "bestellungen" },
+		{ BestellungResource.class, "findBestellungById", "bestellungen/4711" },
+		{ ArtikelResource.class, "findArtikelById", "artikel/4711" },
+	};
+	
+	private UriHelper uriHelper;
+	
+	@Before
+	public void before() {
+		uriHelper = new UriHelper();
+	}
+	
+	@Test
+	public void getUri() {
+		// Given
+		final UriInfo uriInfo = uriInfo(BASE_URI);
+		
+		for (Object[] link : LINKS) {
+			final Class<?> clazz = (Class<?>) link[0];
+			final String methodName = (String) link[1];
+			final URI erwartet = BASE_URI.resolve((String) link[2]);
+			
+			// When
+			final URI uri = getUri(clazz, methodName, uriInfo);
+			
+			// Then: gleiches Ergebnis wie mit UriBuilder, auch beim 2. Aufruf aus dem Cache
+			assertThat(uri, is(erwartet));
+			assertThat(uri, is(getUriBuilder(clazz, methodName, uriInfo)));
+			assertThat(getUri(clazz, methodName, uriInfo), is(erwartet));
+		}
+	}
+	
+	@Test
+	public void einTemplateJeMethodeUndBasisUri() {
+		// Given
+		final UriInfo uriInfo = uriInfo(BASE_URI);
+		final UriInfo uriInfo2 = uriInfo(BASE_URI_2);
+		
+		// When
+		for (long id = 1; id <= 10; id++) {
+			uriHelper.getUri(KundeResource.class, "findKundeById", id, uriInfo);
+			uriHelper.getUri(KundeResource.class, "findKundeById", id, uriInfo2);
+			uriHelper.getUri(KundeResource.class, "findBestellungenByKundeId", id, uriInfo);
+		}
+		uriHelper.getUri(KundeResource.class, uriInfo);
+		
+		// Then
+		assertThat(uriHelper.getAnzahlTemplates(KundeResource.class), is(3));
+		assertThat(uriHelper.getAnzahlBasisUris(KundeResource.class, "findKundeById"), is(2));
+		assertThat(uriHelper.getAnzahlBasisUris(KundeResource.class, "findBestellungenByKundeId"), is(1));
+		assertThat(uriHelper.getAnzahlBasisUris(KundeResource.class, null), is(1));
+		assertThat(uriHelper.getAnzahlTemplates(BestellungResource.class), is(0));
+	}
+	
+	@Test
+	public void basisUrisBegrenzt() {
+		// Given: mehr verschiedene Basis-URIs als gecacht werden, z.B. durch beliebige Host-Header
+		final int anzahl = UriHelper.MAX_BASIS_URIS + 4;
+		
+		for (int i = 0; i < anzahl; i++) {
+			final URI baseUri = URI.create("https://host" + i + ":8443/shop/rest/");
+			
+			// When
+			final URI uri = uriHelper.getUri(KundeResource.class, "findKundeById", ID, uriInfo(baseUri));
+			
+			// Then
+			assertThat(uri, is(baseUri.resolve("kunden/" + ID)));
+		}
+		assertThat(uriHelper.getAnzahlBasisUris(KundeResource.class, "findKundeById"), is(UriHelper.MAX_BASIS_URIS));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void getUriOhneId() {
+		uriHelper.getUri(KundeResource.class, "findKundeById", null, uriInfo(BASE_URI));
+	}
+	
+	private URI getUri(Class<?> clazz, String methodName, UriInfo uriInfo) {
+		return methodName == null
+		       ? uriHelper.getUri(clazz, uriInfo)
+		       : uriHelper.getUri(clazz, methodName, ID, uriInfo);
+	}
+	
+	/**
+	 * Aufbau mit UriBuilder je Link als Vergleich
+	 */
+	private static URI getUriBuilder(Class<?> clazz, String methodName, UriInfo uriInfo) {
+		final UriBuilder builder = uriInfo.getBaseUriBuilder().path(clazz);
+		return methodName == null
+		       ? builder.build()
+		       : builder.path(clazz, methodName).build(ID);
+	}
+	
+	/**
+	 * UriInfo ausserhalb eines Requests: nur die Basis-URI wird von UriHelper benoetigt
+	 */
+	private static UriInfo uriInfo(URI baseUri) {
+		return (UriInfo) Proxy.newProxyInstance(UriInfo.class.getClassLoader(),
+		                                        new Class<?>[] { UriInfo.class },
+		                                        (proxy, method, args) -> {
+		                                        	switch (method.getName()) {
+		                                        		case "getBaseUri":
+		                                        			return baseUri;
+		                                        		case "getBaseUriBuilder":
+		                                        			return UriBuilder.fromUri(baseUri);
+		                                        		default:
+		                                        			throw new UnsupportedOperationException(method.getName());
+		                                        	}
+		                                        });
+	}
+}
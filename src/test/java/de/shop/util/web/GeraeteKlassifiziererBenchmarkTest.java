@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2013 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.util.web;
+
+import java.lang.invoke.MethodHandles;
+import java.util.function.IntPredicate;
+import java.util.logging.Logger;
+import org.junit.Before;
+import org.junit.Test;
+
+import static de.shop.util.TestConstants.BEGINN;
+import static de.shop.util.TestConstants.ENDE;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+
+/**
+ * Microbenchmark fuer die Erkennung mobiler Endgeraete: UAgentInfo mit detectTierIphone() und
+ * detectTierTablet() im Vergleich zum GeraeteKlassifizierer mit und ohne Treffer im Cache.
+ * Die Kosten je Klassifizierung werden protokolliert. Der Benchmark verwendet einen eigenen GeraeteKlassifizierer,
+ * damit der Durchlauf ohne Cache-Treffer nicht den Cache der Anwendung fuellt. Er laeuft ohne Applikationsserver
+ * und nicht mit den uebrigen Tests, sondern nur im Profil "benchmark" (mvn test -Pbenchmark).
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+public class GeraeteKlassifiziererBenchmarkTest {
+	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+	
+	private static final String ACCEPT = "text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8";
+	private static final String ACCEPT_RIM = "application/vnd.rim.html,text/html";
+	private static final String[] USER_AGENTS = {
+		"Mozilla/5.0 (Windows NT 6.1; WOW64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/34.0.1847.131 "
+		+ "Safari/537.36",
+		"Mozilla/5.0 (Windows NT 6.1; WOW64; rv:29.0) Gecko/20100101 Firefox/29.0",
+		"Mozilla/5.0 (compatible; MSIE 10.0; Windows NT 6.1; Trident/6.0)",
+		"Mozilla/5.0 (iPhone; CPU iPhone OS 7_1 like Mac OS X) AppleWebKit/537.51.2 (KHTML, like Gecko) "
+		+ "Version/7.0 Mobile/11D167 Safari/9537.53",
+		"Mozilla/5.0 (iPad; CPU OS 7_1 like Mac OS X) AppleWebKit/537.51.2 (KHTML, like Gecko) Version/7.0 "
+		+ "Mobile/11D167 Safari/9537.53",
+		"Mozilla/5.0 (Linux; Android 4.4.2; Nexus 5 Build/KOT49H) AppleWebKit/537.36 (KHTML, like Gecko) "
+		+ "Chrome/34.0.1847.114 Mobile Safari/537.36",
+		"Mozilla/5.0 (Linux; Android 4.4.2; Nexus 7 Build/KOT49H) AppleWebKit/537.36 (KHTML, like Gecko) "
+		+ "Chrome/34.0.1847.114 Safari/537.36",
+		"Mozilla/5.0 (compatible; MSIE 10.0; Windows Phone 8.0; Trident/6.0; IEMobile/10.0; ARM; Touch; NOKIA; "
+		+ "Lumia 920)",
+		"Mozilla/5.0 (BB10; Touch) AppleWebKit/537.10+ (KHTML, like Gecko) Version/10.0.9.2372 Mobile "
+		+ "Safari/537.10+",
+		"Mozilla/5.0 (BlackBerry; U; BlackBerry 9800; en) AppleWebKit/534.1+ (KHTML, like Gecko) "
+		+ "Version/6.0.0.337 Mobile Safari/534.1+",
+		"Opera/9.80 (Android; Opera Mini/7.5.33361/31.1448; U; en) Presto/2.8.119 Version/11.1010",
+		"Mozilla/5.0 (compatible; Googlebot/2.1; +http://www.google.com/bot.html)",
+	};
+	private static final int WARMUP = 10_000;
+	private static final int ITERATIONEN = 100_000;
+	
+	private GeraeteKlassifizierer geraeteKlassifizierer;
+	
+	@Before
+	public void before() {
+		geraeteKlassifizierer = new GeraeteKlassifizierer();
+	}
+	
+	@Test
+	public void klassifizieren() {
+		LOGGER.finer(BEGINN);
+		
+		// When
+		final long nanosUAgentInfo = messen(i -> {
+			final UAgentInfo uAgentInfo = new UAgentInfo(USER_AGENTS[i % USER_AGENTS.length], ACCEPT);
+			return uAgentInfo.detectTierIphone() || uAgentInfo.detectTierTablet();
+		});
+		final long nanosCache = messen(i -> geraeteKlassifizierer.klassifizieren(USER_AGENTS[i % USER_AGENTS.length],
+		                                                                         ACCEPT)
+		                                                         .isMobil());
+		// Jeder User-Agent ist neu: ein Durchlauf durch den Automaten und ein Eintrag im Cache
+		final long nanosOhneCache = messen(i -> geraeteKlassifizierer.klassifizieren(USER_AGENTS[i % USER_AGENTS.length]
+		                                                                             + i, ACCEPT)
+		                                                             .isMobil());
+		LOGGER.info(String.format("Klassifizierung: UAgentInfo %5d ns, Automat %5d ns, Cache %5d ns",
+		                          nanosUAgentInfo, nanosOhneCache, nanosCache));
+		
+		// Then
+		for (String userAgent : USER_AGENTS) {
+			for (String accept : new String[] { null, ACCEPT, ACCEPT_RIM }) {
+				final UAgentInfo uAgentInfo = new UAgentInfo(userAgent, accept);
+				final Geraet geraet = geraeteKlassifizierer.klassifizieren(userAgent, accept);
+				assertThat(userAgent, geraet.isPhone(), is(uAgentInfo.detectTierIphone()));
+				assertThat(userAgent, geraet.isTablet(), is(uAgentInfo.detectTierTablet()));
+			}
+		}
+		
+		LOGGER.finer(ENDE);
+	}
+	
+	/**
+	 * Mittlere Dauer je Klassifizierung
+	 */
+	private static long messen(IntPredicate istMobil) {
+		int mobil = 0;
+		for (int i = 0; i < WARMUP; i++) {
+			if (istMobil.test(i)) {
+				mobil++;
+			}
+		}
+		
+		final long start = System.nanoTime();
+		for (int i = WARMUP; i < WARMUP + ITERATIONEN; i++) {
+			if (istMobil.test(i)) {
+				mobil++;
+			}
+		}
+		final long nanos = (System.nanoTime() - start) / ITERATIONEN;
+		
+		// Das Ergebnis wird verwendet, damit der JIT-Compiler die Aufrufe nicht entfernt
+		LOGGER.finest("Mobile Endgeraete: " + mobil);
+		return nanos;
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2013 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.util.web;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static de.shop.util.web.Geraet.DESKTOP;
+import static de.shop.util.web.Geraet.PHONE;
+import static de.shop.util.web.Geraet.TABLET;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+
+/**
+ * Test des GeraeteKlassifizierer mit bekannten User-Agents, ohne Applikationsserver. Die Laufzeit wird nicht
+ * gemessen; dafuer gibt es GeraeteKlassifiziererBenchmarkTest im Profil "benchmark".
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+public class GeraeteKlassifiziererTest {
+	private static final String ACCEPT = "text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8";
+	private static final String ACCEPT_RIM = "application/vnd.rim.html,text/html";
+	private static final String CHROME = "Mozilla/5.0 (Windows NT 6.1; WOW64) AppleWebKit/537.36 (KHTML, like Gecko) "
+	                                     + "Chrome/34.0.1847.131 Safari/537.36";
+	private static final String IPHONE = "Mozilla/5.0 (iPhone; CPU iPhone OS 7_1 like Mac OS X) AppleWebKit/537.51.2 "
+	                                     + "(KHTML, like Gecko) Version/7.0 Mobile/11D167 Safari/9537.53";
+	
+	// User-Agent und erwartete Geraeteklasse
+	private static final Object[][] USER_AGENTS = {
+		{ CHROME, DESKTOP },
+		{ "Mozilla/5.0 (Windows NT 6.1; WOW64; rv:29.0) Gecko/20100101 Firefox/29.0", DESKTOP },
+		{ "Mozilla/5.0 (compatible; MSIE 10.0; Windows NT 6.1; Trident/6.0)", DESKTOP },
+		{ "Mozilla/5.0 (compatible; Googlebot/2.1; +http://www.google.com/bot.html)", DESKTOP },
+		{ IPHONE, PHONE },
+		{ "Mozilla/5.0 (iPad; CPU OS 7_1 like Mac OS X) AppleWebKit/537.51.2 (KHTML, like Gecko) Version/7.0 "
+		  + "Mobile/11D167 Safari/9537.53", TABLET },
+		{ "Mozilla/5.0 (Linux; Android 4.4.2; Nexus 5 Build/KOT49H) AppleWebKit/537.36 (KHTML, like Gecko) "
+		  + "Chrome/34.0.1847.114 Mobile Safari/537.36", PHONE },
+		{ "Mozilla/5.0 (Linux; Android 4.4.2; Nexus 7 Build/KOT49H) AppleWebKit/537.36 (KHTML, like Gecko) "
+		  + "Chrome/34.0.1847.114 Safari/537.36", TABLET },
+		// HTC Flyer ist trotz Android ohne "Mobile" ein Phone
+		{ "Mozilla/5.0 (Linux; U; Android 2.3.4; en-us; HTC_Flyer_P512 Build/GRJ22) AppleWebKit/533.1 "
+		  + "(KHTML, like Gecko) Version/4.0 Safari/533.1", PHONE },
+		{ "Opera/9.80 (Android 2.3.3; Linux; Opera Mobi/ADR-1111101157; U; de) Presto/2.9.201 Version/11.50",
+		  PHONE },
+		// Opera Mini ist weder ein Phone der iPhone-Klasse noch ein Tablet
+		{ "Opera/9.80 (Android; Opera Mini/7.5.33361/31.1448; U; en) Presto/2.8.119 Version/11.1010", DESKTOP },
+		{ "Mozilla/5.0 (compatible; MSIE 10.0; Windows Phone 8.0; Trident/6.0; IEMobile/10.0; ARM; Touch; NOKIA; "
+		  + "Lumia 920)", PHONE },
+		{ "Mozilla/5.0 (BB10; Touch) AppleWebKit/537.10+ (KHTML, like Gecko) Version/10.0.9.2372 Mobile "
+		  + "Safari/537.10+", PHONE },
+		// BlackBerry Torch mit Touchscreen, aber nicht BlackBerry Bold ohne Touchscreen
+		{ "Mozilla/5.0 (BlackBerry; U; BlackBerry 9800; en) AppleWebKit/534.1+ (KHTML, like Gecko) "
+		  + "Version/6.0.0.337 Mobile Safari/534.1+", PHONE },
+		{ "Mozilla/5.0 (BlackBerry; U; BlackBerry 9700; en) AppleWebKit/534.8+ (KHTML, like Gecko) "
+		  + "Version/6.0.0.448 Mobile Safari/534.8+", DESKTOP },
+		{ "Mozilla/5.0 (PlayBook; U; RIM Tablet OS 2.1.0; en-US) AppleWebKit/536.2+ (KHTML, like Gecko) "
+		  + "Version/7.2.1.0 Safari/536.2+", TABLET },
+		{ "Mozilla/5.0 (hp-tablet; Linux; hpwOS/3.0.5; U; en-US) AppleWebKit/534.6 (KHTML, like Gecko) "
+		  + "wOSBrowser/234.83 Safari/534.6 TouchPad/1.0", TABLET },
+		{ "Mozilla/5.0 (PlayStation Vita 3.01) AppleWebKit/536.26 (KHTML, like Gecko) Silk/3.2", PHONE },
+	};
+	
+	private GeraeteKlassifizierer geraeteKlassifizierer;
+	
+	@Before
+	public void before() {
+		geraeteKlassifizierer = new GeraeteKlassifizierer();
+	}
+	
+	@Test
+	public void klassifizieren() {
+		for (Object[] zeile : USER_AGENTS) {
+			// Given
+			final String userAgent = (String) zeile[0];
+			final Geraet erwartet = (Geraet) zeile[1];
+			
+			// When
+			final Geraet geraet = geraeteKlassifizierer.klassifizieren(userAgent, ACCEPT);
+			
+			// Then
+			assertThat(userAgent, geraet, is(erwartet));
+		}
+	}
+	
+	@Test
+	public void wieUAgentInfo() {
+		for (Object[] zeile : USER_AGENTS) {
+			final String userAgent = (String) zeile[0];
+			for (String accept : new String[] { null, ACCEPT, ACCEPT_RIM }) {
+				// Given
+				final UAgentInfo uAgentInfo = new UAgentInfo(userAgent, accept);
+				
+				// When
+				final Geraet geraet = geraeteKlassifizierer.klassifizieren(userAgent, accept);
+				
+				// Then
+				assertThat(userAgent, geraet.isPhone(), is(uAgentInfo.detectTierIphone()));
+				assertThat(userAgent, geraet.isTablet(), is(uAgentInfo.detectTierTablet()));
+			}
+		}
+	}
+	
+	@Test
+	public void klassifizierenAusCache() {
+		// Given
+		geraeteKlassifizierer.klassifizieren(IPHONE, ACCEPT);
+		
+		// When
+		final Geraet geraet = geraeteKlassifizierer.klassifizieren(IPHONE, null);
+		final Geraet geraetDesktop = geraeteKlassifizierer.klassifizieren(CHROME, ACCEPT);
+		
+		// Then: ein Eintrag je User-Agent unabhaengig vom Header Accept
+		assertThat(geraet, is(PHONE));
+		assertThat(geraetDesktop, is(DESKTOP));
+		assertThat(geraeteKlassifizierer.getAnzahlGecacht(), is(2L));
+	}
+	
+	@Test
+	public void klassifizierenOhneUserAgent() {
+		// When
+		final Geraet geraet = geraeteKlassifizierer.klassifizieren(null, null);
+		
+		// Then
+		assertThat(geraet, is(DESKTOP));
+		assertThat(geraeteKlassifizierer.getAnzahlGecacht(), is(0L));
+	}
+}